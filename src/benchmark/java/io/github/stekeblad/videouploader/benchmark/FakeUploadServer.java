@@ -0,0 +1,648 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.services.youtube.model.Playlist;
+import com.google.api.services.youtube.model.PlaylistItem;
+import com.google.api.services.youtube.model.PlaylistListResponse;
+import com.google.api.services.youtube.model.PlaylistSnippet;
+import com.google.api.services.youtube.model.ThumbnailSetResponse;
+import com.google.api.services.youtube.model.Video;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.stekeblad.videouploader.youtube.Auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A local stand-in for the parts of the YouTube API the uploader uses: the resumable upload protocol for
+ * videos.insert and thumbnails.set, playlistItems.insert and playlists.list. Every connection is limited to a fixed
+ * bandwidth, all connections together can be limited to a total bandwidth like the uplink of a home connection, and
+ * every response gets a latency, to behave like a remote server where a single upload can not fill the uplink.
+ * <p>
+ * It can also inject the faults the real API has: 5xx responses, connections that are closed in the middle of a
+ * request and quotaExceeded errors. Faults are only injected after setFaultsEnabled(true) has been called, so a test
+ * can prepare itself without them.
+ * <p>
+ * Point a YouTube object to it with {@code YouTube.Builder.setRootUrl(server.getRootUrl())}
+ */
+public class FakeUploadServer {
+    private static final String VIDEO_UPLOAD_PATH = "/upload/youtube/v3/videos";
+    private static final String THUMBNAIL_UPLOAD_PATH = "/upload/youtube/v3/thumbnails/set";
+    private static final String PLAYLIST_ITEMS_PATH = "/youtube/v3/playlistItems";
+    private static final String PLAYLISTS_PATH = "/youtube/v3/playlists";
+    private static final String CHUNK_REQUEST = "upload chunk";
+
+    /**
+     * The faults the server can inject
+     */
+    public enum Fault {
+        // A 503 backendError response
+        SERVER_ERROR,
+        // The connection is closed without a response, for uploads after a part of the chunk has been received
+        CONNECTION_RESET,
+        // A 403 quotaExceeded response, only for the calls that costs quota
+        QUOTA_ERROR
+    }
+
+    private final HttpServer server;
+    private final ExecutorService exec;
+    private final long bytesPerSecondPerConnection;
+    private final long totalBytesPerSecond;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double serverErrorRate;
+    private final double connectionResetRate;
+    private final double quotaErrorRate;
+    private final Random random;
+    private final List<Playlist> playlists = new ArrayList<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Set<String> videoIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger idCounter = new AtomicInteger();
+    private final AtomicLong totalBytesReceived = new AtomicLong();
+    // The time the shared uplink is free again, in System.nanoTime()
+    private final AtomicLong uplinkFreeAt = new AtomicLong(System.nanoTime());
+    private final Map<Fault, AtomicLong> injectedFaults = new EnumMap<>(Fault.class);
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private volatile boolean faultsEnabled = false;
+
+    /**
+     * Creates and starts a FakeUploadServer on a free port on the loopback interface that does not inject any faults
+     *
+     * @param bytesPerSecondPerConnection how fast a single request is allowed to send its body
+     * @param latencyMillis               delay added before every response
+     * @throws IOException if the server could not be started
+     */
+    public FakeUploadServer(long bytesPerSecondPerConnection, long latencyMillis) throws IOException {
+        this(new Builder().setBytesPerSecondPerConnection(bytesPerSecondPerConnection).setLatencyMillis(latencyMillis));
+    }
+
+    private FakeUploadServer(Builder builder) throws IOException {
+        bytesPerSecondPerConnection = builder.bytesPerSecondPerConnection;
+        totalBytesPerSecond = builder.totalBytesPerSecond;
+        latencyMillis = builder.latencyMillis;
+        latencyJitterMillis = builder.latencyJitterMillis;
+        serverErrorRate = builder.serverErrorRate;
+        connectionResetRate = builder.connectionResetRate;
+        quotaErrorRate = builder.quotaErrorRate;
+        random = new Random(builder.seed);
+        for (Fault fault : Fault.values())
+            injectedFaults.put(fault, new AtomicLong());
+        for (int i = 1; i <= builder.playlistCount; i++) {
+            playlists.add(new Playlist().setId("fakePlaylist" + i)
+                    .setSnippet(new PlaylistSnippet().setTitle("Playlist " + i)));
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(VIDEO_UPLOAD_PATH, exchange -> handleUpload(exchange, "videos.insert",
+                this::onVideoInitiation));
+        server.createContext(THUMBNAIL_UPLOAD_PATH, exchange -> handleUpload(exchange, "thumbnails.set",
+                this::onThumbnailInitiation));
+        server.createContext(PLAYLIST_ITEMS_PATH, exchange -> handle(exchange, "playlistItems.insert",
+                this::onPlaylistItemInsert));
+        server.createContext(PLAYLISTS_PATH, exchange -> handle(exchange, "playlists.list", this::onPlaylistList));
+        server.createContext("/", exchange -> handle(exchange, "unknown", this::onUnknown));
+        exec = Executors.newCachedThreadPool();
+        server.setExecutor(exec);
+        server.start();
+    }
+
+    /**
+     * @return the URL to give to YouTube.Builder.setRootUrl()
+     */
+    public String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * @return the number of upload bytes received by the server since it was started, including chunks that was
+     * cut off by a fault and had to be sent again
+     */
+    public long getTotalBytesReceived() {
+        return totalBytesReceived.get();
+    }
+
+    /**
+     * @return the number of times each fault has been injected
+     */
+    public Map<Fault, Long> getInjectedFaults() {
+        Map<Fault, Long> faults = new EnumMap<>(Fault.class);
+        injectedFaults.forEach((fault, count) -> faults.put(fault, count.get()));
+        return faults;
+    }
+
+    /**
+     * @return the number of requests the server has received of each type, like "videos.insert" or "upload chunk"
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        requestCounts.forEach((type, count) -> counts.put(type, count.get()));
+        return counts;
+    }
+
+    /**
+     * @param enabled true to start injecting faults at the configured rates, false to stop
+     */
+    public void setFaultsEnabled(boolean enabled) {
+        faultsEnabled = enabled;
+    }
+
+    public void stop() {
+        server.stop(0);
+        exec.shutdownNow();
+    }
+
+    /**
+     * Builder for FakeUploadServer, the defaults are 8 MiB/s per connection, no total bandwidth limit, no latency and
+     * no faults
+     */
+    public static class Builder {
+        private long bytesPerSecondPerConnection = 8 * 1024 * 1024;
+        private long totalBytesPerSecond = 0;
+        private long latencyMillis = 0;
+        private long latencyJitterMillis = 0;
+        private double serverErrorRate = 0;
+        private double connectionResetRate = 0;
+        private double quotaErrorRate = 0;
+        private int playlistCount = 0;
+        private long seed = 0;
+
+        /**
+         * @param bytesPerSecondPerConnection how fast a single request is allowed to send its body
+         */
+        public Builder setBytesPerSecondPerConnection(long bytesPerSecondPerConnection) {
+            this.bytesPerSecondPerConnection = bytesPerSecondPerConnection;
+            return this;
+        }
+
+        /**
+         * @param totalBytesPerSecond how fast all requests together are allowed to send their bodies, 0 for no limit
+         */
+        public Builder setTotalBytesPerSecond(long totalBytesPerSecond) {
+            this.totalBytesPerSecond = totalBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * @param latencyMillis delay added before every response
+         */
+        public Builder setLatencyMillis(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * @param latencyJitterMillis up to this much extra delay is added randomly before every response
+         */
+        public Builder setLatencyJitterMillis(long latencyJitterMillis) {
+            this.latencyJitterMillis = latencyJitterMillis;
+            return this;
+        }
+
+        /**
+         * @param serverErrorRate the share of requests, 0.0 to 1.0, that gets a 503 response
+         */
+        public Builder setServerErrorRate(double serverErrorRate) {
+            this.serverErrorRate = serverErrorRate;
+            return this;
+        }
+
+        /**
+         * @param connectionResetRate the share of requests, 0.0 to 1.0, whose connection is closed without a response
+         */
+        public Builder setConnectionResetRate(double connectionResetRate) {
+            this.connectionResetRate = connectionResetRate;
+            return this;
+        }
+
+        /**
+         * @param quotaErrorRate the share of the calls that costs quota, 0.0 to 1.0, that gets a quotaExceeded error
+         */
+        public Builder setQuotaErrorRate(double quotaErrorRate) {
+            this.quotaErrorRate = quotaErrorRate;
+            return this;
+        }
+
+        /**
+         * @param playlistCount the number of playlists the fake channel has, they are named "Playlist 1" and up
+         */
+        public Builder setPlaylistCount(int playlistCount) {
+            this.playlistCount = playlistCount;
+            return this;
+        }
+
+        /**
+         * @param seed the seed of the random numbers that decides when faults are injected
+         */
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Creates and starts a FakeUploadServer on a free port on the loopback interface
+         *
+         * @throws IOException if the server could not be started
+         */
+        public FakeUploadServer build() throws IOException {
+            return new FakeUploadServer(this);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Like YouTube the chunks of a upload are sent with PUT to the same path as the request that started it, with
+     * the session in the upload_id parameter
+     */
+    private void handleUpload(HttpExchange exchange, String type, Handler initiation) throws IOException {
+        if (exchange.getRequestMethod().equals("PUT"))
+            handle(exchange, CHUNK_REQUEST, this::onChunk);
+        else
+            handle(exchange, type, initiation);
+    }
+
+    /**
+     * Counts the request, injects the faults that applies to all types of requests and calls handler. Quota errors
+     * and resets in the middle of a chunk are injected by the handlers.
+     */
+    private void handle(HttpExchange exchange, String type, Handler handler) throws IOException {
+        requestCounts.computeIfAbsent(type, key -> new AtomicLong()).incrementAndGet();
+        try {
+            if (!type.equals(CHUNK_REQUEST) && injectFault(Fault.CONNECTION_RESET, connectionResetRate)) {
+                drain(exchange.getRequestBody(), -1);
+                resetConnection(exchange);
+                return;
+            }
+            if (injectFault(Fault.SERVER_ERROR, serverErrorRate)) {
+                drain(exchange.getRequestBody(), -1);
+                respondError(exchange, 503, "backendError", "Backend Error");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            respondError(exchange, 500, "internalError", String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * @return true if the fault should be injected now, it is then counted
+     */
+    private boolean injectFault(Fault fault, double rate) {
+        if (!faultsEnabled || rate <= 0 || random.nextDouble() >= rate)
+            return false;
+        injectedFaults.get(fault).incrementAndGet();
+        return true;
+    }
+
+    private void onVideoInitiation(HttpExchange exchange) throws IOException {
+        onInitiation(exchange, UploadKind.VIDEO, null);
+    }
+
+    private void onThumbnailInitiation(HttpExchange exchange) throws IOException {
+        String videoId = getQueryParameters(exchange).get("videoId");
+        if (videoId == null || !videoIds.contains(videoId)) {
+            drain(exchange.getRequestBody(), -1);
+            respondError(exchange, 404, "videoNotFound", "The video that you are trying to update cannot be found.");
+            return;
+        }
+        onInitiation(exchange, UploadKind.THUMBNAIL, videoId);
+    }
+
+    /**
+     * Handles the request that starts a resumable upload, the metadata is ignored and a session URL is returned
+     */
+    private void onInitiation(HttpExchange exchange, UploadKind kind, String videoId) throws IOException {
+        drain(exchange.getRequestBody(), -1);
+        if (!exchange.getRequestMethod().equals("POST") ||
+                !"resumable".equals(getQueryParameters(exchange).get("uploadType"))) {
+            respondError(exchange, 400, "badRequest", "Only resumable uploads are supported");
+            return;
+        }
+        if (injectFault(Fault.QUOTA_ERROR, quotaErrorRate)) {
+            respondQuotaError(exchange);
+            return;
+        }
+        String sessionId = String.valueOf(idCounter.incrementAndGet());
+        sessions.put(sessionId, new Session(kind, videoId));
+        exchange.getResponseHeaders().set("Location", getRootUrl() + exchange.getRequestURI().getPath().substring(1) +
+                "?uploadType=resumable&upload_id=" + sessionId);
+        respond(exchange, 200, "");
+    }
+
+    /**
+     * Handles the PUT requests with the file bytes and the requests for the status of a upload. The bytes of a chunk
+     * that starts after what has been received are not kept, the response tells the client where to continue.
+     */
+    private void onChunk(HttpExchange exchange) throws IOException {
+        String sessionId = getQueryParameters(exchange).get("upload_id");
+        Session session = sessionId == null ? null : sessions.get(sessionId);
+        if (session == null) {
+            drain(exchange.getRequestBody(), -1);
+            respondError(exchange, 404, "notFound", "The upload session does not exist");
+            return;
+        }
+        // Content-Range: bytes first-last/total, bytes first-last/* if the total is not known yet or
+        // bytes */total when asking for the upload status
+        String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+        long first = -1;
+        if (contentRange != null && contentRange.startsWith("bytes ")) {
+            String range = contentRange.substring("bytes ".length());
+            int slashIndex = range.indexOf('/');
+            if (slashIndex != -1 && !range.endsWith("/*"))
+                session.setTotal(Long.parseLong(range.substring(slashIndex + 1)));
+            if (!range.startsWith("*"))
+                first = Long.parseLong(range.substring(0, range.indexOf('-')));
+        }
+
+        if (first != -1 && injectFault(Fault.CONNECTION_RESET, connectionResetRate)) {
+            // Cut it off somewhere in the first half of the chunk, the bytes that made it are not kept
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            long length = contentLength == null ? 0 : Long.parseLong(contentLength);
+            drain(exchange.getRequestBody(), (long) (length * random.nextDouble() / 2));
+            resetConnection(exchange);
+            return;
+        }
+
+        long read = drain(exchange.getRequestBody(), Long.MAX_VALUE);
+        long received = session.chunkReceived(first, read);
+        if (session.isComplete(received)) {
+            sessions.remove(sessionId);
+            respondJson(exchange, 200, session.complete());
+        } else {
+            if (received > 0)
+                exchange.getResponseHeaders().set("Range", "bytes=0-" + (received - 1));
+            respond(exchange, 308, "");
+        }
+    }
+
+    private void onPlaylistItemInsert(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            drain(exchange.getRequestBody(), -1);
+            respondError(exchange, 405, "methodNotAllowed", "Only insert is supported");
+            return;
+        }
+        PlaylistItem item = Auth.JSON_FACTORY.fromInputStream(readBody(exchange), PlaylistItem.class);
+        if (injectFault(Fault.QUOTA_ERROR, quotaErrorRate)) {
+            respondQuotaError(exchange);
+            return;
+        }
+        String playlistId = item.getSnippet() == null ? null : item.getSnippet().getPlaylistId();
+        if (playlists.stream().noneMatch(playlist -> playlist.getId().equals(playlistId))) {
+            respondError(exchange, 404, "playlistNotFound", "The playlist could not be found.");
+            return;
+        }
+        String videoId = item.getSnippet().getResourceId() == null ? null :
+                item.getSnippet().getResourceId().getVideoId();
+        if (videoId == null || !videoIds.contains(videoId)) {
+            respondError(exchange, 404, "videoNotFound", "The video could not be found.");
+            return;
+        }
+        item.setId("fakePlaylistItem" + idCounter.incrementAndGet());
+        respondJson(exchange, 200, item);
+    }
+
+    /**
+     * Lists the playlists of the channel, maxResults and pageToken are supported
+     */
+    private void onPlaylistList(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody(), -1);
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respondError(exchange, 405, "methodNotAllowed", "Only list is supported");
+            return;
+        }
+        if (injectFault(Fault.QUOTA_ERROR, quotaErrorRate)) {
+            respondQuotaError(exchange);
+            return;
+        }
+        Map<String, String> parameters = getQueryParameters(exchange);
+        int maxResults = parameters.containsKey("maxResults") ? Integer.parseInt(parameters.get("maxResults")) : 5;
+        int start = parameters.containsKey("pageToken") ? Integer.parseInt(parameters.get("pageToken")) : 0;
+        int end = Math.min(playlists.size(), start + maxResults);
+        PlaylistListResponse response = new PlaylistListResponse().setKind("youtube#playlistListResponse")
+                .setItems(new ArrayList<>(playlists.subList(Math.min(start, end), end)));
+        if (end < playlists.size())
+            response.setNextPageToken(String.valueOf(end));
+        respondJson(exchange, 200, response);
+    }
+
+    private void onUnknown(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody(), -1);
+        respondError(exchange, 404, "notFound", "FakeUploadServer does not implement " +
+                exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+    }
+
+    private enum UploadKind {
+        VIDEO,
+        THUMBNAIL
+    }
+
+    /**
+     * The state of one resumable upload
+     */
+    private class Session {
+        private final UploadKind kind;
+        private final String videoId;
+        private long received = 0;
+        private long total = -1;
+
+        Session(UploadKind kind, String videoId) {
+            this.kind = kind;
+            this.videoId = videoId;
+        }
+
+        synchronized void setTotal(long total) {
+            this.total = total;
+        }
+
+        /**
+         * @param first the position in the file of the first byte of the chunk, -1 for a status request
+         * @param read  the number of bytes in the chunk
+         * @return the number of bytes received in one piece from the start of the file
+         */
+        synchronized long chunkReceived(long first, long read) {
+            if (first != -1 && first <= received)
+                received = Math.max(received, first + read);
+            return received;
+        }
+
+        synchronized boolean isComplete(long received) {
+            return total != -1 && received >= total;
+        }
+
+        /**
+         * @return the response to the request that completes the upload
+         */
+        GenericJson complete() {
+            if (kind == UploadKind.THUMBNAIL)
+                return new ThumbnailSetResponse().setKind("youtube#thumbnailSetResponse");
+            String id = "fakeVideo" + idCounter.incrementAndGet();
+            videoIds.add(id);
+            return new Video().setKind("youtube#video").setId(id);
+        }
+    }
+
+    private static Map<String, String> getQueryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return parameters;
+        try {
+            for (String pair : query.split("&")) {
+                int equalsIndex = pair.indexOf('=');
+                if (equalsIndex == -1)
+                    parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+                else
+                    parameters.put(URLDecoder.decode(pair.substring(0, equalsIndex), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equalsIndex + 1), "UTF-8"));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the request body, decompressed if the client compressed it
+     */
+    private static InputStream readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                body.write(buffer, 0, n);
+        }
+        InputStream bodyStream = new ByteArrayInputStream(body.toByteArray());
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+            return new GZIPInputStream(bodyStream);
+        return bodyStream;
+    }
+
+    /**
+     * Reads and throws away the request body.
+     *
+     * @param limit the number of bytes to read with the bandwidth limits applied, Long.MAX_VALUE for the entire body.
+     *              -1 reads the entire body without limiting the speed.
+     * @return the number of bytes read
+     */
+    private long drain(InputStream body, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        boolean throttle = limit != -1;
+        long maxBytes = throttle ? limit : Long.MAX_VALUE;
+        long read = 0;
+        long start = System.nanoTime();
+        int n;
+        while (read < maxBytes && (n = body.read(buffer, 0, (int) Math.min(buffer.length, maxBytes - read))) != -1) {
+            read += n;
+            if (throttle) {
+                totalBytesReceived.addAndGet(n);
+                throttleUplink(n);
+                long expectedNanos = read * 1_000_000_000L / bytesPerSecondPerConnection;
+                long aheadNanos = expectedNanos - (System.nanoTime() - start);
+                if (aheadNanos > 0)
+                    sleep(aheadNanos / 1_000_000L);
+            }
+        }
+        if (read == maxBytes)
+            return read; // the rest is thrown away when the connection is closed
+        body.close();
+        return read;
+    }
+
+    /**
+     * Waits until the shared uplink has had time to send the bytes
+     */
+    private void throttleUplink(int bytes) {
+        if (totalBytesPerSecond <= 0)
+            return;
+        long cost = bytes * 1_000_000_000L / totalBytesPerSecond;
+        long now = System.nanoTime();
+        long sentAt = uplinkFreeAt.accumulateAndGet(cost, (freeAt, nanos) -> Math.max(freeAt, now) + nanos);
+        sleep(TimeUnit.NANOSECONDS.toMillis(sentAt - now));
+    }
+
+    /**
+     * Closes the connection without sending a response, the client sees it as a network error
+     */
+    private void resetConnection(HttpExchange exchange) {
+        sleep(latencyMillis);
+        // Closing a exchange that has not sent its response headers closes the connection
+        exchange.close();
+    }
+
+    private void respondQuotaError(HttpExchange exchange) throws IOException {
+        respondError(exchange, 403, "quotaExceeded", "The request cannot be completed because you have exceeded " +
+                "your quota.");
+    }
+
+    /**
+     * Responds with an error body in the same format as the YouTube API
+     */
+    private void respondError(HttpExchange exchange, int status, String reason, String message) throws IOException {
+        GenericJson error = new GenericJson();
+        error.set("code", status);
+        error.set("message", message);
+        GenericJson details = new GenericJson();
+        details.set("message", message);
+        details.set("domain", reason.equals("quotaExceeded") ? "youtube.quota" : "global");
+        details.set("reason", reason);
+        error.set("errors", Collections.singletonList(details));
+        GenericJson body = new GenericJson();
+        body.set("error", error);
+        respondJson(exchange, status, body);
+    }
+
+    private void respondJson(HttpExchange exchange, int status, GenericJson body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        respond(exchange, status, Auth.JSON_FACTORY.toString(body));
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        long jitter = latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0;
+        sleep(latencyMillis + jitter);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
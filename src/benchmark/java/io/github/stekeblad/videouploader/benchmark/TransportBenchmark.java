@@ -0,0 +1,241 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import com.google.api.client.http.*;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.HttpOperations;
+import io.github.stekeblad.videouploader.utils.OkHttpTransport;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Compares the OkHttp based transport used for all YouTube API traffic with the HttpURLConnection based transport
+ * from the Google API client. Both sends the same requests to a local HTTPS server that speaks HTTP/2 and HTTP/1.1.
+ * <p>
+ * Two workloads are measured: small API calls sent one after another, like when playlists and categories are loaded,
+ * and upload chunks sent from several threads at once, like when several upload slots are active. For each the
+ * request rate and the number of connections the server had to accept (each costing a TLS handshake) are printed.
+ * OkHttpTransport only offers HTTP/1.1, with HTTP/2 all chunks was multiplexed over one connection and was sent at
+ * less than half the rate of NetHttpTransport.
+ * <p>
+ * Arguments (all optional): number of API calls, number of chunks, chunk size in KiB, threads sending chunks.
+ * Run with {@code gradle transportBenchmark}
+ */
+public class TransportBenchmark {
+    // The first round starts without any open connections, the last is measured after the JIT has warmed up
+    private static final int ROUNDS = 3;
+    private static final String API_RESPONSE = createApiResponse();
+
+    public static void main(String[] args) throws Exception {
+        int apiCalls = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int chunkCount = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int chunkSizeKiB = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        // the socket buffer sizes of the shared client are read from the settings
+        ConfigManager.INSTANCE.configManager();
+
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(localhost)
+                .build();
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+
+        MockWebServer server = new MockWebServer();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        // do not keep the uploaded chunks in memory
+        server.setBodyLimit(0);
+        // MockWebServer writes headers and body separately, without this Nagle's algorithm delays every response
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("PUT".equals(request.getMethod()))
+                    return new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-1");
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(API_RESPONSE);
+            }
+        });
+        server.start();
+
+        OkHttpClient okHttpClient = HttpOperations.getClient().newBuilder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+        HttpTransport okHttpTransport = new OkHttpTransport(okHttpClient);
+        HttpTransport netHttpTransport = new NetHttpTransport.Builder()
+                .setSslSocketFactory(clientCertificates.sslSocketFactory())
+                .build();
+
+        byte[] chunk = new byte[chunkSizeKiB * 1024];
+        new Random(1).nextBytes(chunk);
+        GenericUrl apiUrl = new GenericUrl(server.url("/youtube/v3/playlists").toString());
+        GenericUrl uploadUrl = new GenericUrl(server.url("/upload/youtube/v3/videos").toString());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        System.out.println(String.format("%d API calls, %d chunks of %d KiB from %d threads",
+                apiCalls, chunkCount, chunkSizeKiB, threads));
+        System.out.println("round  transport   workload     seconds   requests/s    MiB/s   connections");
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String roundName = round == 0 ? "cold" : "warm";
+                boolean print = round == 0 || round == ROUNDS - 1;
+                for (HttpTransport transport : Arrays.asList(netHttpTransport, okHttpTransport)) {
+                    String name = transport == okHttpTransport ? "OkHttp" : "NetHttp";
+                    HttpRequestFactory factory = transport.createRequestFactory();
+
+                    // HttpURLConnection keeps its idle connections in a JVM wide cache that can not be emptied,
+                    // so connections are kept between rounds for both transports
+                    long start = System.nanoTime();
+                    for (int i = 0; i < apiCalls; i++)
+                        sendApiCall(factory, apiUrl);
+                    long elapsed = System.nanoTime() - start;
+                    Result api = new Result(elapsed, apiCalls, 0, countNewConnections(server, apiCalls));
+                    if (print)
+                        System.out.println(api.format(roundName, name, "api calls"));
+
+                    start = System.nanoTime();
+                    List<Future<?>> sent = new ArrayList<>();
+                    for (int i = 0; i < chunkCount; i++)
+                        sent.add(executor.submit(() -> sendChunk(factory, uploadUrl, chunk)));
+                    for (Future<?> future : sent)
+                        future.get();
+                    elapsed = System.nanoTime() - start;
+                    Result chunks = new Result(elapsed, chunkCount, (long) chunkCount * chunk.length,
+                            countNewConnections(server, chunkCount));
+                    if (print)
+                        System.out.println(chunks.format(roundName, name, "chunks"));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            server.shutdown();
+            okHttpClient.dispatcher().executorService().shutdown();
+            okHttpClient.connectionPool().evictAll();
+        }
+    }
+
+    private static void sendApiCall(HttpRequestFactory factory, GenericUrl url) throws IOException {
+        HttpResponse response = factory.buildGetRequest(url).execute();
+        try {
+            response.parseAsString();
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private static Void sendChunk(HttpRequestFactory factory, GenericUrl url, byte[] chunk) throws IOException {
+        HttpRequest request = factory.buildPutRequest(url, new ByteArrayContent("video/*", chunk));
+        // 308 is the normal response to a chunk that is not the last one
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        HttpResponse response = request.execute();
+        try {
+            if (response.getStatusCode() != 308)
+                throw new IOException("Unexpected response: " + response.getStatusCode());
+            response.ignore();
+        } finally {
+            response.disconnect();
+        }
+        return null;
+    }
+
+    /**
+     * Takes the given number of requests from the server
+     *
+     * @return the number of them that was the first request on a new connection
+     */
+    private static int countNewConnections(MockWebServer server, int requestCount) throws InterruptedException {
+        int connections = 0;
+        for (int i = 0; i < requestCount; i++) {
+            RecordedRequest request = server.takeRequest(10, TimeUnit.SECONDS);
+            if (request == null)
+                throw new IllegalStateException("The server did not receive all requests");
+            if (request.getSequenceNumber() == 0)
+                connections++;
+        }
+        return connections;
+    }
+
+    /**
+     * @return a JSON response about the size of a playlist page
+     */
+    private static String createApiResponse() {
+        StringBuilder builder = new StringBuilder("{\"kind\":\"youtube#playlistListResponse\",\"items\":[");
+        for (int i = 0; i < 25; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append("{\"kind\":\"youtube#playlist\",\"id\":\"PL").append(i)
+                    .append("\",\"snippet\":{\"title\":\"Playlist number ").append(i).append("\"}}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static class Result {
+        final double seconds;
+        final int requests;
+        final long bytes;
+        final int connections;
+
+        Result(long elapsedNanos, int requests, long bytes, int connections) {
+            this.seconds = elapsedNanos / 1e9;
+            this.requests = requests;
+            this.bytes = bytes;
+            this.connections = connections;
+        }
+
+        String format(String round, String transport, String workload) {
+            return String.format("%-6s %-11s %-10s %9.3f %12.1f %8.2f %13d", round, transport, workload, seconds,
+                    requests / seconds, bytes / seconds / (1024 * 1024), connections);
+        }
+    }
+
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import com.google.api.services.youtube.YouTube;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.metrics.ApiMetricsInterceptor;
+import io.github.stekeblad.videouploader.utils.metrics.UploadMetrics;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.Auth;
+import io.github.stekeblad.videouploader.youtube.PartialResponseInitializer;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
+import io.github.stekeblad.videouploader.youtube.Uploader;
+import io.github.stekeblad.videouploader.youtube.VideoUpload;
+import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the real {@link Uploader} against a {@link FakeUploadServer} with faults injected and reports the
+ * throughput, the tail latency of the uploads, chunks and API calls and how the faults was handled. A upload that
+ * fails is added again like the user would retry it, it then continues from its saved session.
+ * <p>
+ * The quota errors from the server makes the uploads wait for the quota to be reset, the test resets it after
+ * quotaResetMillis instead of at midnight.
+ * <p>
+ * Arguments are given as key=value, see DEFAULTS for the keys and their default values.
+ * Run with {@code gradle loadTest -PloadArgs="videos=32 serverErrors=0.02"}, it runs in build/loadTest so the
+ * sessions and quota ledger it saves does not mix with the real ones.
+ */
+public class UploadLoadTest {
+    private static final Map<String, String> DEFAULTS = new TreeMap<>();
+
+    static {
+        DEFAULTS.put("videos", "16");
+        DEFAULTS.put("sizeMiB", "16");
+        DEFAULTS.put("slots", "4");
+        // per connection and for all connections together, 0 is unlimited
+        DEFAULTS.put("bandwidthMiB", "8");
+        DEFAULTS.put("uplinkMiB", "0");
+        DEFAULTS.put("latency", "100");
+        DEFAULTS.put("jitter", "50");
+        // shares of the requests, 0.0 to 1.0
+        DEFAULTS.put("serverErrors", "0.0");
+        DEFAULTS.put("resets", "0.0");
+        DEFAULTS.put("quotaErrors", "0.0");
+        // 0 playlists does not add the videos to any playlist
+        DEFAULTS.put("playlists", "3");
+        DEFAULTS.put("thumbnails", "true");
+        DEFAULTS.put("retries", "3");
+        DEFAULTS.put("quotaResetMillis", "2000");
+        DEFAULTS.put("seed", "1");
+    }
+
+    private final Map<String, String> options;
+    private final Map<String, Long> startNanos = new ConcurrentHashMap<>();
+    private final List<Long> uploadMillis = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger failedUploads = new AtomicInteger();
+    private final AtomicInteger postUploadErrors = new AtomicInteger();
+    private final AtomicInteger quotaResets = new AtomicInteger();
+    private final Map<String, Integer> errors = new ConcurrentHashMap<>();
+
+    private UploadLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equalsIndex = arg.indexOf('=');
+            if (equalsIndex == -1 || !DEFAULTS.containsKey(arg.substring(0, equalsIndex))) {
+                System.err.println("Unknown argument \"" + arg + "\", the arguments and their defaults are " + DEFAULTS);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, equalsIndex), arg.substring(equalsIndex + 1));
+        }
+        new UploadLoadTest(options).run();
+    }
+
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private double doubleOption(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    private void run() throws Exception {
+        // The uploader reports progress to JavaFX nodes, start the toolkit without showing any window
+        new JFXPanel();
+        Platform.setImplicitExit(false);
+        ConfigManager.INSTANCE.configManager();
+        // Only the injected quota errors should hold back the uploads. Only changed in memory
+        ConfigManager.INSTANCE.setDailyQuota(Long.MAX_VALUE / 2);
+        TranslationsManager.loadAllTranslations(Locale.ENGLISH);
+        CategoryUtils.INSTANCE.loadCategories();
+
+        long mebibyte = 1024 * 1024;
+        FakeUploadServer server = new FakeUploadServer.Builder()
+                .setBytesPerSecondPerConnection(intOption("bandwidthMiB") * mebibyte)
+                .setTotalBytesPerSecond(intOption("uplinkMiB") * mebibyte)
+                .setLatencyMillis(intOption("latency"))
+                .setLatencyJitterMillis(intOption("jitter"))
+                .setServerErrorRate(doubleOption("serverErrors"))
+                .setConnectionResetRate(doubleOption("resets"))
+                .setQuotaErrorRate(doubleOption("quotaErrors"))
+                .setPlaylistCount(intOption("playlists"))
+                .setSeed(Long.parseLong(options.get("seed")))
+                .build();
+        // Show the fake API calls by endpoint, like the real ones
+        ApiMetricsInterceptor.groupByPath(URI.create(server.getRootUrl()).getHost());
+        // The uploads picks their playlists from the cache, fill it from the fake channel
+        PlaylistUtils.INSTANCE.refreshPlaylist(new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, null)
+                .setYouTubeRequestInitializer(new PartialResponseInitializer())
+                .setRootUrl(server.getRootUrl()).setApplicationName("Load test").build());
+
+        Path workDir = Files.createTempDirectory("upload-load-test");
+        List<File> videoFiles = createVideoFiles(workDir, intOption("videos"), intOption("sizeMiB"));
+        File thumbnail = Boolean.parseBoolean(options.get("thumbnails")) ? createThumbnail(workDir) : null;
+        ScheduledExecutorService quotaResetter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            System.out.println("Load test with " + new TreeMap<>(options));
+            server.setFaultsEnabled(true);
+            quotaResetter.scheduleWithFixedDelay(this::resetQuotaIfHeld, 100, 100, TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            runUploads(server, videoFiles, thumbnail);
+            long elapsedNanos = System.nanoTime() - start;
+            printReport(server, videoFiles, elapsedNanos);
+        } finally {
+            quotaResetter.shutdownNow();
+            server.stop();
+            for (File videoFile : videoFiles)
+                Files.deleteIfExists(videoFile.toPath());
+            if (thumbnail != null)
+                Files.deleteIfExists(thumbnail.toPath());
+            Files.deleteIfExists(workDir);
+            Platform.exit();
+        }
+    }
+
+    /**
+     * Adds all videos to a Uploader and waits until every upload has finished or failed more than retries times
+     */
+    private void runUploads(FakeUploadServer server, List<File> videoFiles, File thumbnail) throws Exception {
+        List<VideoUpload> uploads = createUploads(videoFiles, thumbnail, PlaylistUtils.INSTANCE.getPlaylistNames());
+        CountDownLatch done = new CountDownLatch(uploads.size());
+        int retries = intOption("retries");
+        Uploader uploader = new Uploader(intOption("slots")) {
+            @Override
+            protected YouTube createYouTube() {
+                // The fake server does not check any credentials
+                return newYouTubeBuilder(request -> {
+                }).setRootUrl(server.getRootUrl()).setApplicationName("Load test").build();
+            }
+        };
+        uploader.setUploadFinishedCallback(cancelName -> {
+            uploadMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos.get(cancelName)));
+            done.countDown();
+        });
+        uploader.setUploadErredCallback((video, throwable) -> {
+            String error = throwable.getClass().getSimpleName() + ": " + firstLine(throwable.getMessage());
+            errors.merge(error, 1, Integer::sum);
+            int attempt = attempts.merge(video.getPaneId(), 1, Integer::sum);
+            if (attempt <= retries) {
+                uploader.add(video, video.getPaneId());
+            } else {
+                failedUploads.incrementAndGet();
+                done.countDown();
+            }
+        });
+        uploader.setPostUploadErredCallback((video, throwable) -> {
+            errors.merge("post-upload: " + firstLine(throwable.getMessage()), 1, Integer::sum);
+            postUploadErrors.incrementAndGet();
+        });
+
+        for (VideoUpload upload : uploads) {
+            startNanos.put(upload.getPaneId(), System.nanoTime());
+            uploader.add(upload, upload.getPaneId());
+        }
+        if (!done.await(1, TimeUnit.HOURS))
+            throw new IllegalStateException("The uploads did not finish within an hour");
+        uploader.kill(false);
+    }
+
+    /**
+     * Simulates the daily quota being reset when a upload has been held back by a quota error for quotaResetMillis
+     */
+    private void resetQuotaIfHeld() {
+        UploadMetrics metrics = UploadMetrics.INSTANCE;
+        if (metrics.getUploadsInPhase().get(UploadMetrics.Phase.WAITING_FOR_QUOTA.name()) == 0)
+            return;
+        try {
+            Thread.sleep(intOption("quotaResetMillis"));
+        } catch (InterruptedException e) {
+            return;
+        }
+        quotaResets.incrementAndGet();
+        QuotaLedger.INSTANCE.clearExhausted();
+    }
+
+    private void printReport(FakeUploadServer server, List<File> videoFiles, long elapsedNanos) {
+        UploadMetrics metrics = UploadMetrics.INSTANCE;
+        double seconds = elapsedNanos / 1e9;
+        long fileBytes = 0;
+        for (File videoFile : videoFiles)
+            fileBytes += videoFile.length();
+        long finished = uploadMillis.size();
+        double finishedBytes = (double) fileBytes / videoFiles.size() * finished;
+
+        System.out.println();
+        System.out.println(String.format("%d of %d uploads finished in %.2f s, %d failed, %d retried, " +
+                        "%d post-upload errors", finished, videoFiles.size(), seconds, failedUploads.get(),
+                attempts.values().stream().mapToInt(Integer::intValue).sum(), postUploadErrors.get()));
+        System.out.println(String.format("Throughput: %.2f MiB/s, %.2f uploads/min. The server received %.1f%% " +
+                        "more bytes than the finished files", finishedBytes / seconds / (1024 * 1024),
+                finished / seconds * 60, finishedBytes == 0 ? 0 : (server.getTotalBytesReceived() / finishedBytes - 1) * 100));
+        List<Long> sorted = new ArrayList<>(uploadMillis);
+        Collections.sort(sorted);
+        System.out.println(String.format("Upload latency ms:   p50 %7d   p95 %7d   p99 %7d   max %7d",
+                percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1)));
+        System.out.println(String.format("Chunk latency ms:    p50 <= %4d   p95 <= %4d   max %7d   (%d chunks)",
+                metrics.getChunkLatencyMedianMillis(), metrics.getChunkLatencyP95Millis(),
+                metrics.getChunkLatencyMaxMillis(), metrics.getChunkCount()));
+        System.out.println(String.format("Chunk size changes:  %d larger, %d smaller",
+                metrics.getChunkSizeIncreases(), metrics.getChunkSizeDecreases()));
+        System.out.println("API calls                                   count  failed  mean ms  p95 ms");
+        Map<String, Long> failures = metrics.getApiFailureCounts();
+        Map<String, Long> means = metrics.getApiLatencyMeanMillis();
+        Map<String, Long> p95s = metrics.getApiLatencyP95Millis();
+        metrics.getApiCallCounts().forEach((endpoint, count) -> System.out.println(String.format(
+                "  %-40s %7d %7d %8d %7d", shortEndpoint(endpoint), count, failures.get(endpoint),
+                means.get(endpoint), p95s.get(endpoint))));
+        System.out.println("Server requests: " + new TreeMap<>(server.getRequestCounts()));
+        System.out.println("Injected faults: " + server.getInjectedFaults() + ", quota resets: " + quotaResets.get());
+        if (!errors.isEmpty()) {
+            System.out.println("Errors seen by the callbacks:");
+            new TreeMap<>(errors).forEach((error, count) -> System.out.println(String.format("  %4d  %s",
+                    count, error)));
+        }
+    }
+
+    /**
+     * @return the value at the percentile of an ascending list, 0 if it is empty
+     */
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty())
+            return 0;
+        int index = (int) Math.ceil(sorted.size() * percentile / 100) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    /**
+     * Removes the host and port of the fake server, they are different every run
+     */
+    private static String shortEndpoint(String endpoint) {
+        return endpoint.replaceFirst(" 127\\.0\\.0\\.1(:\\d+)?", " ");
+    }
+
+    private static String firstLine(String message) {
+        if (message == null)
+            return "";
+        int newLine = message.indexOf('\n');
+        return newLine == -1 ? message : message.substring(0, newLine);
+    }
+
+    /**
+     * VideoUploads contains JavaFX nodes, create them on the JavaFX thread. The videos are spread over the playlists
+     */
+    private static List<VideoUpload> createUploads(List<File> videoFiles, File thumbnail, List<String> playlists)
+            throws Exception {
+        FutureTask<List<VideoUpload>> creator = new FutureTask<>(() -> {
+            List<VideoUpload> uploads = new ArrayList<>();
+            for (int i = 0; i < videoFiles.size(); i++) {
+                uploads.add(new VideoUpload.Builder()
+                        .setVideoName("Load test video " + i)
+                        .setVideoDescription("")
+                        .setPaneName("load" + i)
+                        .setVideoFile(videoFiles.get(i))
+                        .setThumbNailPath(thumbnail == null ? null : thumbnail.getAbsolutePath())
+                        .setSelectedPlaylist(playlists.isEmpty() ? null : playlists.get(i % playlists.size()))
+                        .build());
+            }
+            return uploads;
+        });
+        Platform.runLater(creator);
+        return creator.get();
+    }
+
+    private static List<File> createVideoFiles(Path dir, int count, int sizeMiB) throws IOException {
+        List<File> files = new ArrayList<>();
+        byte[] block = new byte[1024 * 1024];
+        for (int i = 0; i < count; i++) {
+            File file = dir.resolve("video" + i + ".mp4").toFile();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                for (int j = 0; j < sizeMiB; j++) {
+                    block[0] = (byte) j;
+                    raf.write(block);
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static File createThumbnail(Path dir) throws IOException {
+        File file = dir.resolve("thumbnail.jpg").toFile();
+        ImageIO.write(new BufferedImage(1280, 720, BufferedImage.TYPE_INT_RGB), "jpg", file);
+        return file;
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.stekeblad.videouploader.benchmark;
+
+import com.google.api.services.youtube.YouTube;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.Auth;
+import io.github.stekeblad.videouploader.youtube.PartialResponseInitializer;
+import io.github.stekeblad.videouploader.youtube.Uploader;
+import io.github.stekeblad.videouploader.youtube.VideoUpload;
+import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the aggregate upload speed of {@link Uploader} for different numbers of upload slots by uploading the same
+ * batch of generated video files to a {@link FakeUploadServer}.
+ * <p>
+ * Arguments (all optional): number of videos, video size in MiB, per connection bandwidth in MiB/s,
+ * latency per request in milliseconds. Run with {@code gradle uploadBenchmark}
+ */
+public class UploadThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int videoCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int videoSizeMiB = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        long bandwidthMiB = args.length > 2 ? Long.parseLong(args[2]) : 8;
+        long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 150;
+
+        // The uploader reports progress to JavaFX nodes, start the toolkit without showing any window
+        new JFXPanel();
+        Platform.setImplicitExit(false);
+        // the uploader saves its upload sessions in the data directory
+        ConfigManager.INSTANCE.configManager();
+        // The fake server has no quota, do not let quota used by real uploads today hold back the benchmark.
+        // Only changed in memory, the settings are never saved by the benchmark
+        ConfigManager.INSTANCE.setDailyQuota(Long.MAX_VALUE / 2);
+        TranslationsManager.loadAllTranslations(Locale.ENGLISH);
+        PlaylistUtils.INSTANCE.loadCache();
+        CategoryUtils.INSTANCE.loadCategories();
+
+        Path workDir = Files.createTempDirectory("upload-benchmark");
+        List<File> videoFiles = createVideoFiles(workDir, videoCount, videoSizeMiB);
+        FakeUploadServer server = new FakeUploadServer(bandwidthMiB * 1024 * 1024, latencyMillis);
+
+        System.out.println(String.format("%d videos of %d MiB, %d MiB/s per connection, %d ms latency",
+                videoCount, videoSizeMiB, bandwidthMiB, latencyMillis));
+        System.out.println("slots   seconds   MiB/s   speedup   first start ms   avg queue ms");
+        double baseline = 0;
+        try {
+            for (int slots = 1; slots <= Uploader.MAX_PARALLEL_UPLOADS_PER_ACCOUNT; slots *= 2) {
+                BatchResult result = runBatch(server, videoFiles, slots);
+                double bytesPerSecond = result.bytesPerSecond;
+                if (baseline == 0)
+                    baseline = bytesPerSecond;
+                long totalBytes = (long) videoCount * videoSizeMiB * 1024 * 1024;
+                System.out.println(String.format("%5d %9.2f %7.2f %8.2fx %16d %14.0f", slots,
+                        totalBytes / bytesPerSecond, bytesPerSecond / (1024 * 1024), bytesPerSecond / baseline,
+                        result.queueLatency.getMin(), result.queueLatency.getAverage()));
+            }
+        } finally {
+            server.stop();
+            for (File videoFile : videoFiles)
+                Files.deleteIfExists(videoFile.toPath());
+            Files.deleteIfExists(workDir);
+            Platform.exit();
+        }
+    }
+
+    /**
+     * Uploads all videoFiles using an Uploader with the given number of slots
+     *
+     * @return the aggregate upload speed and the time the uploads spent in the queue
+     */
+    private static BatchResult runBatch(FakeUploadServer server, List<File> videoFiles, int slots) throws Exception {
+        CountDownLatch done = new CountDownLatch(videoFiles.size());
+        AtomicInteger failed = new AtomicInteger();
+        Uploader uploader = new Uploader(slots) {
+            @Override
+            protected YouTube createYouTube() {
+                return new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, this::trackUploadSession)
+                        .setYouTubeRequestInitializer(new PartialResponseInitializer())
+                        .setRootUrl(server.getRootUrl()).setApplicationName("Upload benchmark").build();
+            }
+        };
+        uploader.setUploadFinishedCallback(cancelName -> done.countDown());
+        uploader.setUploadErredCallback((video, throwable) -> {
+            throwable.printStackTrace();
+            failed.incrementAndGet();
+            done.countDown();
+        });
+
+        List<VideoUpload> uploads = createUploads(videoFiles);
+        long bytesBefore = server.getTotalBytesReceived();
+        long start = System.nanoTime();
+        for (VideoUpload upload : uploads)
+            uploader.add(upload, upload.getPaneId());
+
+        if (!done.await(1, TimeUnit.HOURS))
+            throw new IllegalStateException("Batch with " + slots + " slots did not finish within an hour");
+        long elapsedNanos = System.nanoTime() - start;
+        uploader.kill(false);
+        if (failed.get() > 0)
+            throw new IllegalStateException(failed.get() + " uploads failed with " + slots + " slots");
+
+        return new BatchResult((server.getTotalBytesReceived() - bytesBefore) / (elapsedNanos / 1e9),
+                uploader.getQueueLatencyStatistics());
+    }
+
+    private static class BatchResult {
+        final double bytesPerSecond;
+        final LongSummaryStatistics queueLatency;
+
+        BatchResult(double bytesPerSecond, LongSummaryStatistics queueLatency) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.queueLatency = queueLatency;
+        }
+    }
+
+    /**
+     * VideoUploads contains JavaFX nodes, create them on the JavaFX thread
+     */
+    private static List<VideoUpload> createUploads(List<File> videoFiles) throws Exception {
+        FutureTask<List<VideoUpload>> creator = new FutureTask<>(() -> {
+            List<VideoUpload> uploads = new ArrayList<>();
+            for (int i = 0; i < videoFiles.size(); i++) {
+                uploads.add(new VideoUpload.Builder()
+                        .setVideoName("Benchmark video " + i)
+                        .setVideoDescription("")
+                        .setPaneName("bench" + i)
+                        .setVideoFile(videoFiles.get(i))
+                        .build());
+            }
+            return uploads;
+        });
+        Platform.runLater(creator);
+        return creator.get();
+    }
+
+    private static List<File> createVideoFiles(Path dir, int count, int sizeMiB) throws IOException {
+        List<File> files = new ArrayList<>();
+        byte[] block = new byte[1024 * 1024];
+        for (int i = 0; i < count; i++) {
+            File file = dir.resolve("video" + i + ".mp4").toFile();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                for (int j = 0; j < sizeMiB; j++) {
+                    block[0] = (byte) j;
+                    raf.write(block);
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+}
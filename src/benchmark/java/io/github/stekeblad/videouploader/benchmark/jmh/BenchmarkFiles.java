@@ -0,0 +1,130 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataNamesMapping;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import javafx.embed.swing.JFXPanel;
+import org.jcodec.api.SequenceEncoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.containers.mp4.boxes.MetaValue;
+import org.jcodec.movtool.MetadataEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Creates the files and the preset the JMH benchmarks work on and starts the parts of the program the ones that
+ * creates VideoUploads and VideoPresets needs, they contains JavaFX nodes and looks up translations and playlists
+ */
+final class BenchmarkFiles {
+    private static boolean programStarted = false;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Starts the JavaFX toolkit without showing any window and loads the settings, the English translations and the
+     * playlist cache like Main does. Does nothing if it is already started.
+     */
+    static synchronized void startProgram() throws Exception {
+        if (!programStarted) {
+            new JFXPanel();
+            ConfigManager.INSTANCE.configManager();
+            TranslationsManager.loadAllTranslations(Locale.ENGLISH);
+            PlaylistUtils.INSTANCE.loadCache();
+            programStarted = true;
+        }
+    }
+
+    /**
+     * Creates a short MP4 video with a title, artist and genre in its iTunes metadata
+     *
+     * @param file the file to create
+     */
+    static void createSmallMp4(File file) throws IOException {
+        SequenceEncoder encoder = SequenceEncoder.createSequenceEncoder(file, 25);
+        Picture picture = Picture.create(64, 64, ColorSpace.RGB);
+        for (int i = 0; i < 5; i++) {
+            picture.getPlaneData(0)[0] = (byte) i;
+            encoder.encodeNativeFrame(picture);
+        }
+        encoder.finish();
+
+        MetadataEditor editor = MetadataEditor.createFrom(file);
+        editor.getItunesMeta().put(fourcc("Title"), MetaValue.createString("Benchmark title"));
+        editor.getItunesMeta().put(fourcc("Artist"), MetaValue.createString("Benchmark artist"));
+        editor.getItunesMeta().put(fourcc("Genre"), MetaValue.createString("Benchmark genre"));
+        editor.save(false);
+    }
+
+    /**
+     * Creates the preset PresetApplicatorBenchmark, PresetTemplateBenchmark and TagProcessorBenchmark applies to the
+     * files from createSmallMp4(). It uses the tags of all tag processors and has a few lines of description without
+     * tags. Call startProgram() first.
+     */
+    static VideoPreset createBenchmarkPreset() {
+        return new VideoPreset.Builder()
+                .setPresetName("benchmark")
+                .setVideoName("$(rawname) episode $(ep) - $(metadata:Title)")
+                .setVideoDescription("Recorded by $(metadata:Artist,someone)\nMore videos: $(playlist)\n" +
+                        "File: $(rawname), $(duration) at $(resolution) $(fps) fps\nA longer description with a few " +
+                        "lines of text that does not contain any tags\nbut still needs to be searched for them")
+                .setVideoTags(Arrays.asList("$(rawname)", "$(metadata:Genre,none)", "gaming", "let's play"))
+                .setPaneName("benchmark")
+                .build();
+    }
+
+    private static int fourcc(String friendlyName) {
+        String fourcc = MetaDataNamesMapping.tryConvertFriendlyNameToFourcc(friendlyName);
+        return ByteBuffer.wrap(fourcc.getBytes(StandardCharsets.ISO_8859_1)).getInt();
+    }
+
+    /**
+     * Creates a copy of a MP4 file with a mdat box of paddingMiB MiB inserted after the first box, so the metadata
+     * at the end of the file is as far from the start as in a long recording. The padding is not written, on file
+     * systems with sparse files it does not use any disc space.
+     *
+     * @param source     a MP4 file created by createSmallMp4()
+     * @param target     the file to create
+     * @param paddingMiB the size of the inserted box
+     */
+    static void createPaddedMp4(File source, File target, long paddingMiB) throws IOException {
+        byte[] sourceBytes = Files.readAllBytes(source.toPath());
+        // The first box is the ftyp box, its size is in the first four bytes
+        int firstBoxSize = ByteBuffer.wrap(sourceBytes).getInt();
+        long paddingBytes = paddingMiB * 1024 * 1024;
+        try (RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            out.setLength(0);
+            out.write(sourceBytes, 0, firstBoxSize);
+            // A box with size 1 has its real size in a 64-bit field after the type
+            out.writeInt(1);
+            out.write("mdat".getBytes(StandardCharsets.ISO_8859_1));
+            out.writeLong(16 + paddingBytes);
+            out.seek(out.getFilePointer() + paddingBytes);
+            out.write(sourceBytes, firstBoxSize, sourceBytes.length - firstBoxSize);
+        }
+    }
+
+    /**
+     * Deletes a directory and everything in it
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir))
+            return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
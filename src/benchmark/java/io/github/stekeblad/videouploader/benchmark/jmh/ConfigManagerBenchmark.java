@@ -0,0 +1,78 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.stekeblad.videouploader.utils.Constants.PRESET_DIR;
+
+/**
+ * Measures ConfigManager.configManager(), what the program does at startup before the main window is shown, with
+ * presetCount presets saved. The presets are written to the presets directory in the working directory and removed
+ * again after the benchmark, the jmh task runs in build/jmh so the program's own data is not touched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConfigManagerBenchmark {
+    private static final String PRESET_PREFIX = "jmh-preset-";
+
+    @Param({"100", "1000", "5000"})
+    public int presetCount;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Also creates the directories
+        BenchmarkFiles.startProgram();
+        String presetString = new VideoPreset.Builder()
+                .setPresetName("benchmark")
+                .setVideoName("$(rawname) episode $(ep)")
+                .setVideoDescription("A description\nwith a few lines\nand a link https://example.com")
+                .setVisibility(VisibilityStatus.PUBLIC)
+                .setVideoTags(Arrays.asList("first tag", "second tag", "third tag"))
+                .setSelectedPlaylist("A playlist")
+                .setCategory("Gaming")
+                .setPaneName("benchmarkPreset")
+                .build()
+                .toString();
+        for (int i = 0; i < presetCount; i++)
+            Files.write(Paths.get(PRESET_DIR, String.format("%s%05d", PRESET_PREFIX, i)), presetString.getBytes("UTF-8"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        File[] presets = new File(PRESET_DIR).listFiles((dir, name) -> name.startsWith(PRESET_PREFIX));
+        if (presets == null)
+            return;
+        for (File preset : presets)
+            Files.deleteIfExists(preset.toPath());
+    }
+
+    @Benchmark
+    public ConfigManager startup() {
+        ConfigManager.INSTANCE.configManager();
+        return ConfigManager.INSTANCE;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.utils.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures FileUtils.readAll() and readAllLines() on files of different sizes. A UTF-8 file is read once, a file saved
+ * by a version before 1.4.1 in the platform encoding is first read as UTF-8, found to be invalid and read again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FileUtilsBenchmark {
+    @Param({"1", "64", "1024"})
+    public int sizeKiB;
+
+    @Param({"UTF-8", "ISO-8859-1"})
+    public String encoding;
+
+    private Path file;
+    private String path;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Lines like the ones in presets and settings, with a character that is encoded differently in the two
+        StringBuilder content = new StringBuilder();
+        int lineNumber = 0;
+        while (content.length() < sizeKiB * 1024)
+            content.append("_videoTitle").append(lineNumber++).append(":Ett f\u00f6rs\u00f6k med en rad text\n");
+        file = Files.createTempFile("file-utils-benchmark", ".txt");
+        Files.write(file, content.toString().getBytes(Charset.forName(encoding)));
+        path = file.toString();
+        if (!encoding.equals(StandardCharsets.UTF_8.name()) && !Charset.defaultCharset().equals(StandardCharsets.UTF_8))
+            System.err.println("The platform encoding is " + Charset.defaultCharset() + ", the fallback may not " +
+                    "decode the file correctly");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String readAll() throws IOException {
+        return FileUtils.readAll(path);
+    }
+
+    @Benchmark
+    public ArrayList<String> readAllLines() throws IOException {
+        return FileUtils.readAllLines(path);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataCache;
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a MetaDataReader for a MP4 file and looking up a tag in it. paddingMiB is the size of the media
+ * data before the metadata, 0 is a short clip and 4096 a long recording. The large file is sparse where the file
+ * system supports it, otherwise it needs 4 GiB of free space in the temp directory. The file is in the page cache
+ * after the first iteration, so this measures the parsing and not the disc. readTitleCached gets the reader from
+ * MetaDataCache like the metadata tag does, that only checks the size and modification time of the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetaDataReaderBenchmark {
+    @Param({"0", "4096"})
+    public long paddingMiB;
+
+    private Path workDir;
+    private File videoFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFiles.startProgram();
+        workDir = Files.createTempDirectory("metadata-benchmark");
+        File smallFile = workDir.resolve("small.mp4").toFile();
+        BenchmarkFiles.createSmallMp4(smallFile);
+        if (paddingMiB == 0) {
+            videoFile = smallFile;
+        } else {
+            videoFile = workDir.resolve("large.mp4").toFile();
+            BenchmarkFiles.createPaddedMp4(smallFile, videoFile, paddingMiB);
+        }
+        if (new MetaDataReader(videoFile).getTagValueByName("Title") == null)
+            throw new IllegalStateException("The metadata of the benchmark file could not be read");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public String readTitle() {
+        return new MetaDataReader(videoFile).getTagValueByName("Title");
+    }
+
+    @Benchmark
+    public String readTitleCached() {
+        return MetaDataCache.INSTANCE.get(videoFile).getTagValueByName("Title");
+    }
+}
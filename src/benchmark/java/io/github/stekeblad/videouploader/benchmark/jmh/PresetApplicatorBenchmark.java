@@ -0,0 +1,84 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.tagProcessing.template.PresetTemplate;
+import io.github.stekeblad.videouploader.utils.background.PresetApplicator;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.VideoUpload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures PresetApplicator.apply() with a preset that uses the tags of all tag processors. Every call is for a
+ * different file until all files has been used, then it starts over. The preset is compiled once like applyPreset()
+ * does. firstApply uses a new PresetApplicator every time, so the tag processors are loaded and the preset compiled
+ * for every file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PresetApplicatorBenchmark {
+    @Param({"16"})
+    public int fileCount;
+
+    private Path workDir;
+    private File[] videoFiles;
+    private VideoPreset preset;
+    private PresetApplicator applicator;
+    private PresetTemplate template;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFiles.startProgram();
+
+        workDir = Files.createTempDirectory("preset-benchmark");
+        videoFiles = new File[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            videoFiles[i] = workDir.resolve("Recording " + i + ".mp4").toFile();
+            BenchmarkFiles.createSmallMp4(videoFiles[i]);
+        }
+        preset = BenchmarkFiles.createBenchmarkPreset();
+        applicator = new PresetApplicator();
+        template = applicator.compile(preset);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        applicator.kill();
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public VideoUpload apply() {
+        File videoFile = videoFiles[next];
+        next = (next + 1) % videoFiles.length;
+        return applicator.apply(videoFile, preset, template, next);
+    }
+
+    @Benchmark
+    public VideoUpload firstApply() {
+        PresetApplicator newApplicator = new PresetApplicator();
+        VideoUpload upload = newApplicator.apply(videoFiles[next], preset, newApplicator.compile(preset), next);
+        next = (next + 1) % videoFiles.length;
+        newApplicator.kill();
+        return upload;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.TagContext;
+import io.github.stekeblad.videouploader.tagProcessing.template.PresetTemplate;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compiling a preset with all tag processors and applying the compiled preset to one video file. The
+ * metadata of the file is read again for every new TagContext, the cached benchmark reuses one context to measure
+ * only the text handling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PresetTemplateBenchmark {
+    private Path workDir;
+    private File videoFile;
+    private VideoPreset preset;
+    private final List<ITagProcessor> processors = new ArrayList<>();
+    private PresetTemplate template;
+    private TagContext cachedContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFiles.startProgram();
+
+        workDir = Files.createTempDirectory("preset-template-benchmark");
+        videoFile = workDir.resolve("Recording 1.mp4").toFile();
+        BenchmarkFiles.createSmallMp4(videoFile);
+        preset = BenchmarkFiles.createBenchmarkPreset();
+        for (ITagProcessor tagProcessor : ServiceLoader.load(ITagProcessor.class))
+            processors.add(tagProcessor);
+        template = PresetTemplate.compile(preset, processors);
+        cachedContext = new TagContext(videoFile, 1);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        TagContext context = new TagContext(videoFile, 1);
+        blackhole.consume(template.renderTitle(context));
+        blackhole.consume(template.renderDescription(context));
+        blackhole.consume(template.renderTags(context));
+    }
+
+    @Benchmark
+    public void applyCached(Blackhole blackhole) {
+        blackhole.consume(template.renderTitle(cachedContext));
+        blackhole.consume(template.renderDescription(cachedContext));
+        blackhole.consume(template.renderTags(cachedContext));
+    }
+
+    @Benchmark
+    public PresetTemplate compile() {
+        return PresetTemplate.compile(preset, processors);
+    }
+}
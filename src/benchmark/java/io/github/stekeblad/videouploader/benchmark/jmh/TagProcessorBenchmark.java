@@ -0,0 +1,85 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.TagContext;
+import io.github.stekeblad.videouploader.tagProcessing.template.PresetTemplate;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one tag processor at the time: compiling a preset with only that processor and applying the result to a
+ * video file with a new TagContext, like PresetApplicator does for every file. The preset contains the tags of all
+ * processors, like in PresetApplicatorBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TagProcessorBenchmark {
+    @Param({"EpisodeTagProcessor", "PlaylistTagProcessor", "RawnameTagProcessor", "MetaDataTagProcessor",
+            "MediaInfoTagProcessor"})
+    public String processorName;
+
+    private Path workDir;
+    private File videoFile;
+    private VideoPreset preset;
+    private List<ITagProcessor> processor;
+    private PresetTemplate template;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFiles.startProgram();
+
+        workDir = Files.createTempDirectory("tag-processor-benchmark");
+        videoFile = workDir.resolve("Recording 1.mp4").toFile();
+        BenchmarkFiles.createSmallMp4(videoFile);
+        preset = BenchmarkFiles.createBenchmarkPreset();
+        for (ITagProcessor tagProcessor : ServiceLoader.load(ITagProcessor.class)) {
+            if (tagProcessor.getClass().getSimpleName().equals(processorName))
+                processor = Collections.singletonList(tagProcessor);
+        }
+        if (processor == null)
+            throw new IllegalArgumentException("No tag processor named " + processorName);
+        template = PresetTemplate.compile(preset, processor);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public PresetTemplate compile() {
+        return PresetTemplate.compile(preset, processor);
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        TagContext context = new TagContext(videoFile, 1);
+        blackhole.consume(template.renderTitle(context));
+        blackhole.consume(template.renderDescription(context));
+        blackhole.consume(template.renderTags(context));
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.stekeblad.videouploader.benchmark.jmh;
+
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+import io.github.stekeblad.videouploader.youtube.VideoUpload;
+import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how VideoPresets and VideoUploads are saved and loaded: toString() and the constructors that recreates
+ * them from that string. Both creates all the JavaFX nodes of the pane, that is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VideoInformationBenchmark {
+    // The number of lines in the description and the number of tags
+    @Param({"1", "50"})
+    public int size;
+
+    private VideoPreset preset;
+    private VideoUpload upload;
+    private String presetString;
+    private String uploadString;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFiles.startProgram();
+        StringBuilder description = new StringBuilder("A description line with a link https://example.com");
+        List<String> tags = new ArrayList<>();
+        tags.add("tag 0");
+        for (int i = 1; i < size; i++) {
+            description.append("\nA description line with a link https://example.com/").append(i);
+            tags.add("tag " + i);
+        }
+        preset = new VideoPreset.Builder()
+                .setPresetName("benchmark")
+                .setVideoName("$(rawname) episode $(ep)")
+                .setVideoDescription(description.toString())
+                .setVisibility(VisibilityStatus.PUBLIC)
+                .setVideoTags(tags)
+                .setSelectedPlaylist("A playlist")
+                .setCategory("Gaming")
+                .setPaneName("benchmarkPreset")
+                .build();
+        upload = new VideoUpload.Builder()
+                .setVideoName("Recording episode 1")
+                .setVideoDescription(description.toString())
+                .setVisibility(VisibilityStatus.PUBLIC)
+                .setVideoTags(tags)
+                .setSelectedPlaylist("A playlist")
+                .setCategory("Gaming")
+                .setVideoFile(new File("Recording.mp4"))
+                .setPaneName("benchmarkUpload")
+                .build();
+        presetString = preset.toString();
+        uploadString = upload.toString();
+    }
+
+    @Benchmark
+    public String presetToString() {
+        return preset.toString();
+    }
+
+    @Benchmark
+    public VideoPreset presetFromString() throws Exception {
+        return new VideoPreset(presetString, "benchmarkPresetCopy");
+    }
+
+    @Benchmark
+    public String uploadToString() {
+        return upload.toString();
+    }
+
+    @Benchmark
+    public VideoUpload uploadFromString() throws Exception {
+        return new VideoUpload(uploadString, "benchmarkUploadCopy");
+    }
+}
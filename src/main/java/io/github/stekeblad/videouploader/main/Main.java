@@ -4,6 +4,7 @@ import io.github.stekeblad.videouploader.jfxExtension.MyStage;
 import io.github.stekeblad.videouploader.utils.AlertUtils;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.Constants;
+import io.github.stekeblad.videouploader.utils.metrics.UploadMetrics;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
@@ -45,6 +46,9 @@ public class Main extends Application {
             return;
         }
 
+        // Upload statistics can be watched with JConsole or VisualVM
+        UploadMetrics.INSTANCE.registerMBeans();
+
         // Set the default exception handler, hopefully it can catch some of the exceptions that is not already caught
         Thread.setDefaultUncaughtExceptionHandler((thread, exception) -> AlertUtils.unhandledExceptionDialog(exception));
 
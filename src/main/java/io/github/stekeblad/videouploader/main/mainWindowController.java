@@ -2,24 +2,33 @@ package io.github.stekeblad.videouploader.main;
 
 import io.github.stekeblad.videouploader.jfxExtension.IWindowController;
 import io.github.stekeblad.videouploader.jfxExtension.MyStage;
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataCache;
 import io.github.stekeblad.videouploader.utils.AlertUtils;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.Constants;
 import io.github.stekeblad.videouploader.utils.FileUtils;
 import io.github.stekeblad.videouploader.utils.background.OpenInBrowser;
 import io.github.stekeblad.videouploader.utils.background.PresetApplicator;
+import io.github.stekeblad.videouploader.utils.background.ThumbnailGenerator;
+import io.github.stekeblad.videouploader.utils.background.ThumbnailNormalizer;
 import io.github.stekeblad.videouploader.utils.background.UpdaterUi;
+import io.github.stekeblad.videouploader.utils.metrics.UploadMetrics;
 import io.github.stekeblad.videouploader.utils.state.ButtonProperties;
 import io.github.stekeblad.videouploader.utils.state.VideoUploadState;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.windowControllers.PresetsWindowController;
+import io.github.stekeblad.videouploader.youtube.QuotaLedger;
+import io.github.stekeblad.videouploader.youtube.UploadSession;
 import io.github.stekeblad.videouploader.youtube.Uploader;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 import io.github.stekeblad.videouploader.youtube.VideoUpload;
 import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
 import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
@@ -34,18 +43,20 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
-import java.time.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static io.github.stekeblad.videouploader.utils.Constants.*;
-import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SIZE;
+import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SOURCE_SIZE;
 import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.THUMBNAIL_FILE_FORMAT;
 import static javafx.scene.control.ProgressIndicator.INDETERMINATE_PROGRESS;
 
@@ -69,6 +80,8 @@ public class mainWindowController implements IWindowController {
     public Label label_numbering;
     public Label label_presetProgress;
     public ProgressBar prog_presetProgress;
+    public HBox box_stats;
+    public Label label_stats;
 
     private ConfigManager configManager;
     private PlaylistUtils playlistUtils;
@@ -84,6 +97,7 @@ public class mainWindowController implements IWindowController {
 
     private Uploader uploader;
     private PresetApplicator presetApplicator;
+    private ThumbnailGenerator thumbnailGenerator;
 
     private Translations transMainWin;
     private Translations transBasic;
@@ -116,6 +130,7 @@ public class mainWindowController implements IWindowController {
 
         uploader = new Uploader();
         presetApplicator = new PresetApplicator();
+        thumbnailGenerator = new ThumbnailGenerator();
 
         uploadPaneCounter = 0;
         uploadQueueVideos = new ArrayList<>();
@@ -148,12 +163,15 @@ public class mainWindowController implements IWindowController {
         // Connect events and callbacks
         uploader.setUploadFinishedCallback(s -> Platform.runLater(() -> onUploadFinished(s)));
         uploader.setUploadErredCallback((videoUpload, throwable) -> Platform.runLater(() -> onUploadErred(videoUpload, throwable)));
-        presetApplicator.setSuccessCallback(upload -> Platform.runLater(() -> onPresetApplicationSuccess(upload)));
-        presetApplicator.setErrorCallback((video, throwable) -> Platform.runLater(() -> onPresetApplicationError(video, throwable)));
+        uploader.setPostUploadErredCallback(this::onPostUploadErred);
+        presetApplicator.setSuccessCallback(this::onPresetApplicationSuccess);
+        presetApplicator.setErrorCallback(this::onPresetApplicationError);
 
         // Set up button sets for the different states a upload can be in: editing, locked, uploading, failed/erred
         defineUploadStates();
 
+        startStatisticsPanel();
+
         // If any uploads was saved when the program was closed last time
         if(configManager.hasWaitingUploads()) {
             ArrayList<String> waitingUploads = configManager.getWaitingUploads();
@@ -170,6 +188,7 @@ public class mainWindowController implements IWindowController {
                         transUpload.autoTranslate(loadedUpload.getPane(), loadedUpload.getPaneId());
 
                         uploadQueueVideos.add(loadedUpload);
+                        prepareThumbnail(loadedUpload);
                     } catch (Exception e) {
                         failedLoadingWaitingUpload = true;
                     }
@@ -180,6 +199,8 @@ public class mainWindowController implements IWindowController {
             }
             updateUploadList();
         }
+        // If uploads was interrupted by closing the program or a crash they can continue from where they stopped
+        restoreUploadSessions();
         // Set so pressing F1 opens the wiki page for this window
         Scene scene = mainWindowPane.getScene();
         scene.setOnKeyPressed((event) -> {
@@ -207,6 +228,7 @@ public class mainWindowController implements IWindowController {
         // Check if uploads is in progress, if not then directly return true
         if (! uploader.getIsActive()) {
             uploader.kill(); // just because it does not do anything it started and must be stopped
+            onClosing();
             return true;
         }
         String op1 = transMainWin.getString("diag_closeWarn_op1");
@@ -220,22 +242,82 @@ public class mainWindowController implements IWindowController {
         if (choice.equals(op1)) {
             return false;
         } else if (choice.equals(op2)) {
-            uploader.kill();
+            Set<String> tasks = uploader.kill(false);
+            tasks.forEach(s -> {
+                int index = getUploadIndexByName(s);
+                if (index != -1) {
+                    UploadSession.discard(uploadQueueVideos.get(index).getVideoFile());
+                }
+            });
+            onClosing();
             return true;
         } else if (choice.equals(op3)) {
 
-            Set<String> tasks = uploader.kill();
+            Set<String> tasks = uploader.kill(true);
             tasks.forEach(s -> {
                 int index = getUploadIndexByName(s);
                 if (index != -1) { // If a task does not have a index it has been removed and is not interesting, or bugged with a bad id, skip them
-                    configManager.saveWaitingUpload(uploadQueueVideos.get(index).toString(), String.valueOf(index));
+                    // Uploads that has started uploading the video file is restored from their upload session instead
+                    if (UploadSession.find(uploadQueueVideos.get(index).getVideoFile()) == null)
+                        configManager.saveWaitingUpload(uploadQueueVideos.get(index).toString(), String.valueOf(index));
                 }
             });
+            onClosing();
             return true;
         }
         return false;
     }
 
+    /**
+     * Stops the background work that is not needed after the window has been closed, only call it when the user has
+     * confirmed that the window should be closed
+     */
+    private void onClosing() {
+        thumbnailGenerator.kill();
+        MetaDataCache.INSTANCE.save();
+        QuotaLedger.INSTANCE.flush();
+    }
+
+    /**
+     * Adds all uploads that has a saved upload session to the list, locked and with a status text that tells how
+     * much of the video that has already been uploaded. They continue from there when they are started.
+     */
+    private void restoreUploadSessions() {
+        List<UploadSession> sessions = UploadSession.loadAll();
+        if (sessions.isEmpty())
+            return;
+        boolean failedLoadingSession = false;
+        for (UploadSession session : sessions) {
+            // Skip sessions for files that has been changed or removed and for uploads that is already in the list
+            if (!session.isUnchanged()) {
+                UploadSession.discard(session.getVideoFile());
+                continue;
+            }
+            if (getUploadIndexByVideoFile(session.getVideoFile()) != -1)
+                continue;
+            try {
+                VideoUpload loadedUpload = session.toVideoUpload(String.valueOf(uploadPaneCounter++));
+                loadedUpload.setThumbnailCursorEventHandler(this::updateCursor);
+                buttonStates.setLocked(loadedUpload);
+
+                // Auto resize width and translation
+                loadedUpload.getPane().prefWidthProperty().bind(listView.widthProperty().subtract(35));
+                transUpload.autoTranslate(loadedUpload.getPane(), loadedUpload.getPaneId());
+
+                int percent = (int) Math.floor(100.0 * session.getBytesUploaded() / session.getFileSize());
+                loadedUpload.setStatusLabelText(String.format(transUpload.getString("resumable"), percent));
+                uploadQueueVideos.add(loadedUpload);
+            } catch (Exception e) {
+                e.printStackTrace();
+                failedLoadingSession = true;
+            }
+        }
+        if (failedLoadingSession)
+            AlertUtils.simpleClose(transBasic.getString("app_name"),
+                    transMainWin.getString("diag_loadWaitingUploads")).show();
+        updateUploadList();
+    }
+
     /**
      * Called when the pick files button is pressed.
      * Opens a file chooser and sets the list of selected files to the left of the button
@@ -464,6 +546,10 @@ public class mainWindowController implements IWindowController {
         if (userChoice == ButtonType.YES) {
             bypassAbortWarning = true; // is set back to false by onAbortAllUploadsClicked
             onAbortAllUploadsClicked(new ActionEvent());
+            // restored uploads that was never started again still has their sessions
+            for (VideoUpload upload : uploadQueueVideos) {
+                UploadSession.discard(upload.getVideoFile());
+            }
             uploadQueueVideos.clear();
             uploadPaneCounter = 0;
             updateUploadList();
@@ -548,6 +634,67 @@ public class mainWindowController implements IWindowController {
         label_presetProgress.setText(String.format(transMainWin.getString("label_presetProgress"), presetsInProgress));
     }
 
+    /**
+     * Shows the upload statistics in the toolbar, they are updated once per second. Hovering them shows more details.
+     */
+    private void startStatisticsPanel() {
+        Tooltip statsDetails = new Tooltip();
+        label_stats.setTooltip(statsDetails);
+        Timeline statsTimeline = new Timeline(new KeyFrame(Duration.seconds(1),
+                event -> updateStatisticsPanel(statsDetails)));
+        statsTimeline.setCycleCount(Animation.INDEFINITE);
+        statsTimeline.play();
+    }
+
+    private void updateStatisticsPanel(Tooltip statsDetails) {
+        UploadMetrics metrics = UploadMetrics.INSTANCE;
+        int queued = metrics.getQueueDepth();
+        int active = metrics.getActiveUploads();
+        // Nothing to show before the first upload is started
+        box_stats.setVisible(queued + active > 0 || metrics.getTotalBytesUploaded() > 0);
+        if (!box_stats.isVisible())
+            return;
+
+        long eta = metrics.getEtaSeconds();
+        label_stats.setText(String.format(transMainWin.getString("stats_summary"),
+                formatBytes(metrics.getBytesPerSecond()), active, queued, eta < 0 ? "-" : formatDuration(eta)));
+        Map<String, Long> phaseTime = metrics.getPhaseTimeMillis();
+        statsDetails.setText(String.format(transMainWin.getString("stats_details"),
+                formatBytes(metrics.getTotalBytesUploaded()), metrics.getFinishedUploads(),
+                metrics.getChunkCount(), metrics.getChunkLatencyMedianMillis(), metrics.getChunkLatencyP95Millis(),
+                metrics.getChunkLatencyMaxMillis(),
+                metrics.getApiCallTotal(), metrics.getApiFailureTotal(),
+                formatDuration(phaseTime.get(UploadMetrics.Phase.QUEUED.name()) / 1000),
+                formatDuration(phaseTime.get(UploadMetrics.Phase.WAITING_FOR_QUOTA.name()) / 1000),
+                formatDuration(phaseTime.get(UploadMetrics.Phase.UPLOADING.name()) / 1000),
+                formatDuration(phaseTime.get(UploadMetrics.Phase.POST_UPLOAD.name()) / 1000)));
+    }
+
+    /**
+     * @return bytes as a string like "12.3 MiB"
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        String[] units = {"KiB", "MiB", "GiB", "TiB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+
+    /**
+     * @return seconds as a string like "1:02:03" or "2:03"
+     */
+    private static String formatDuration(long seconds) {
+        if (seconds >= 3600)
+            return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
     /**
      * Takes a node Id and checks if there is a upload with that id and if so returns its index inside uploadQueueVideos.
      * @param nameToTest a Node id
@@ -564,6 +711,20 @@ public class mainWindowController implements IWindowController {
         return videoIndex;
     }
 
+    /**
+     * Checks if there is a upload for the given video file and if so returns its index inside uploadQueueVideos.
+     * @param videoFile a video file
+     * @return the index of a upload of that file inside uploadQueueVideos or -1 if it was not found in uploadQueueVideos.
+     */
+    private int getUploadIndexByVideoFile(File videoFile) {
+        for (int i = 0; i < uploadQueueVideos.size(); i++) {
+            if (uploadQueueVideos.get(i).getVideoFile().getAbsoluteFile().equals(videoFile.getAbsoluteFile())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Called when the edit button for a upload is clicked
      * Enables editing for that upload, takes a backup of its state to be able to revert and changes the available buttons
@@ -583,10 +744,11 @@ public class mainWindowController implements IWindowController {
         uploadQueueVideos.get(selected).setEditable(true);
         uploadQueueVideos.get(selected).setOnThumbnailClicked(event -> {
             if (event.getButton() == MouseButton.SECONDARY) return; // Conflicting with context menu
-            File pickedThumbnail = FileUtils.pickThumbnail(THUMBNAIL_FILE_FORMAT, MAX_THUMB_SIZE);
+            File pickedThumbnail = FileUtils.pickThumbnail(THUMBNAIL_FILE_FORMAT, MAX_THUMB_SOURCE_SIZE);
             if(pickedThumbnail != null) {
                 try {
                     uploadQueueVideos.get(selected).setThumbNailFile(pickedThumbnail);
+                    ThumbnailNormalizer.INSTANCE.prepare(pickedThumbnail);
                 } catch (Exception e) {
                     AlertUtils.exceptionDialog(transBasic.getString("app_name"), "Could not set Thumbnail", e);
                 }
@@ -698,6 +860,8 @@ public class mainWindowController implements IWindowController {
         if (userChoice == ButtonType.YES) {
             // delete backup (may exist if upload was created with no preset and directly deleted
             editBackups.remove(uploadQueueVideos.get(selected).getPaneId());
+            // the upload can not be resumed after it has been removed
+            UploadSession.discard(uploadQueueVideos.get(selected).getVideoFile());
             uploadQueueVideos.remove(selected);
             updateUploadList();
         } // else if ButtonType.NO or closed [X] do nothing
@@ -781,6 +945,7 @@ public class mainWindowController implements IWindowController {
         boolean abortSuccess = uploader.abortUpload(uploadQueueVideos.get(selected).getPaneId());
 
         if (abortSuccess) {
+            UploadSession.discard(uploadQueueVideos.get(selected).getVideoFile());
             // Set label text and reset progress bar
             uploadQueueVideos.get(selected).setProgressBarVisibility(false);
             uploadQueueVideos.get(selected).setProgressBarProgress(INDETERMINATE_PROGRESS); // reset progBar to be animated
@@ -835,20 +1000,45 @@ public class mainWindowController implements IWindowController {
     }
 
     /**
-     * Called when PresetApplicator successfully applied a preset to a video
+     * Called when PresetApplicator successfully applied a preset to one or more videos
      *
-     * @param newUpload the newly created VideoUpload created from a File and a VideoPreset
+     * @param newUploads the newly created VideoUploads created from Files and a VideoPreset, in the order the files
+     *                   was selected
      */
-    private void onPresetApplicationSuccess(VideoUpload newUpload) {
-        // make the upload change its width together with the uploads list and the window
-        newUpload.getPane().prefWidthProperty().bind(listView.widthProperty().subtract(35));
-        newUpload.setThumbnailCursorEventHandler(this::updateCursor);
-
-        transUpload.autoTranslate(newUpload.getPane(), newUpload.getPaneId());
-        buttonStates.setLocked(newUpload);
-        uploadQueueVideos.add(newUpload);
+    private void onPresetApplicationSuccess(List<VideoUpload> newUploads) {
+        for (VideoUpload newUpload : newUploads) {
+            // make the upload change its width together with the uploads list and the window
+            newUpload.getPane().prefWidthProperty().bind(listView.widthProperty().subtract(35));
+            newUpload.setThumbnailCursorEventHandler(this::updateCursor);
+
+            transUpload.autoTranslate(newUpload.getPane(), newUpload.getPaneId());
+            buttonStates.setLocked(newUpload);
+            uploadQueueVideos.add(newUpload);
+            prepareThumbnail(newUpload);
+        }
         updateUploadList();
-        updatePresetProgressIndicator(-1);
+        updatePresetProgressIndicator(-newUploads.size());
+    }
+
+    /**
+     * Makes the thumbnail of a upload ready for uploading in the background, or creates a thumbnail from a frame of
+     * the video if the upload does not have one
+     *
+     * @param upload the upload to prepare the thumbnail for
+     */
+    private void prepareThumbnail(VideoUpload upload) {
+        if (upload.getThumbNail() != null && upload.getThumbNail().exists()) {
+            ThumbnailNormalizer.INSTANCE.prepare(upload.getThumbNail());
+            return;
+        }
+        thumbnailGenerator.generate(upload.getVideoFile(), thumbnail -> {
+            try {
+                upload.setDefaultThumbNailFile(thumbnail);
+            } catch (FileNotFoundException e) {
+                System.err.println("Could not show the created thumbnail " + thumbnail.getAbsolutePath());
+                e.printStackTrace();
+            }
+        });
     }
 
     /**
@@ -891,27 +1081,6 @@ public class mainWindowController implements IWindowController {
         String header = transBasic.getString("app_name") + " - Failed to upload video";
         if (e == null || video == null) {
             AlertUtils.simpleClose(header, "For an unknown reason is error information not available").show();
-        } else if (e.getMessage() != null && e.getMessage().contains("quotaExceeded")) {
-            // abort all scheduled uploads, they will all fail with this error
-            bypassAbortWarning = true;
-            for (String key : uploader.getUploadQueue()) {
-                uploader.abortUpload((key));
-                onAbort(key + "_fakeButton");
-            }
-            bypassAbortWarning = false;
-
-            // Find when midnight in the pacific timezone is in the user's timezone
-            ZoneOffset userUtcOffset = ZonedDateTime.ofInstant(Instant.now(), ZoneId.systemDefault()).getOffset();
-            ZoneOffset pacificOffset = ZoneId.of("UTC-8").getRules().getOffset(Instant.now());
-            Duration timeDiff = Duration.ofSeconds(pacificOffset.compareTo(userUtcOffset));
-            if (timeDiff.isNegative())
-                timeDiff = timeDiff.plusHours(24);
-            long minutes = timeDiff.minusHours(timeDiff.toHours()).toMinutes(); // example: 00:30 = 06:30 - 06:00
-            String userClockAtPacificMidnight = String.format("%02d", timeDiff.toHours()) + ":" + String.format("%02d", minutes);
-
-            AlertUtils.simpleClose(header, transBasic.getString("app_name") + " has reached its daily upload limit" +
-                    " in the YouTube API and can not continue the uploading. All scheduled uploads has been aborted.\n\n" +
-                    "The limit will be reset at midnight Pacific Time. (" + userClockAtPacificMidnight + " in your timezone.)").show();
         } else if (e.getMessage() != null && e.getMessage().contains("uploadLimitExceeded")) {
             // abort all scheduled uploads, they will all fail with this error
             bypassAbortWarning = true;
@@ -939,4 +1108,17 @@ public class mainWindowController implements IWindowController {
             updateUploadList();
         }
     }
+
+    /**
+     * Called if the thumbnail could not be set or the video could not be added to its playlist. The video has been
+     * uploaded so the upload is not marked as failed.
+     *
+     * @param video the video that was uploaded
+     * @param e     the exception that occurred
+     */
+    private void onPostUploadErred(VideoUpload video, Throwable e) {
+        String header = transBasic.getString("app_name") + " - Failed to finish upload";
+        AlertUtils.exceptionDialog(header, "The video \"" + video.getVideoName() + "\" was uploaded but its " +
+                "thumbnail or playlist could not be set. You can do it on YouTube instead", e);
+    }
 }
@@ -1,47 +1,25 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
+import io.github.stekeblad.videouploader.tagProcessing.template.TagSlot;
+import io.github.stekeblad.videouploader.tagProcessing.template.TemplateField;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 
-import java.io.File;
-import java.util.List;
-
 /**
- * Numbers videos that uses this preset starting at initialAutoNum.
+ * Numbers videos that uses this preset starting at the number in the auto num field.
  * The number is inserted at the location of the tag $(ep) inside the title field
  */
 public class EpisodeTagProcessor implements ITagProcessor {
-    private int autoNum;
-    private boolean tagFound;
-    private final String EPISODE_TAG = "$(ep)";
+    private static final String EPISODE_TAG = "ep";
+    private static final ITagValue EPISODE_NUMBER = (out, context) -> out.append(context.getAutoNum());
 
     public EpisodeTagProcessor() {
     }
 
     @Override
-    public void init(VideoPreset preset, int initialAutoNum) {
-        tagFound = preset.getVideoName().contains(EPISODE_TAG);
-        if (!tagFound)
-            return;
-        autoNum = initialAutoNum;
-
-    }
-
-    @Override
-    public String processTitle(String currentTitle, File videoFile) {
-        if (tagFound)
-            return currentTitle.replace(EPISODE_TAG, Integer.toString(autoNum++));
-        else
-            return currentTitle;
-    }
-
-    @Override
-    public String processDescription(String currentDescription, File videoFile) {
-        return currentDescription;
-    }
-
-    @Override
-    public List<String> processTags(List<String> currentTags, File videoFile) {
-        return currentTags;
+    public ITagValue bind(TagSlot slot, TemplateField field, VideoPreset preset) {
+        if (field == TemplateField.TITLE && slot.is(EPISODE_TAG))
+            return EPISODE_NUMBER;
+        return null;
     }
 
     @Override
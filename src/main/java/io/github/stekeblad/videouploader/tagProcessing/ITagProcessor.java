@@ -1,57 +1,86 @@
 package io.github.stekeblad.videouploader.tagProcessing;
 
+import io.github.stekeblad.videouploader.tagProcessing.template.TagSlot;
+import io.github.stekeblad.videouploader.tagProcessing.template.TemplateField;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 
 import java.io.File;
 import java.util.List;
 
 /**
- * Interface all TagProcessors need to implement. A TagProcessor can assume init(...) is called before any process method.
- * The init method should provide all information needed for the TagProcessor to prepare for a call to one of the process
- * methods. Note that init(...) gets a preset as one of its parameters and that the data provided in the process methods
- * may look different than the preset as other tags may have executed already
+ * Interface all TagProcessors need to implement. A TagProcessor replaces tags like $(name) or $(name:argument) in the
+ * title, description and tags of a preset. When a preset is compiled to a
+ * {@link io.github.stekeblad.videouploader.tagProcessing.template.PresetTemplate} every TagProcessor is asked to bind
+ * the tags found in it and the values it returns becomes a part of the compiled template.
+ * <p>
+ * A TagProcessor must not keep any state. The same instance is used for all presets and a compiled template is applied
+ * to many video files at the same time from different threads, everything that belongs to one video file is in the
+ * {@link TagContext} given to the value.
+ * <p>
+ * TagProcessors written for older versions of the program implements init(...) and the process methods instead of
+ * bind(...). They still work: a TagProcessor that does not override bind(...) gets init(...) and its process methods
+ * called for every video file after the compiled template has replaced the other tags, one video file at the time.
+ * New TagProcessors should only implement bind(...).
  */
 public interface ITagProcessor {
     /**
-     * The constructor for a TagProcessor. A TagProcessor do not need to worry about a process method being called before
-     * init(...) has been called. This is a good place to do some initial processing and prepare as much as possible to
-     * reduce the amount of work needed in the process methods. For example if the tag this TagProcessor is looking for
-     * does not exist in the preset it can set a boolean so it returns directly in the process methods.
+     * Called when a preset is compiled for every tag found in it. Everything that only depends on the preset, like
+     * finding the URL of the selected playlist, should be done here so the returned value has as little as possible to
+     * do for every video file.
      *
-     * @param preset        the selected VideoPreset
-     * @param initialAutoNum the value in the auto num field when the apply preset button was pressed
+     * @param slot   the tag
+     * @param field  the field of the preset the tag was found in
+     * @param preset the preset that is compiled
+     * @return the value of the tag for each video file, or null if this TagProcessor does not replace the tag
      */
-    void init(VideoPreset preset, int initialAutoNum);
+    default ITagValue bind(TagSlot slot, TemplateField field, VideoPreset preset) {
+        return null;
+    }
 
     /**
-     * Processes the title field of a video and replaces the tags target by this TagProcessor with new data. Note that the
-     * parameter currentTitle may differ from the title in the preset as other TagProcessors may already have modified the title
+     * Called before the process methods for every video file. Only called for TagProcessors that does not override
+     * bind(...).
      *
-     * @param currentTitle the title of the VideoUpload that is currently being processed
-     * @param videoFile The file for the video currently being processed
-     * @return the value in currentTitle with or without modifications, depending if any of tags searched for was found
+     * @param preset         the selected VideoPreset
+     * @param initialAutoNum the episode number of the video that is processed next
+     * @deprecated implement bind(...) instead
      */
-    String processTitle(String currentTitle, File videoFile);
+    @Deprecated
+    default void init(VideoPreset preset, int initialAutoNum) {
+    }
 
     /**
-     * Processes the description field of a video and replaces the tags target by this TagProcessor with new data. Note that the
-     * parameter currentDescription may differ from the description in the preset as other TagProcessors may already have modified the description
-     *
-     * @param currentDescription the description of the VideoUpload that is currently being processed
-     * @param videoFile The file for the video currently being processed
-     * @return the value in currentDescription with or without modifications, depending if any of tags searched for was found
+     * @param currentTitle the title with the tags of the other TagProcessors replaced
+     * @param videoFile    the file for the video currently being processed
+     * @return currentTitle with or without modifications
+     * @deprecated implement bind(...) instead
      */
-    String processDescription(String currentDescription, File videoFile);
+    @Deprecated
+    default String processTitle(String currentTitle, File videoFile) {
+        return currentTitle;
+    }
 
     /**
-     * Processes the VideoTags field of a video and replaces the tags target by this TagProcessor with new data. Note that the
-     * parameter currentTags may differ from the VideoTags in the preset as other TagProcessors may already have modified the VideoTags
-     *
-     * @param currentTags the VideoTags of the VideoUpload that is currently being processed
-     * @param videoFile The file for the video currently being processed
-     * @return the value in currentTitle with or without modifications, depending if any of tags searched for was found
+     * @param currentDescription the description with the tags of the other TagProcessors replaced
+     * @param videoFile          the file for the video currently being processed
+     * @return currentDescription with or without modifications
+     * @deprecated implement bind(...) instead
+     */
+    @Deprecated
+    default String processDescription(String currentDescription, File videoFile) {
+        return currentDescription;
+    }
+
+    /**
+     * @param currentTags the VideoTags with the tags of the other TagProcessors replaced
+     * @param videoFile   the file for the video currently being processed
+     * @return currentTags with or without modifications
+     * @deprecated implement bind(...) instead
      */
-    List<String> processTags(List<String> currentTags, File videoFile);
+    @Deprecated
+    default List<String> processTags(List<String> currentTags, File videoFile) {
+        return currentTags;
+    }
 
     /**
      * @return the name of this TagProcessor
@@ -0,0 +1,16 @@
+package io.github.stekeblad.videouploader.tagProcessing;
+
+/**
+ * The value of one tag in a compiled preset, returned by {@link ITagProcessor#bind}. It must not change after it is
+ * created, it is called from several threads at the same time.
+ */
+@FunctionalInterface
+public interface ITagValue {
+    /**
+     * Appends the value the tag should be replaced with for a video file
+     *
+     * @param out     the text the value should be appended to
+     * @param context the video file currently being processed
+     */
+    void appendTo(StringBuilder out, TagContext context);
+}
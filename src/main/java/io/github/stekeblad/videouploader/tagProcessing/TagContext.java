@@ -0,0 +1,52 @@
+package io.github.stekeblad.videouploader.tagProcessing;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Everything that belongs to the video file that a compiled preset is currently applied to. A new context is created
+ * for every file and it is only used by one thread, so tag values can use it to share things they have read from the
+ * file, like its metadata.
+ */
+public final class TagContext {
+    private final File videoFile;
+    private final int autoNum;
+    private Map<Class<?>, Object> fileValues = null;
+
+    /**
+     * @param videoFile the file for the video currently being processed
+     * @param autoNum   the episode number of the video currently being processed
+     */
+    public TagContext(File videoFile, int autoNum) {
+        this.videoFile = videoFile;
+        this.autoNum = autoNum;
+    }
+
+    public File getVideoFile() {
+        return videoFile;
+    }
+
+    public int getAutoNum() {
+        return autoNum;
+    }
+
+    /**
+     * Gets something read from the video file, it is only read the first time it is asked for during this context.
+     *
+     * @param type   the type of the value, used as the key
+     * @param reader reads the value from the video file
+     * @return the value
+     */
+    public <T> T getFileValue(Class<T> type, Function<File, ? extends T> reader) {
+        if (fileValues == null)
+            fileValues = new HashMap<>();
+        Object value = fileValues.get(type);
+        if (value == null) {
+            value = reader.apply(videoFile);
+            fileValues.put(type, value);
+        }
+        return type.cast(value);
+    }
+}
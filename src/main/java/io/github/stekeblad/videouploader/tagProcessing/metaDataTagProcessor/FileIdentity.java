@@ -0,0 +1,60 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * Identifies a version of a file by its path, size and when it was last modified. If any of them has changed the file
+ * is assumed to have new content.
+ */
+public final class FileIdentity {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+
+    public FileIdentity(String path, long size, long lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param file a file
+     * @return the identity of the current version of the file
+     */
+    public static FileIdentity of(File file) {
+        return new FileIdentity(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof FileIdentity))
+            return false;
+        FileIdentity other = (FileIdentity) o;
+        return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, size, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + size + " bytes, modified " + lastModified + ")";
+    }
+}
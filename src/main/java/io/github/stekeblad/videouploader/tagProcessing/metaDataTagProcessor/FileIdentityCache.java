@@ -0,0 +1,75 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Remembers a value computed from a file for the last maxFiles files that was used. The cache is keyed by the path so a
+ * file is only in it once, a value is only returned while the file has the same size and modification time as when
+ * the value was added. The least recently used file is forgotten when the cache is full. All methods are threadsafe.
+ *
+ * @param <V> the type of the remembered values
+ */
+public final class FileIdentityCache<V> {
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    private static final class Entry<V> {
+        final FileIdentity identity;
+        final V value;
+
+        Entry(FileIdentity identity, V value) {
+            this.identity = identity;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param maxFiles the number of files to remember
+     */
+    public FileIdentityCache(int maxFiles) {
+        entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
+
+    /**
+     * @param identity the current identity of a file
+     * @return the value for the file or null if it is not in the cache or has changed since the value was added
+     */
+    public synchronized V get(FileIdentity identity) {
+        Entry<V> entry = entries.get(identity.getPath());
+        if (entry != null && entry.identity.equals(identity))
+            return entry.value;
+        return null;
+    }
+
+    /**
+     * Adds the value for a file, replacing the value for any earlier version of the file
+     *
+     * @param identity the identity of the file the value was computed from
+     * @param value    the value
+     */
+    public synchronized void put(FileIdentity identity, V value) {
+        entries.put(identity.getPath(), new Entry<>(identity, value));
+    }
+
+    /**
+     * Calls action for every file in the cache, the least recently used first
+     */
+    public synchronized void forEach(BiConsumer<FileIdentity, V> action) {
+        for (Entry<V> entry : entries.values())
+            action.accept(entry.identity, entry.value);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
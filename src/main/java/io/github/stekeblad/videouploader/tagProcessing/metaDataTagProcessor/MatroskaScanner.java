@@ -0,0 +1,486 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import javafx.util.Pair;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the metadata in Matroska (MKV) and WebM files, like the recordings made by OBS. Only the element headers of
+ * the segment are read until the first cluster, the SeekHead tells where the Info and Tags elements are so they can be
+ * read directly even if they are written after the media data at the end of the file. How much that is read does not
+ * depend on the size of the file, so the clusters are never walked and Tags after them is not found if the file has
+ * no SeekHead that points to them.
+ * <p>
+ * The title, muxing app, writing app and date from Info is returned with those names and every SimpleTag in Tags with
+ * its TagName, in the order they are found. Binary tags has the value BLOB like in MP4 files. scanMediaInfo() reads
+ * the duration from Info and the properties of the first video track in Tracks instead. If the file is not a Matroska
+ * or WebM file both returns null.
+ */
+final class MatroskaScanner {
+    // Element IDs, the length marker bits are included
+    private static final int EBML = 0x1A45DFA3;
+    private static final int DOC_TYPE = 0x4282;
+    private static final int SEGMENT = 0x18538067;
+    private static final int SEEK_HEAD = 0x114D9B74;
+    private static final int SEEK = 0x4DBB;
+    private static final int SEEK_ID = 0x53AB;
+    private static final int SEEK_POSITION = 0x53AC;
+    private static final int INFO = 0x1549A966;
+    private static final int TITLE = 0x7BA9;
+    private static final int MUXING_APP = 0x4D80;
+    private static final int WRITING_APP = 0x5741;
+    private static final int DATE_UTC = 0x4461;
+    private static final int TIMECODE_SCALE = 0x2AD7B1;
+    private static final int DURATION = 0x4489;
+    private static final int TRACKS = 0x1654AE6B;
+    private static final int TRACK_ENTRY = 0xAE;
+    private static final int TRACK_TYPE = 0x83;
+    private static final int CODEC_ID = 0x86;
+    private static final int DEFAULT_DURATION = 0x23E383;
+    private static final int VIDEO = 0xE0;
+    private static final int PIXEL_WIDTH = 0xB0;
+    private static final int PIXEL_HEIGHT = 0xBA;
+    private static final int TAGS = 0x1254C367;
+    private static final int TAG = 0x7373;
+    private static final int SIMPLE_TAG = 0x67C8;
+    private static final int TAG_NAME = 0x45A3;
+    private static final int TAG_STRING = 0x4487;
+    private static final int TAG_BINARY = 0x4485;
+    private static final int CLUSTER = 0x1F43B675;
+
+    private static final long UNKNOWN_SIZE = -1;
+    private static final long TRACK_TYPE_VIDEO = 1;
+    // Dates in Matroska files are in nanoseconds since the start of 2001
+    private static final long DATE_UTC_EPOCH_SECONDS = 978307200L;
+    // The elements that are read completely are small, larger ones are not read
+    private static final long MAX_ELEMENT_SIZE = 16 * 1024 * 1024;
+    // Stop looking for top level elements after this many if no cluster has been found
+    private static final int MAX_TOP_LEVEL_ELEMENTS = 64;
+    private static final int MAX_HEADER_SIZE = 12;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+    private long segmentDataStart;
+    private long segmentEnd;
+    private long infoPosition = -1;
+    private long tracksPosition = -1;
+    private long tagsPosition = -1;
+    // The ID of the element nextChild() returned last
+    private int lastId;
+
+    /**
+     * The metadata found in a file
+     */
+    static final class Result {
+        final List<Pair<String, String>> tags = new ArrayList<>();
+    }
+
+    // The position, ID and size of a element, the data starts dataStart bytes after position
+    private static final class ElementHeader {
+        final long position;
+        final int id;
+        final long size;
+        final int dataStart;
+
+        ElementHeader(long position, int id, long size, int dataStart) {
+            this.position = position;
+            this.id = id;
+            this.size = size;
+            this.dataStart = dataStart;
+        }
+
+        long dataPosition() {
+            return position + dataStart;
+        }
+
+        long end() {
+            return dataPosition() + size;
+        }
+    }
+
+    private MatroskaScanner(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Scans a file for metadata
+     *
+     * @param videoFile the file to scan
+     * @return the metadata found in the file, empty if it has none, or null if the file is not a Matroska or WebM file
+     * @throws IOException if the file could not be read
+     */
+    static Result scan(File videoFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(videoFile.toPath(), StandardOpenOption.READ)) {
+            return new MatroskaScanner(channel).scan();
+        }
+    }
+
+    /**
+     * Reads the technical properties of a file from the Info and Tracks elements, no media data is read
+     *
+     * @param videoFile the file to scan
+     * @return the properties found in the file or null if the file is not a Matroska or WebM file
+     * @throws IOException if the file could not be read
+     */
+    static MediaInfo scanMediaInfo(File videoFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(videoFile.toPath(), StandardOpenOption.READ)) {
+            return new MatroskaScanner(channel).scanMediaInfo();
+        }
+    }
+
+    private Result scan() throws IOException {
+        if (!findTopLevelElements())
+            return null;
+        Result result = new Result();
+        if (infoPosition >= 0)
+            readInfo(readElement(infoPosition, INFO), result.tags);
+        if (tagsPosition >= 0)
+            readTags(readElement(tagsPosition, TAGS), result.tags);
+        return result;
+    }
+
+    private MediaInfo scanMediaInfo() throws IOException {
+        if (!findTopLevelElements())
+            return null;
+        long durationMillis = -1;
+        ByteBuffer info = infoPosition >= 0 ? readElement(infoPosition, INFO) : null;
+        if (info != null) {
+            // The duration is a float in TimecodeScale nanoseconds
+            long timecodeScale = 1000000;
+            double duration = -1;
+            ByteBuffer child;
+            while ((child = nextChild(info, 0)) != null) {
+                if (lastId == TIMECODE_SCALE)
+                    timecodeScale = readUnsigned(child);
+                else if (lastId == DURATION)
+                    duration = readFloat(child);
+            }
+            if (duration > 0)
+                durationMillis = (long) (duration * timecodeScale / 1000000);
+        }
+
+        ByteBuffer tracks = tracksPosition >= 0 ? readElement(tracksPosition, TRACKS) : null;
+        ByteBuffer trackEntry;
+        while (tracks != null && (trackEntry = nextChild(tracks, TRACK_ENTRY)) != null) {
+            long trackType = 0;
+            String codec = null;
+            long defaultDuration = 0;
+            int width = 0;
+            int height = 0;
+            ByteBuffer child;
+            while ((child = nextChild(trackEntry, 0)) != null) {
+                if (lastId == TRACK_TYPE) {
+                    trackType = readUnsigned(child);
+                } else if (lastId == CODEC_ID) {
+                    codec = readString(child);
+                } else if (lastId == DEFAULT_DURATION) {
+                    defaultDuration = readUnsigned(child);
+                } else if (lastId == VIDEO) {
+                    ByteBuffer videoChild;
+                    while ((videoChild = nextChild(child, 0)) != null) {
+                        if (lastId == PIXEL_WIDTH)
+                            width = (int) readUnsigned(videoChild);
+                        else if (lastId == PIXEL_HEIGHT)
+                            height = (int) readUnsigned(videoChild);
+                    }
+                }
+            }
+            if (trackType == TRACK_TYPE_VIDEO) {
+                // DefaultDuration is the number of nanoseconds per frame
+                double frameRate = defaultDuration > 0 ? 1e9 / defaultDuration : 0;
+                return new MediaInfo(durationMillis, width, height, frameRate, codec, fileSize);
+            }
+        }
+        return new MediaInfo(durationMillis, 0, 0, 0, null, fileSize);
+    }
+
+    /**
+     * Checks that the file is a Matroska file and finds the position of the Info, Tracks and Tags elements. The
+     * elements before the first cluster are walked, the SeekHead tells where the ones after it are.
+     *
+     * @return false if the file is not a Matroska or WebM file
+     */
+    private boolean findTopLevelElements() throws IOException {
+        ElementHeader ebml = readHeader(0, fileSize);
+        if (ebml == null || ebml.id != EBML || !isMatroska(ebml))
+            return false;
+        ElementHeader segment = readHeader(ebml.end(), fileSize);
+        if (segment == null || segment.id != SEGMENT)
+            return false;
+        segmentDataStart = segment.dataPosition();
+        segmentEnd = segment.size == UNKNOWN_SIZE ? fileSize : Math.min(segment.end(), fileSize);
+
+        List<Long> seekHeads = new ArrayList<>();
+        long position = segmentDataStart;
+        for (int i = 0; i < MAX_TOP_LEVEL_ELEMENTS && position < segmentEnd; i++) {
+            ElementHeader element = readHeader(position, segmentEnd);
+            if (element == null || element.id == CLUSTER || element.size == UNKNOWN_SIZE)
+                break;
+            if (element.id == SEEK_HEAD)
+                seekHeads.add(element.position);
+            else
+                foundTopLevelElement(element.id, element.position);
+            position = element.end();
+        }
+        // A SeekHead can point to another SeekHead, usually one at the end of the file
+        for (int i = 0; i < seekHeads.size() && i < 4; i++) {
+            ByteBuffer seekHead = readElement(seekHeads.get(i), SEEK_HEAD);
+            if (seekHead == null)
+                continue;
+            ByteBuffer seek;
+            while ((seek = nextChild(seekHead, SEEK)) != null) {
+                int seekId = 0;
+                long seekPosition = -1;
+                ByteBuffer child;
+                while ((child = nextChild(seek, 0)) != null) {
+                    if (lastId == SEEK_ID)
+                        seekId = (int) readUnsigned(child);
+                    else if (lastId == SEEK_POSITION)
+                        seekPosition = segmentDataStart + readUnsigned(child);
+                }
+                if (seekPosition < segmentDataStart)
+                    continue;
+                if (seekId == SEEK_HEAD && !seekHeads.contains(seekPosition))
+                    seekHeads.add(seekPosition);
+                else
+                    foundTopLevelElement(seekId, seekPosition);
+            }
+        }
+        return true;
+    }
+
+    private void foundTopLevelElement(int id, long position) {
+        if (id == INFO && infoPosition < 0)
+            infoPosition = position;
+        else if (id == TRACKS && tracksPosition < 0)
+            tracksPosition = position;
+        else if (id == TAGS && tagsPosition < 0)
+            tagsPosition = position;
+    }
+
+    private boolean isMatroska(ElementHeader ebml) throws IOException {
+        ByteBuffer header = readElement(ebml.position, EBML);
+        if (header == null)
+            return false;
+        ByteBuffer docType = nextChild(header, DOC_TYPE);
+        if (docType == null)
+            return false;
+        String type = readString(docType);
+        return type.equals("matroska") || type.equals("webm");
+    }
+
+    private void readInfo(ByteBuffer info, List<Pair<String, String>> tags) {
+        if (info == null)
+            return;
+        ByteBuffer child;
+        while ((child = nextChild(info, 0)) != null) {
+            switch (lastId) {
+                case TITLE:
+                    tags.add(new Pair<>("Title", readString(child)));
+                    break;
+                case MUXING_APP:
+                    tags.add(new Pair<>("MuxingApp", readString(child)));
+                    break;
+                case WRITING_APP:
+                    tags.add(new Pair<>("WritingApp", readString(child)));
+                    break;
+                case DATE_UTC:
+                    long nanos = readSigned(child);
+                    Instant date = Instant.ofEpochSecond(DATE_UTC_EPOCH_SECONDS).plusNanos(nanos);
+                    tags.add(new Pair<>("DateUTC", date.toString()));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void readTags(ByteBuffer tagsElement, List<Pair<String, String>> tags) {
+        if (tagsElement == null)
+            return;
+        ByteBuffer tag;
+        while ((tag = nextChild(tagsElement, TAG)) != null) {
+            ByteBuffer simpleTag;
+            while ((simpleTag = nextChild(tag, SIMPLE_TAG)) != null)
+                readSimpleTag(simpleTag, tags);
+        }
+    }
+
+    /**
+     * A SimpleTag has a name and a string or binary value, it can contain more SimpleTags that belong to it
+     */
+    private void readSimpleTag(ByteBuffer simpleTag, List<Pair<String, String>> tags) {
+        String name = null;
+        String value = null;
+        List<ByteBuffer> nested = new ArrayList<>();
+        ByteBuffer child;
+        while ((child = nextChild(simpleTag, 0)) != null) {
+            if (lastId == TAG_NAME)
+                name = readString(child);
+            else if (lastId == TAG_STRING)
+                value = readString(child);
+            else if (lastId == TAG_BINARY)
+                value = "BLOB";
+            else if (lastId == SIMPLE_TAG)
+                nested.add(child);
+        }
+        if (name != null && value != null)
+            tags.add(new Pair<>(name, value));
+        for (ByteBuffer nestedTag : nested)
+            readSimpleTag(nestedTag, tags);
+    }
+
+    /**
+     * Reads the header of the element at position
+     *
+     * @return the header or null if it is not a valid element header or the element does not end before parentEnd,
+     * the size is UNKNOWN_SIZE if the size is not written in the file
+     */
+    private ElementHeader readHeader(long position, long parentEnd) throws IOException {
+        if (parentEnd - position < 2)
+            return null;
+        headerBuffer.clear();
+        headerBuffer.limit((int) Math.min(MAX_HEADER_SIZE, parentEnd - position));
+        readFully(headerBuffer, position);
+        headerBuffer.flip();
+        int idLength = vintLength(headerBuffer.get(0));
+        if (idLength < 1 || idLength > 4 || idLength >= headerBuffer.limit())
+            return null;
+        int id = 0;
+        for (int i = 0; i < idLength; i++)
+            id = (id << 8) | (headerBuffer.get(i) & 0xFF);
+        int sizeLength = vintLength(headerBuffer.get(idLength));
+        if (sizeLength < 1 || idLength + sizeLength > headerBuffer.limit())
+            return null;
+        long size = readVint(headerBuffer, idLength, sizeLength);
+        int dataStart = idLength + sizeLength;
+        if (size != UNKNOWN_SIZE && size > parentEnd - position - dataStart)
+            return null;
+        return new ElementHeader(position, id, size, dataStart);
+    }
+
+    /**
+     * Reads the data of the element at position if it has the given ID
+     *
+     * @return the data or null if there is no such element there or it is too large
+     */
+    private ByteBuffer readElement(long position, int id) throws IOException {
+        ElementHeader element = readHeader(position, segmentEnd > 0 ? segmentEnd : fileSize);
+        if (element == null || element.id != id || element.size == UNKNOWN_SIZE || element.size > MAX_ELEMENT_SIZE)
+            return null;
+        ByteBuffer data = ByteBuffer.allocate((int) element.size);
+        readFully(data, element.dataPosition());
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Reads the element at the position of parent and moves parent to the element after it, elements with other IDs
+     * than the wanted one are skipped
+     *
+     * @param id the ID to look for or 0 for any element, the ID of the returned element is put in lastId
+     * @return the data of the element or null if there is no more valid element in parent
+     */
+    private ByteBuffer nextChild(ByteBuffer parent, int id) {
+        while (parent.remaining() >= 2) {
+            int start = parent.position();
+            int idLength = vintLength(parent.get(start));
+            if (idLength < 1 || idLength > 4 || idLength >= parent.remaining())
+                return null;
+            int childId = 0;
+            for (int i = 0; i < idLength; i++)
+                childId = (childId << 8) | (parent.get(start + i) & 0xFF);
+            int sizeLength = vintLength(parent.get(start + idLength));
+            if (sizeLength < 1 || idLength + sizeLength > parent.remaining())
+                return null;
+            long size = readVint(parent, start + idLength, sizeLength);
+            int dataStart = start + idLength + sizeLength;
+            if (size == UNKNOWN_SIZE || size > parent.limit() - dataStart)
+                return null;
+            parent.position(dataStart + (int) size);
+            if (id == 0 || childId == id) {
+                ByteBuffer data = parent.duplicate();
+                data.position(dataStart);
+                data.limit(dataStart + (int) size);
+                lastId = childId;
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of bytes in the variable length integer that starts with firstByte, 0 if it is invalid
+     */
+    private static int vintLength(byte firstByte) {
+        int value = firstByte & 0xFF;
+        return value == 0 ? 0 : Integer.numberOfLeadingZeros(value) - 23;
+    }
+
+    /**
+     * Reads a variable length integer without its length marker
+     *
+     * @return the value or UNKNOWN_SIZE if all bits are set
+     */
+    private static long readVint(ByteBuffer buffer, int index, int length) {
+        long value = buffer.get(index) & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            int b = buffer.get(index + i) & 0xFF;
+            allOnes &= b == 0xFF;
+            value = (value << 8) | b;
+        }
+        return allOnes ? UNKNOWN_SIZE : value;
+    }
+
+    private static long readUnsigned(ByteBuffer data) {
+        long value = 0;
+        while (data.hasRemaining())
+            value = (value << 8) | (data.get() & 0xFF);
+        return value;
+    }
+
+    private static long readSigned(ByteBuffer data) {
+        if (!data.hasRemaining())
+            return 0;
+        int length = data.remaining();
+        long value = readUnsigned(data);
+        return length >= 8 ? value : (value << (64 - length * 8)) >> (64 - length * 8);
+    }
+
+    private static double readFloat(ByteBuffer data) {
+        if (data.remaining() == 4)
+            return data.getFloat();
+        return data.remaining() == 8 ? data.getDouble() : -1;
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        // Strings can be padded with zeros
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0)
+            length--;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of file at position " + position);
+            position += read;
+        }
+    }
+}
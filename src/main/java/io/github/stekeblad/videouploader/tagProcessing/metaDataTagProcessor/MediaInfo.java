@@ -0,0 +1,162 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import java.util.Locale;
+
+/**
+ * The technical properties of a video file read from the headers of its container: how long it is, the resolution,
+ * frame rate and codec of the first video track and the average bitrate of the whole file. A property that could not
+ * be read is unknown, the getters for the formatted values then returns null.
+ */
+public final class MediaInfo {
+    public static final MediaInfo UNKNOWN = new MediaInfo(-1, 0, 0, 0, null, -1);
+
+    private final long durationMillis;
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final String codec;
+    private final long bitrate;
+    // Formatted once, the same file can be used by many presets
+    private final String durationText;
+    private final String resolutionText;
+    private final String frameRateText;
+    private final String codecText;
+    private final String bitrateText;
+
+    MediaInfo(long durationMillis, int width, int height, double frameRate, String codec, long fileSize) {
+        this.durationMillis = durationMillis;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.codec = codec;
+        this.bitrate = durationMillis > 0 && fileSize >= 0 ? fileSize * 8 * 1000 / durationMillis : -1;
+        durationText = createDurationText();
+        resolutionText = width > 0 && height > 0 ? width + "x" + height : null;
+        frameRateText = createFrameRateText();
+        codecText = createCodecText();
+        bitrateText = bitrate >= 0 ? (bitrate + 500) / 1000 + " kbps" : null;
+    }
+
+    /**
+     * @return the length of the video in milliseconds or -1 if it is unknown
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the width of the video in pixels or 0 if it is unknown
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the video in pixels or 0 if it is unknown
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the average number of frames per second or 0 if it is unknown
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return the average number of bits per second of the file or -1 if it is unknown
+     */
+    public long getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * @return the length like 1:02:03, or 2:03 if it is shorter than a hour, or null if it is unknown
+     */
+    public String formatDuration() {
+        return durationText;
+    }
+
+    private String createDurationText() {
+        if (durationMillis < 0)
+            return null;
+        long seconds = (durationMillis + 500) / 1000;
+        if (seconds >= 3600)
+            return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        return String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * @return the resolution like 1920x1080 or null if it is unknown
+     */
+    public String formatResolution() {
+        return resolutionText;
+    }
+
+    /**
+     * @return the frame rate with at most two decimals, like 60 or 29.97, or null if it is unknown
+     */
+    public String formatFrameRate() {
+        return frameRateText;
+    }
+
+    private String createFrameRateText() {
+        if (frameRate <= 0)
+            return null;
+        String formatted = String.format(Locale.ROOT, "%.2f", frameRate);
+        formatted = formatted.replaceAll("0+$", "");
+        return formatted.endsWith(".") ? formatted.substring(0, formatted.length() - 1) : formatted;
+    }
+
+    /**
+     * @return the common name of the video codec, like H.264, the code used in the file if the codec is not a common
+     * one or null if it is unknown
+     */
+    public String formatCodec() {
+        return codecText;
+    }
+
+    private String createCodecText() {
+        if (codec == null)
+            return null;
+        switch (codec) {
+            case "avc1":
+            case "avc3":
+            case "V_MPEG4/ISO/AVC":
+                return "H.264";
+            case "hvc1":
+            case "hev1":
+            case "V_MPEGH/ISO/HEVC":
+                return "H.265";
+            case "av01":
+            case "V_AV1":
+                return "AV1";
+            case "vp09":
+            case "V_VP9":
+                return "VP9";
+            case "vp08":
+            case "V_VP8":
+                return "VP8";
+            case "mp4v":
+            case "V_MPEG4/ISO/ASP":
+                return "MPEG-4";
+            default:
+                return codec.trim();
+        }
+    }
+
+    /**
+     * @return the average bitrate of the file in kbps, like 6000 kbps, or null if it is unknown
+     */
+    public String formatBitrate() {
+        return bitrateText;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaInfo{duration=" + formatDuration() + ", resolution=" + formatResolution() + ", fps=" +
+                formatFrameRate() + ", codec=" + formatCodec() + ", bitrate=" + formatBitrate() + "}";
+    }
+}
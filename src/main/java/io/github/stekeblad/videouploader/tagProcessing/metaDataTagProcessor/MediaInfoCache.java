@@ -0,0 +1,53 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Enum-Singleton class that remembers the technical properties of the last MAX_FILES video files that was read, so
+ * the headers of a file is only read once when presets are applied to it again. A file is read again if its size or
+ * modification time has changed. Unlike MetaDataCache nothing is saved to disc, reading the headers takes the same
+ * short time for all file sizes. All methods are threadsafe.
+ */
+public enum MediaInfoCache {
+    INSTANCE;
+
+    public static final int MAX_FILES = 1000;
+
+    private final FileIdentityCache<MediaInfo> entries = new FileIdentityCache<>(MAX_FILES);
+
+    /**
+     * Gets the technical properties of a file from the cache or reads them from the headers of the file
+     *
+     * @param videoFile the file to get the properties for
+     * @return the properties, MediaInfo.UNKNOWN if the file is not a MP4, MOV, MKV or WebM file or could not be read
+     */
+    public MediaInfo get(File videoFile) {
+        FileIdentity identity = FileIdentity.of(videoFile);
+        MediaInfo mediaInfo = entries.get(identity);
+        if (mediaInfo != null)
+            return mediaInfo;
+        try {
+            mediaInfo = Mp4BoxScanner.scanMediaInfo(videoFile);
+            if (mediaInfo == null)
+                mediaInfo = MatroskaScanner.scanMediaInfo(videoFile);
+            if (mediaInfo == null)
+                mediaInfo = MediaInfo.UNKNOWN;
+        } catch (IOException e) {
+            System.err.println("Could not read the headers of " + videoFile.getAbsolutePath());
+            e.printStackTrace();
+            return MediaInfo.UNKNOWN;
+        }
+        // A file that does not exist may be readable later
+        if (videoFile.isFile())
+            entries.put(identity, mediaInfo);
+        return mediaInfo;
+    }
+
+    /**
+     * Forgets the properties of all files
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.ITagValue;
+import io.github.stekeblad.videouploader.tagProcessing.template.TagSlot;
+import io.github.stekeblad.videouploader.tagProcessing.template.TemplateField;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+
+import java.util.function.Function;
+
+/**
+ * Replaces the tags $(duration), $(resolution), $(fps), $(codec) and $(bitrate) with the technical properties of the
+ * video file, like 1:02:03, 1920x1080, 60, H.264 and 6000 kbps. They are read from the headers of MP4, MOV, MKV and
+ * WebM files without reading any frames and are cached in MediaInfoCache.
+ * <p>
+ * The tags can have a fallback value that is used if the property could not be read, like $(fps:unknown), if it is
+ * not given the tag is replaced by nothing.
+ */
+public class MediaInfoTagProcessor implements ITagProcessor {
+    private static final String DURATION_TAG = "duration";
+    private static final String RESOLUTION_TAG = "resolution";
+    private static final String FPS_TAG = "fps";
+    private static final String CODEC_TAG = "codec";
+    private static final String BITRATE_TAG = "bitrate";
+
+    @Override
+    public ITagValue bind(TagSlot slot, TemplateField field, VideoPreset preset) {
+        Function<MediaInfo, String> property;
+        switch (slot.getName()) {
+            case DURATION_TAG:
+                property = MediaInfo::formatDuration;
+                break;
+            case RESOLUTION_TAG:
+                property = MediaInfo::formatResolution;
+                break;
+            case FPS_TAG:
+                property = MediaInfo::formatFrameRate;
+                break;
+            case CODEC_TAG:
+                property = MediaInfo::formatCodec;
+                break;
+            case BITRATE_TAG:
+                property = MediaInfo::formatBitrate;
+                break;
+            default:
+                return null;
+        }
+        String fallback = slot.getArgument() != null ? slot.getArgument() : "";
+        return (out, context) -> {
+            MediaInfo mediaInfo = context.getFileValue(MediaInfo.class, MediaInfoCache.INSTANCE::get);
+            String value = property.apply(mediaInfo);
+            out.append(value != null ? value : fallback);
+        };
+    }
+
+    @Override
+    public String processorName() {
+        return "Media info TagProcessor";
+    }
+}
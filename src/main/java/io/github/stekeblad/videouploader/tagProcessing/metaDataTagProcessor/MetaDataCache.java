@@ -0,0 +1,193 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import javafx.util.Pair;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enum-Singleton class that remembers the metadata of the last MAX_FILES video files that was read, so a multi-GB file
+ * is not scanned again when a preset is applied to it again, it is opened in the metadata tool or the program is
+ * restarted. A file is read again if its size or modification time has changed. The least recently used file is
+ * forgotten when the cache is full.
+ * <p>
+ * The cache is loaded from disc the first time it is used and save() writes it back, the main window calls it when
+ * it is closed. Initialize ConfigManager with the configManager() method before using this class. All methods are
+ * threadsafe.
+ * <p>
+ * The first line of the saved cache is its version. A cache saved with another version is discarded and the files are
+ * read again when they are used.
+ */
+public enum MetaDataCache {
+    INSTANCE;
+
+    public static final int MAX_FILES = 1000;
+    // Increase it when the format changes or MetaDataReader finds other metadata in the same file, so what was found
+    // by the older version is not used.
+    // 1: first version
+    // 2: MP4 and MOV files are read by scanning their box headers
+    // 3: Matroska and WebM files are read
+    private static final int VERSION = 3;
+    private static final String VERSION_LINE = "version:" + VERSION;
+
+    private final ConfigManager configManager = ConfigManager.INSTANCE;
+    private final FileIdentityCache<MetaDataReader> entries = new FileIdentityCache<>(MAX_FILES);
+    private boolean loaded = false;
+    private boolean changed = false;
+
+    /**
+     * Gets the metadata of a file from the cache or reads it from the file if it is not in the cache or has changed.
+     * Reading a file may take some time, the cache is not locked while a file is read.
+     *
+     * @param videoFile the file to get the metadata for
+     * @return a MetaDataReader with the metadata of the file
+     */
+    public MetaDataReader get(File videoFile) {
+        FileIdentity identity = FileIdentity.of(videoFile);
+        synchronized (this) {
+            loadIfNeeded();
+        }
+        MetaDataReader cached = entries.get(identity);
+        if (cached != null)
+            return cached;
+        MetaDataReader reader = new MetaDataReader(videoFile);
+        // A file that does not exist or could not be read may be readable later
+        if (!reader.hasReadFailed() && videoFile.isFile() && identity.equals(FileIdentity.of(videoFile))) {
+            entries.put(identity, reader);
+            synchronized (this) {
+                changed = true;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Forgets all cached metadata
+     */
+    public synchronized void clear() {
+        loadIfNeeded();
+        entries.clear();
+        changed = true;
+    }
+
+    /**
+     * @return the number of files in the cache
+     */
+    public synchronized int size() {
+        loadIfNeeded();
+        return entries.size();
+    }
+
+    /**
+     * Writes the cache to disc if anything has changed since it was loaded or last saved
+     */
+    public synchronized void save() {
+        if (!changed)
+            return;
+        StringBuilder saveString = new StringBuilder(VERSION_LINE).append("\n");
+        // Oldest first so the order is the same when it is loaded
+        entries.forEach((identity, reader) -> {
+            saveString.append("file:").append(escape(identity.getPath())).append("\n")
+                    .append("size:").append(identity.getSize()).append("\n")
+                    .append("modified:").append(identity.getLastModified()).append("\n")
+                    .append("supported:").append(reader.isFileSupported()).append("\n");
+            for (Pair<String, String> tag : reader.getAllTagsAndValues()) {
+                saveString.append("key:").append(escape(tag.getKey())).append("\n")
+                        .append("value:").append(escape(tag.getValue())).append("\n");
+            }
+        });
+        configManager.saveMetaDataCache(saveString.toString());
+        changed = false;
+    }
+
+    private void loadIfNeeded() {
+        if (loaded)
+            return;
+        loaded = true;
+        List<String> lines = configManager.loadMetaDataCache();
+        if (lines == null || lines.isEmpty())
+            return;
+        if (!lines.get(0).equals(VERSION_LINE)) {
+            System.err.println("The metadata cache was saved by another version of the program, it is cleared");
+            // Replaces the old cache the next time it is saved
+            changed = true;
+            return;
+        }
+        String path = null;
+        long size = -1;
+        long modified = -1;
+        boolean supported = true;
+        ArrayList<Pair<String, String>> tags = new ArrayList<>();
+        String key = null;
+        try {
+            for (String line : lines) {
+                int colonIndex = line.indexOf(':');
+                if (colonIndex < 0)
+                    continue;
+                String value = line.substring(colonIndex + 1);
+                switch (line.substring(0, colonIndex)) {
+                    case "file":
+                        if (path != null)
+                            addLoaded(path, size, modified, supported, tags);
+                        path = unescape(value);
+                        tags = new ArrayList<>();
+                        break;
+                    case "size":
+                        size = Long.parseLong(value);
+                        break;
+                    case "modified":
+                        modified = Long.parseLong(value);
+                        break;
+                    case "supported":
+                        supported = Boolean.parseBoolean(value);
+                        break;
+                    case "key":
+                        key = unescape(value);
+                        break;
+                    case "value":
+                        if (key != null)
+                            tags.add(new Pair<>(key, unescape(value)));
+                        key = null;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (path != null)
+                addLoaded(path, size, modified, supported, tags);
+        } catch (NumberFormatException e) {
+            System.err.println("The metadata cache is damaged, it is cleared");
+            entries.clear();
+        }
+    }
+
+    private void addLoaded(String path, long size, long modified, boolean supported,
+                           ArrayList<Pair<String, String>> tags) {
+        entries.put(new FileIdentity(path, size, modified), new MetaDataReader(tags, supported));
+    }
+
+    /**
+     * Makes the value fit on one line
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1)
+            return value;
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
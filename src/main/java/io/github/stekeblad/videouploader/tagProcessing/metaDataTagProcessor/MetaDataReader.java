@@ -5,25 +5,30 @@ import org.jcodec.containers.mp4.boxes.MetaValue;
 import org.jcodec.movtool.MetadataEditor;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 
 /**
  * A MetaDataReader extracts metadata from a video file and allows you to query the tags in it using friendly names and
- * four-character codes. This does not work for all files. Depending on where in the file the metadata is located
- * the entire file may need to be read and that may take some time depending on size!
+ * four-character codes. This does not work for all files. MP4 and MOV files are scanned with Mp4BoxScanner and MKV and
+ * WebM files with MatroskaScanner, they only read the headers of the boxes or elements in the file and the metadata.
+ * Other files and MP4 files the scanner does not understand are given to jcodec that may need to read the entire file
+ * and that may take some time depending on size!
  * <p>
- * To check if the metadata could be read you can check the return value of isFileSupported().
+ * To check if the metadata could be read you can check the return value of isFileSupported() and hasReadFailed().
  * <p>
  * Individual tags can be queried for with getTagValueByName() and all found tags can be retrieved with getAllTagsAndValues()
  */
 public class MetaDataReader {
     private ArrayList<Pair<String, String>> _tags;
     private boolean _isFileSupported;
+    private boolean _readFailed;
 
     /**
-     * Creates a MetaDataReader and scans the given file for metadata. Depending on where in the file the metadata is located
-     * the entire file may need to be read and that may take some time depending on size!
+     * Creates a MetaDataReader and scans the given file for metadata. If the file is not a MP4, MOV, MKV or WebM file
+     * the scanners understand and the metadata is located after the media data the entire file may need to be read
+     * and that may take some time depending on size!
      *
      * @param videoFile The file to find metadata inside
      */
@@ -31,22 +36,46 @@ public class MetaDataReader {
         _isFileSupported = true;
         _tags = new ArrayList<>();
         try {
+            Mp4BoxScanner.Result scanned = Mp4BoxScanner.scan(videoFile);
+            if (scanned != null) {
+                addMp4Tags(scanned.keyedMeta, scanned.itunesMeta);
+                return;
+            }
+            MatroskaScanner.Result matroska = MatroskaScanner.scan(videoFile);
+            if (matroska != null) {
+                _tags.addAll(matroska.tags);
+                return;
+            }
             MetadataEditor editor = MetadataEditor.createFrom(videoFile);
-
-            Map<String, MetaValue> keyedMetaMap = editor.getKeyedMeta();
-            keyedMetaMap.forEach((s, metaValue) ->
-                    _tags.add(new Pair<>(s, metaValue.toString())));
-
-            Map<Integer, MetaValue> n = editor.getItunesMeta();
-            n.forEach((integer, metaValue) ->
-                    _tags.add(new Pair<>(MetaDataNamesMapping.tryConvertIntToFriendlyName(integer), metaValue.toString())));
-
+            addMp4Tags(editor.getKeyedMeta(), editor.getItunesMeta());
+        } catch (IOException ex) {
+            // The file may be readable later, for example when it is no longer being recorded to
+            _readFailed = true;
         } catch (Exception ex) {
             // set to false if file is not supported (IllegalArgumentException was thrown)
             _isFileSupported = !(ex instanceof IllegalArgumentException);
         }
     }
 
+    private void addMp4Tags(Map<String, MetaValue> keyedMetaMap, Map<Integer, MetaValue> n) {
+        keyedMetaMap.forEach((s, metaValue) ->
+                _tags.add(new Pair<>(s, metaValue.toString())));
+
+        n.forEach((integer, metaValue) ->
+                _tags.add(new Pair<>(MetaDataNamesMapping.tryConvertIntToFriendlyName(integer), metaValue.toString())));
+    }
+
+    /**
+     * Creates a MetaDataReader from metadata that has been read before, used by MetaDataCache
+     *
+     * @param tags            the tags found in the file
+     * @param isFileSupported if the format of the file was supported
+     */
+    MetaDataReader(ArrayList<Pair<String, String>> tags, boolean isFileSupported) {
+        _tags = tags;
+        _isFileSupported = isFileSupported;
+    }
+
     /**
      * @return all tags found in the file, if the format of the scanned file is not supported the list will always be empty
      */
@@ -82,4 +111,11 @@ public class MetaDataReader {
     public boolean isFileSupported() {
         return _isFileSupported;
     }
+
+    /**
+     * @return true if the file could not be read, the tag list is then empty even if the file contains metadata
+     */
+    public boolean hasReadFailed() {
+        return _readFailed;
+    }
 }
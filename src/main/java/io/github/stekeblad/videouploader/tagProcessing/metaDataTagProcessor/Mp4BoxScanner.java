@@ -0,0 +1,484 @@
+package io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor;
+
+import org.jcodec.containers.mp4.boxes.MetaValue;
+import org.jcodec.platform.Platform;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the metadata in MP4 and MOV files by only reading the headers of the boxes (atoms) in the file and jumping over
+ * everything else, the media data of a 50 GB recording is skipped with one 16 byte read no matter if the moov box is
+ * before or after it. Only the meta boxes are read completely.
+ * <p>
+ * The same metadata as jcodec's MetadataEditor finds is returned: the keyed metadata in moov/meta and the iTunes
+ * metadata in moov/udta/meta/ilst. scanMediaInfo() reads the duration and the properties of the first video track
+ * from the small header boxes in moov instead. If the file is not laid out like a MP4 file this scanner understands
+ * both returns null and the caller should let jcodec try instead.
+ */
+final class Mp4BoxScanner {
+    // Boxes that can be first in a MP4 or QuickTime file, if the file starts with something else it is not scanned
+    private static final Set<String> FIRST_BOX_TYPES = new HashSet<>(Arrays.asList(
+            "ftyp", "moov", "mdat", "free", "skip", "wide", "pnot", "pdin", "uuid", "moof", "styp", "sidx", "junk"));
+    // Artwork is stored in the meta box, larger boxes than this are left to jcodec
+    private static final long MAX_META_BOX_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_HEADER_SIZE = 16;
+    // The headers that are read for the technical properties are smaller than this
+    private static final int SMALL_BOX_READ_SIZE = 128;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+
+    /**
+     * The metadata found in a file, the maps are in the order the values are stored in the file
+     */
+    static final class Result {
+        final Map<String, MetaValue> keyedMeta = new LinkedHashMap<>();
+        final Map<Integer, MetaValue> itunesMeta = new LinkedHashMap<>();
+    }
+
+    // The position, type and size of a box, the body starts bodyStart bytes after position
+    private static final class BoxHeader {
+        final long position;
+        final String type;
+        final long size;
+        final int bodyStart;
+
+        BoxHeader(long position, String type, long size, int bodyStart) {
+            this.position = position;
+            this.type = type;
+            this.size = size;
+            this.bodyStart = bodyStart;
+        }
+
+        long end() {
+            return position + size;
+        }
+    }
+
+    private Mp4BoxScanner(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Scans a file for metadata
+     *
+     * @param videoFile the file to scan
+     * @return the metadata found in the file, empty if it has none, or null if the file is not a MP4 or MOV file or is
+     * laid out in a way this scanner does not understand
+     * @throws IOException if the file could not be read
+     */
+    static Result scan(File videoFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(videoFile.toPath(), StandardOpenOption.READ)) {
+            return new Mp4BoxScanner(channel).scan();
+        }
+    }
+
+    /**
+     * Reads the technical properties of a file from the moov box, no media data is read
+     *
+     * @param videoFile the file to scan
+     * @return the properties found in the file or null if the file is not a MP4 or MOV file or is laid out in a way
+     * this scanner does not understand
+     * @throws IOException if the file could not be read
+     */
+    static MediaInfo scanMediaInfo(File videoFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(videoFile.toPath(), StandardOpenOption.READ)) {
+            return new Mp4BoxScanner(channel).scanMediaInfo();
+        }
+    }
+
+    /**
+     * @return the header of the moov box or null if the file is not laid out like a MP4 file or has no moov box
+     */
+    private BoxHeader findMoov() throws IOException {
+        long position = 0;
+        boolean first = true;
+        while (position < fileSize) {
+            BoxHeader box = readHeader(position, fileSize);
+            if (box == null || (first && !FIRST_BOX_TYPES.contains(box.type)))
+                return null;
+            first = false;
+            if (box.type.equals("moov"))
+                return box;
+            position = box.end();
+        }
+        return null;
+    }
+
+    private Result scan() throws IOException {
+        BoxHeader moov = findMoov();
+        if (moov == null)
+            return null;
+
+        // Like jcodec only the first moov/meta and moov/udta/meta boxes are used
+        Result result = new Result();
+        boolean keyedFound = false;
+        boolean itunesFound = false;
+        for (BoxHeader moovChild : children(moov)) {
+            if (moovChild.type.equals("meta") && !keyedFound) {
+                keyedFound = true;
+                if (!readKeyedMeta(moovChild, result.keyedMeta))
+                    return null;
+            } else if (moovChild.type.equals("udta") && !itunesFound) {
+                for (BoxHeader udtaChild : children(moovChild)) {
+                    if (udtaChild.type.equals("meta")) {
+                        itunesFound = true;
+                        if (!readItunesMeta(udtaChild, result.itunesMeta))
+                            return null;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private MediaInfo scanMediaInfo() throws IOException {
+        BoxHeader moov = findMoov();
+        if (moov == null)
+            return null;
+        long durationMillis = -1;
+        VideoTrack video = null;
+        for (BoxHeader moovChild : children(moov)) {
+            if (moovChild.type.equals("mvhd")) {
+                durationMillis = readDurationMillis(readBody(moovChild, SMALL_BOX_READ_SIZE));
+            } else if (moovChild.type.equals("trak") && video == null) {
+                video = readVideoTrack(moovChild);
+            }
+        }
+        if (video == null)
+            return new MediaInfo(durationMillis, 0, 0, 0, null, fileSize);
+        return new MediaInfo(durationMillis, video.width, video.height, video.frameRate, video.codec, fileSize);
+    }
+
+    private static final class VideoTrack {
+        int width;
+        int height;
+        double frameRate;
+        String codec;
+    }
+
+    /**
+     * Reads the properties of a track from the headers in trak/tkhd, trak/mdia/mdhd and the sample description and
+     * sample count in trak/mdia/minf/stbl
+     *
+     * @return the properties or null if it is not a video track
+     */
+    private VideoTrack readVideoTrack(BoxHeader trak) throws IOException {
+        BoxHeader mdia = child(trak, "mdia");
+        if (mdia == null)
+            return null;
+        ByteBuffer hdlr = readBody(child(mdia, "hdlr"), SMALL_BOX_READ_SIZE);
+        // The type of the track is after the version, flags and four unused bytes
+        if (hdlr == null || !isFourcc(hdlr, 8, "vide"))
+            return null;
+
+        VideoTrack video = new VideoTrack();
+        // The width and height that the video should be shown in are the last eight bytes, as 16.16 fixed point
+        ByteBuffer tkhd = readBody(child(trak, "tkhd"), SMALL_BOX_READ_SIZE);
+        if (tkhd != null && tkhd.limit() >= 84) {
+            video.width = tkhd.getInt(tkhd.limit() - 8) >>> 16;
+            video.height = tkhd.getInt(tkhd.limit() - 4) >>> 16;
+        }
+        BoxHeader stbl = child(child(mdia, "minf"), "stbl");
+        ByteBuffer stsd = readBody(child(stbl, "stsd"), SMALL_BOX_READ_SIZE);
+        // The first sample entry starts after the version, flags and number of entries, its type is the codec
+        if (stsd != null && stsd.limit() >= 16) {
+            stsd.position(12);
+            video.codec = fourcc(stsd);
+            // The coded size is in the visual sample entry if tkhd did not have it
+            if (video.width == 0 && stsd.limit() >= 44) {
+                video.width = stsd.getShort(40) & 0xFFFF;
+                video.height = stsd.getShort(42) & 0xFFFF;
+            }
+        }
+        // The frame rate is the number of samples (frames) in stsz divided by the duration in mdhd
+        ByteBuffer mdhd = readBody(child(mdia, "mdhd"), SMALL_BOX_READ_SIZE);
+        ByteBuffer stsz = readBody(child(stbl, "stsz"), 12);
+        if (mdhd != null && stsz != null && stsz.limit() >= 12) {
+            long sampleCount = stsz.getInt(8) & 0xFFFFFFFFL;
+            long[] timescaleAndDuration = readTimescaleAndDuration(mdhd);
+            if (timescaleAndDuration != null && sampleCount > 0)
+                video.frameRate = sampleCount * (double) timescaleAndDuration[0] / timescaleAndDuration[1];
+        }
+        return video;
+    }
+
+    /**
+     * @param header the body of a mvhd or mdhd box
+     * @return the duration in milliseconds or -1 if it is unknown
+     */
+    private static long readDurationMillis(ByteBuffer header) {
+        long[] timescaleAndDuration = readTimescaleAndDuration(header);
+        if (timescaleAndDuration == null)
+            return -1;
+        return timescaleAndDuration[1] * 1000 / timescaleAndDuration[0];
+    }
+
+    /**
+     * The mvhd and mdhd boxes starts with the same fields, their size depends on the version in the first byte
+     *
+     * @param header the body of a mvhd or mdhd box
+     * @return the timescale and the duration in timescale units or null if they are unknown
+     */
+    private static long[] readTimescaleAndDuration(ByteBuffer header) {
+        if (header == null || header.limit() < 20)
+            return null;
+        long timescale;
+        long duration;
+        if (header.get(0) == 1) {
+            if (header.limit() < 32)
+                return null;
+            timescale = header.getInt(20) & 0xFFFFFFFFL;
+            duration = header.getLong(24);
+        } else {
+            timescale = header.getInt(12) & 0xFFFFFFFFL;
+            duration = header.getInt(16) & 0xFFFFFFFFL;
+            // All bits set means that the duration is not known
+            if (duration == 0xFFFFFFFFL)
+                return null;
+        }
+        if (timescale == 0 || duration <= 0)
+            return null;
+        return new long[]{timescale, duration};
+    }
+
+    /**
+     * @return the first child of parent with the type or null if parent is null or has no such child
+     */
+    private BoxHeader child(BoxHeader parent, String type) throws IOException {
+        if (parent == null)
+            return null;
+        for (BoxHeader child : children(parent)) {
+            if (child.type.equals(type))
+                return child;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the start of the body of a box
+     *
+     * @param box      the box to read or null
+     * @param maxBytes the maximum number of bytes to read
+     * @return the body, shorter than the box if it is larger than maxBytes, or null if box is null
+     */
+    private ByteBuffer readBody(BoxHeader box, int maxBytes) throws IOException {
+        if (box == null)
+            return null;
+        ByteBuffer body = ByteBuffer.allocate((int) Math.min(maxBytes, box.size - box.bodyStart));
+        readFully(body, box.position + box.bodyStart);
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Reads the header of the box at position
+     *
+     * @return the header or null if it is not a valid box header or the box does not end before parentEnd
+     */
+    private BoxHeader readHeader(long position, long parentEnd) throws IOException {
+        if (parentEnd - position < 8)
+            return null;
+        headerBuffer.clear();
+        headerBuffer.limit((int) Math.min(MAX_HEADER_SIZE, parentEnd - position));
+        readFully(headerBuffer, position);
+        headerBuffer.flip();
+        long size = headerBuffer.getInt() & 0xFFFFFFFFL;
+        String type = fourcc(headerBuffer);
+        int bodyStart = 8;
+        if (size == 1) {
+            // The real size is in a 64-bit field after the type
+            if (headerBuffer.remaining() < 8)
+                return null;
+            size = headerBuffer.getLong();
+            bodyStart = 16;
+        } else if (size == 0) {
+            // The box continues to the end of the file
+            size = parentEnd - position;
+        }
+        if (size < bodyStart || size > parentEnd - position)
+            return null;
+        return new BoxHeader(position, type, size, bodyStart);
+    }
+
+    private List<BoxHeader> children(BoxHeader parent) throws IOException {
+        List<BoxHeader> children = new ArrayList<>();
+        long position = parent.position + parent.bodyStart;
+        while (parent.end() - position >= 8) {
+            BoxHeader child = readHeader(position, parent.end());
+            if (child == null)
+                break;
+            children.add(child);
+            position = child.end();
+        }
+        return children;
+    }
+
+    /**
+     * Reads the body of a meta box and positions it at its first child, the meta box is a full box with four bytes of
+     * version and flags in MP4 files but not in QuickTime files
+     *
+     * @return the body or null if it is too large
+     */
+    private ByteBuffer readMetaBody(BoxHeader meta) throws IOException {
+        long bodySize = meta.size - meta.bodyStart;
+        if (bodySize > MAX_META_BOX_SIZE)
+            return null;
+        ByteBuffer body = ByteBuffer.allocate((int) bodySize);
+        readFully(body, meta.position + meta.bodyStart);
+        body.flip();
+        if (body.remaining() >= 12 && !isFourcc(body, 4, "hdlr") && (isFourcc(body, 8, "hdlr") || body.getInt(0) == 0))
+            body.position(4);
+        return body;
+    }
+
+    private boolean readItunesMeta(BoxHeader meta, Map<Integer, MetaValue> itunesMeta) throws IOException {
+        ByteBuffer body = readMetaBody(meta);
+        if (body == null)
+            return false;
+        ByteBuffer ilst = nextChildOfType(body, "ilst");
+        if (ilst != null)
+            readIlst(ilst, itunesMeta);
+        return true;
+    }
+
+    private boolean readKeyedMeta(BoxHeader meta, Map<String, MetaValue> keyedMeta) throws IOException {
+        ByteBuffer body = readMetaBody(meta);
+        if (body == null)
+            return false;
+        ByteBuffer keys = nextChildOfType(body.duplicate(), "keys");
+        ByteBuffer ilst = nextChildOfType(body, "ilst");
+        if (keys == null || ilst == null || keys.remaining() < 8)
+            return true;
+
+        // keys is a full box with the number of keys after the version and flags, every key is a box with the type
+        // mdta and the key as its body. The values in ilst refers to them with a one-based index.
+        keys.position(keys.position() + 8);
+        List<String> keyNames = new ArrayList<>();
+        ByteBuffer key;
+        while ((key = nextChild(keys)) != null)
+            keyNames.add(Platform.stringFromBytes(toArray(key)));
+
+        Map<Integer, MetaValue> values = new LinkedHashMap<>();
+        readIlst(ilst, values);
+        values.forEach((index, value) -> {
+            if (index > 0 && index <= keyNames.size())
+                keyedMeta.put(keyNames.get(index - 1), value);
+        });
+        return true;
+    }
+
+    /**
+     * Every box in ilst is a value, its type is the four-character code or index of the key and the value is in the
+     * first data box inside it. A data box starts with the type of the value and a locale.
+     */
+    private static void readIlst(ByteBuffer ilst, Map<Integer, MetaValue> values) {
+        while (ilst.remaining() >= 8) {
+            int boxStart = ilst.position();
+            long size = ilst.getInt() & 0xFFFFFFFFL;
+            int key = ilst.getInt();
+            if (size < 8 || size > ilst.remaining() + 8)
+                return;
+            ByteBuffer item = ilst.duplicate();
+            item.limit(boxStart + (int) size);
+            ilst.position(boxStart + (int) size);
+
+            ByteBuffer data;
+            while ((data = nextChildOfType(item, "data")) != null) {
+                if (data.remaining() >= 8) {
+                    int type = data.getInt();
+                    int locale = data.getInt();
+                    values.put(key, MetaValue.createOtherWithLocale(type, locale, toArray(data)));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer nextChildOfType(ByteBuffer parent, String type) {
+        while (parent.remaining() >= 8) {
+            boolean matches = isFourcc(parent, parent.position() + 4, type);
+            ByteBuffer child = nextChild(parent);
+            if (child == null)
+                return null;
+            if (matches)
+                return child;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the box at the position of parent and moves parent to the box after it
+     *
+     * @return the body of the box or null if there is no more valid box in parent
+     */
+    private static ByteBuffer nextChild(ByteBuffer parent) {
+        if (parent.remaining() < 8)
+            return null;
+        int boxStart = parent.position();
+        long size = parent.getInt(boxStart) & 0xFFFFFFFFL;
+        int headerSize = 8;
+        if (size == 1) {
+            if (parent.remaining() < 16)
+                return null;
+            size = parent.getLong(boxStart + 8);
+            headerSize = 16;
+        } else if (size == 0) {
+            size = parent.remaining();
+        }
+        if (size < headerSize || size > parent.remaining())
+            return null;
+        ByteBuffer body = parent.duplicate();
+        body.position(boxStart + headerSize);
+        body.limit(boxStart + (int) size);
+        parent.position(boxStart + (int) size);
+        return body;
+    }
+
+    private static boolean isFourcc(ByteBuffer buffer, int index, String fourcc) {
+        if (index + 4 > buffer.limit())
+            return false;
+        for (int i = 0; i < 4; i++) {
+            if ((buffer.get(index + i) & 0xFF) != fourcc.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static String fourcc(ByteBuffer buffer) {
+        byte[] bytes = new byte[4];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of file at position " + position);
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.stekeblad.videouploader.tagProcessing.template;
+
+import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.TagContext;
+import io.github.stekeblad.videouploader.utils.metrics.UploadFlightEvents;
+import io.github.stekeblad.videouploader.utils.metrics.UploadSpan;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The title, description and tags of a preset compiled to templates. The preset is parsed once and the result can be
+ * applied to any number of video files, every field is created in one pass without searching for tags again.
+ * Immutable, the same PresetTemplate can be applied to several files at the same time from different threads.
+ * <p>
+ * TagProcessors that does not implement bind(...) runs their process methods on the rendered text, see
+ * {@link ITagProcessor}. They keep state between init(...) and the process methods so only one thread at the time
+ * uses each of them.
+ */
+public final class PresetTemplate {
+    private final Template title;
+    private final Template description;
+    private final List<Template> tags;
+    private final VideoPreset preset;
+    private final List<ITagProcessor> legacyProcessors;
+
+    private PresetTemplate(Template title, Template description, List<Template> tags, VideoPreset preset,
+                           List<ITagProcessor> legacyProcessors) {
+        this.title = title;
+        this.description = description;
+        this.tags = Collections.unmodifiableList(tags);
+        this.preset = preset;
+        this.legacyProcessors = Collections.unmodifiableList(legacyProcessors);
+    }
+
+    /**
+     * Compiles the title, description and tags of a preset. The preset is read, call it on the JavaFX application
+     * thread or make sure the preset is not changed at the same time.
+     *
+     * @param preset     the preset to compile
+     * @param processors the TagProcessors that replaces tags
+     * @return the compiled preset
+     */
+    public static PresetTemplate compile(VideoPreset preset, List<? extends ITagProcessor> processors) {
+        List<Template> tags = new ArrayList<>();
+        for (String tag : preset.getVideoTags())
+            tags.add(Template.compile(tag, TemplateField.TAGS, preset, processors));
+        List<ITagProcessor> legacyProcessors = new ArrayList<>();
+        for (ITagProcessor processor : processors) {
+            if (isLegacy(processor))
+                legacyProcessors.add(processor);
+        }
+        return new PresetTemplate(
+                Template.compile(preset.getVideoName(), TemplateField.TITLE, preset, processors),
+                Template.compile(preset.getVideoDescription(), TemplateField.DESCRIPTION, preset, processors),
+                tags, preset, legacyProcessors);
+    }
+
+    /**
+     * @return true if the TagProcessor does not override bind(...) and uses the process methods instead
+     */
+    private static boolean isLegacy(ITagProcessor processor) {
+        try {
+            return processor.getClass().getMethod("bind", TagSlot.class, TemplateField.class, VideoPreset.class)
+                    .getDeclaringClass() == ITagProcessor.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @param context the video file currently being processed
+     * @return the title for the video
+     */
+    @SuppressWarnings("deprecation")
+    public String renderTitle(TagContext context) {
+        String rendered = title.render(context);
+        for (ITagProcessor processor : legacyProcessors) {
+            UploadSpan span = UploadFlightEvents.beginTagProcessor(processor.processorName(), "title",
+                    context.getVideoFile());
+            synchronized (processor) {
+                processor.init(preset, context.getAutoNum());
+                rendered = processor.processTitle(rendered, context.getVideoFile());
+            }
+            span.end();
+        }
+        return rendered;
+    }
+
+    /**
+     * @param context the video file currently being processed
+     * @return the description for the video
+     */
+    @SuppressWarnings("deprecation")
+    public String renderDescription(TagContext context) {
+        String rendered = description.render(context);
+        for (ITagProcessor processor : legacyProcessors) {
+            UploadSpan span = UploadFlightEvents.beginTagProcessor(processor.processorName(), "description",
+                    context.getVideoFile());
+            synchronized (processor) {
+                processor.init(preset, context.getAutoNum());
+                rendered = processor.processDescription(rendered, context.getVideoFile());
+            }
+            span.end();
+        }
+        return rendered;
+    }
+
+    /**
+     * A tag that contained tags and became empty after they was replaced is removed, for example a $(metadata) tag
+     * without fallback for a value that is not in the file.
+     *
+     * @param context the video file currently being processed
+     * @return a new list with the tags for the video
+     */
+    @SuppressWarnings("deprecation")
+    public List<String> renderTags(TagContext context) {
+        List<String> rendered = new ArrayList<>(tags.size());
+        for (Template tag : tags) {
+            String value = tag.render(context);
+            if (!value.isEmpty() || !tag.hasSlots())
+                rendered.add(value);
+        }
+        for (ITagProcessor processor : legacyProcessors) {
+            UploadSpan span = UploadFlightEvents.beginTagProcessor(processor.processorName(), "tags",
+                    context.getVideoFile());
+            synchronized (processor) {
+                processor.init(preset, context.getAutoNum());
+                rendered = processor.processTags(rendered, context.getVideoFile());
+            }
+            span.end();
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.stekeblad.videouploader.tagProcessing.template;
+
+/**
+ * A tag found in a preset, $(name) or $(name:argument). The argument is everything after the first colon and null if
+ * there is no colon.
+ */
+public final class TagSlot {
+    private final String name;
+    private final String argument;
+    private final String text;
+
+    TagSlot(String name, String argument, String text) {
+        this.name = name;
+        this.argument = argument;
+        this.text = text;
+    }
+
+    /**
+     * @return the name of the tag, "ep" for $(ep) and "metadata" for $(metadata:Title)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the text after the first colon, "Title" for $(metadata:Title), or null if there is no colon
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    /**
+     * @return the tag like it is written in the preset
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @param tagName the name of a tag without arguments
+     * @return true if this is exactly $(tagName)
+     */
+    public boolean is(String tagName) {
+        return argument == null && name.equals(tagName);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.stekeblad.videouploader.tagProcessing.template;
+
+import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.ITagValue;
+import io.github.stekeblad.videouploader.tagProcessing.TagContext;
+import io.github.stekeblad.videouploader.utils.metrics.UploadFlightEvents;
+import io.github.stekeblad.videouploader.utils.metrics.UploadSpan;
+import io.github.stekeblad.videouploader.youtube.VideoPreset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One field of a preset parsed into the text between the tags and the values of the tags. Tags that no TagProcessor
+ * replaces is kept as text. Immutable, a template can be rendered by several threads at the same time.
+ */
+public final class Template {
+    private static final String TAG_START = "$(";
+    private static final char TAG_END = ')';
+    // Guess for how long the value of a tag is, used for sizing the buffer
+    private static final int SLOT_LENGTH_GUESS = 24;
+
+    // literals[i] is the text before slots[i], the last literal is the text after the last slot
+    private final String[] literals;
+    private final TagSlot[] slots;
+    private final ITagValue[] values;
+    private final int estimatedLength;
+
+    private Template(List<String> literals, List<TagSlot> slots, List<ITagValue> values) {
+        this.literals = literals.toArray(new String[0]);
+        this.slots = slots.toArray(new TagSlot[0]);
+        this.values = values.toArray(new ITagValue[0]);
+        int length = 0;
+        for (String literal : literals)
+            length += literal.length();
+        estimatedLength = length + this.slots.length * SLOT_LENGTH_GUESS;
+    }
+
+    /**
+     * Parses source and binds the tags in it to the TagProcessors. The first TagProcessor that binds a tag is used
+     * for it. If Flight Recorder is available every value records a TagProcessor event with the name of its
+     * TagProcessor when it is rendered.
+     *
+     * @param source     the text from the preset
+     * @param field      the field of the preset source is from
+     * @param preset     the preset source is from
+     * @param processors the TagProcessors to ask
+     * @return the compiled template
+     */
+    public static Template compile(String source, TemplateField field, VideoPreset preset,
+                                   List<? extends ITagProcessor> processors) {
+        List<String> literals = new ArrayList<>();
+        List<TagSlot> slots = new ArrayList<>();
+        List<ITagValue> values = new ArrayList<>();
+        if (source == null)
+            source = "";
+
+        int literalStart = 0;
+        int searchFrom = 0;
+        int tagStart;
+        while ((tagStart = source.indexOf(TAG_START, searchFrom)) != -1) {
+            int tagEnd = source.indexOf(TAG_END, tagStart + TAG_START.length());
+            if (tagEnd == -1)
+                break;
+            String inside = source.substring(tagStart + TAG_START.length(), tagEnd);
+            // In "$(a $(ep)" the first $( is just text, continue with the next one
+            int nestedStart = inside.lastIndexOf(TAG_START);
+            if (nestedStart != -1) {
+                searchFrom = tagStart + TAG_START.length() + nestedStart;
+                continue;
+            }
+            int colon = inside.indexOf(':');
+            TagSlot slot = colon == -1 ?
+                    new TagSlot(inside, null, source.substring(tagStart, tagEnd + 1)) :
+                    new TagSlot(inside.substring(0, colon), inside.substring(colon + 1),
+                            source.substring(tagStart, tagEnd + 1));
+            ITagValue value = null;
+            for (ITagProcessor processor : processors) {
+                value = processor.bind(slot, field, preset);
+                if (value != null) {
+                    if (UploadFlightEvents.isAvailable())
+                        value = recorded(value, processor.processorName(), field);
+                    break;
+                }
+            }
+            if (value != null) {
+                literals.add(source.substring(literalStart, tagStart));
+                slots.add(slot);
+                values.add(value);
+                literalStart = tagEnd + 1;
+            }
+            searchFrom = tagEnd + 1;
+        }
+        literals.add(source.substring(literalStart));
+        return new Template(literals, slots, values);
+    }
+
+    /**
+     * @return a value that records a TagProcessor event for the time spent in value
+     */
+    private static ITagValue recorded(ITagValue value, String processorName, TemplateField field) {
+        String part = field.name().toLowerCase(Locale.ROOT);
+        return (out, context) -> {
+            UploadSpan span = UploadFlightEvents.beginTagProcessor(processorName, part, context.getVideoFile());
+            try {
+                value.appendTo(out, context);
+            } finally {
+                span.end();
+            }
+        };
+    }
+
+    /**
+     * @return true if there is at least one tag in the template that will be replaced
+     */
+    public boolean hasSlots() {
+        return slots.length != 0;
+    }
+
+    /**
+     * Replaces all tags in one pass
+     *
+     * @param context the video file currently being processed
+     * @return the text with the tags replaced
+     */
+    public String render(TagContext context) {
+        if (slots.length == 0)
+            return literals[0];
+        StringBuilder out = new StringBuilder(estimatedLength);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            values[i].appendTo(out, context);
+        }
+        out.append(literals[slots.length]);
+        return out.toString();
+    }
+}
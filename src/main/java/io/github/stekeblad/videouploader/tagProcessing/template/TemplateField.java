@@ -0,0 +1,10 @@
+package io.github.stekeblad.videouploader.tagProcessing.template;
+
+/**
+ * The fields of a preset that can contain tags
+ */
+public enum TemplateField {
+    TITLE,
+    DESCRIPTION,
+    TAGS
+}
@@ -6,6 +6,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.zip.DataFormatException;
 
@@ -17,6 +18,9 @@ import static io.github.stekeblad.videouploader.utils.Constants.*;
 public enum ConfigManager {
     INSTANCE;
 
+    private static final int DEFAULT_PARALLEL_UPLOADS = 2;
+    private static final int THUMBNAILS_OFF = -1;
+
     private Path filesPath;
     private Properties mainProp;
     private HashMap<String, String> presetStringsMap;
@@ -29,6 +33,8 @@ public enum ConfigManager {
         filesPath = Paths.get(DATA_DIR).toAbsolutePath();
         Path presetsPath = Paths.get(PRESET_DIR).toAbsolutePath();
         Path waitingUploadsPath = Paths.get(UPLOAD_DIR).toAbsolutePath();
+        Path uploadSessionsPath = Paths.get(UPLOAD_SESSION_DIR).toAbsolutePath();
+        Path thumbnailCachePath = Paths.get(THUMBNAIL_CACHE_DIR).toAbsolutePath();
         mainProp = new Properties();
 
         if (!Files.exists(filesPath)) {
@@ -64,6 +70,24 @@ public enum ConfigManager {
             }
         }
 
+        if (!Files.exists(uploadSessionsPath)) {
+            try {
+                Files.createDirectory(uploadSessionsPath);
+            } catch (IOException e) {
+                System.err.println("Could not find or create directory for upload sessions!");
+                e.printStackTrace();
+            }
+        }
+
+        if (!Files.exists(thumbnailCachePath)) {
+            try {
+                Files.createDirectory(thumbnailCachePath);
+            } catch (IOException e) {
+                System.err.println("Could not find or create directory for thumbnails!");
+                e.printStackTrace();
+            }
+        }
+
         loadSettings();
     }
 
@@ -100,6 +124,15 @@ public enum ConfigManager {
             setIfMissing("checkForUpdates", "true");
             setIfMissing("silentUpdates", "false");
             setIfMissing("channelName", "");
+            setIfMissing("parallelUploads", String.valueOf(DEFAULT_PARALLEL_UPLOADS));
+            // 0 lets the operating system decide
+            setIfMissing("socketSendBufferKiB", "0");
+            setIfMissing("socketReceiveBufferKiB", "0");
+            // The default daily quota of a project in the YouTube API
+            setIfMissing("dailyQuota", "10000");
+            // A negative value turns off creating thumbnails from the videos. Off by default, setting a thumbnail
+            // costs quota, requires a verified channel and replaces the thumbnail YouTube would have chosen
+            setIfMissing("thumbnailFrameSeconds", String.valueOf(THUMBNAILS_OFF));
 
             // width x height
             setIfMissing(WIN_SIZE + WindowPropertyNames.MAIN, "900x750");
@@ -216,6 +249,79 @@ public enum ConfigManager {
         mainProp.setProperty("channelName", channelName);
     }
 
+    public int getParallelUploads() {
+        try {
+            return Integer.parseInt(mainProp.getProperty("parallelUploads"));
+        } catch (NumberFormatException e) {
+            return DEFAULT_PARALLEL_UPLOADS;
+        }
+    }
+
+    public void setParallelUploads(int parallelUploads) {
+        mainProp.setProperty("parallelUploads", String.valueOf(parallelUploads));
+    }
+
+    /**
+     * @return the send buffer size in KiB for network connections, 0 if the operating system default should be used
+     */
+    public int getSocketSendBufferKiB() {
+        try {
+            return Integer.parseInt(mainProp.getProperty("socketSendBufferKiB"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void setSocketSendBufferKiB(int sendBufferKiB) {
+        mainProp.setProperty("socketSendBufferKiB", String.valueOf(sendBufferKiB));
+    }
+
+    /**
+     * @return the receive buffer size in KiB for network connections, 0 if the operating system default should be used
+     */
+    public int getSocketReceiveBufferKiB() {
+        try {
+            return Integer.parseInt(mainProp.getProperty("socketReceiveBufferKiB"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void setSocketReceiveBufferKiB(int receiveBufferKiB) {
+        mainProp.setProperty("socketReceiveBufferKiB", String.valueOf(receiveBufferKiB));
+    }
+
+    /**
+     * @return the number of YouTube API quota units the program can use per day
+     */
+    public long getDailyQuota() {
+        try {
+            return Long.parseLong(mainProp.getProperty("dailyQuota"));
+        } catch (NumberFormatException e) {
+            return 10000;
+        }
+    }
+
+    public void setDailyQuota(long dailyQuota) {
+        mainProp.setProperty("dailyQuota", String.valueOf(dailyQuota));
+    }
+
+    /**
+     * @return the time in seconds into a video to take the frame from for videos without a thumbnail, negative if no
+     * thumbnails should be created
+     */
+    public double getThumbnailFrameSeconds() {
+        try {
+            return Double.parseDouble(mainProp.getProperty("thumbnailFrameSeconds"));
+        } catch (NumberFormatException | NullPointerException e) {
+            return THUMBNAILS_OFF;
+        }
+    }
+
+    public void setThumbnailFrameSeconds(double thumbnailFrameSeconds) {
+        mainProp.setProperty("thumbnailFrameSeconds", String.valueOf(thumbnailFrameSeconds));
+    }
+
     private static final String WIN_LOC = "window_location_";
     private static final String WIN_SIZE = "window_size_";
 
@@ -393,6 +499,68 @@ public enum ConfigManager {
         return playlistString;
     }
 
+    // Quota
+
+    /**
+     * Writes the quota ledger to disc
+     * @param ledgerData string representation of the used quota
+     */
+    public void saveQuotaLedger(String ledgerData) {
+        try {
+            FileUtils.writeAll(QUOTA_FILE, ledgerData);
+        } catch (IOException e) {
+            System.err.println("Could not save the quota ledger");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return a ArrayList with one row of the quota ledger per element or null if there is no saved ledger
+     */
+    public ArrayList<String> loadQuotaLedger() {
+        if (!Files.exists(Paths.get(QUOTA_FILE)))
+            return null;
+        try {
+            return FileUtils.readAllLines(QUOTA_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not read the quota ledger");
+            return null;
+        }
+    }
+
+    // Metadata cache
+
+    /**
+     * Writes the metadata cache to disc, a temporary file is written first so a crash while writing does not leave a
+     * half written cache
+     * @param cacheData string representation of the metadata cache
+     */
+    public void saveMetaDataCache(String cacheData) {
+        try {
+            String tempFile = METADATA_CACHE_FILE + ".tmp";
+            FileUtils.writeAll(tempFile, cacheData);
+            Files.move(Paths.get(tempFile), Paths.get(METADATA_CACHE_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save the metadata cache");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return a ArrayList with one row of the metadata cache per element or null if there is no saved cache
+     */
+    public ArrayList<String> loadMetaDataCache() {
+        if (!Files.exists(Paths.get(METADATA_CACHE_FILE)))
+            return null;
+        try {
+            return FileUtils.readAllLines(METADATA_CACHE_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not read the metadata cache");
+            return null;
+        }
+    }
+
     // Waiting Uploads
 
     /**
@@ -458,6 +626,76 @@ public enum ConfigManager {
         }
     }
 
+    // Upload sessions
+
+    /**
+     * Saves a started upload so it can be resumed if the program is closed before the upload is finished.
+     * The file is first written next to the old one and then moved over it so a crash while saving does not
+     * destroy the previously saved session.
+     * @param fileName name of the session file, an existing session with the same name is replaced
+     * @param sessionData string representation of the upload session
+     */
+    public void saveUploadSession(String fileName, String sessionData) {
+        try {
+            String tempFile = UPLOAD_SESSION_DIR + "/" + fileName + ".tmp";
+            FileUtils.writeAll(tempFile, sessionData);
+            Files.move(Paths.get(tempFile), Paths.get(UPLOAD_SESSION_DIR, fileName),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed saving upload session \"" + fileName + "\"");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param fileName name of the session file
+     * @return the saved upload session or null if there is no session with that name or it could not be read
+     */
+    public String getUploadSession(String fileName) {
+        File sessionFile = new File(UPLOAD_SESSION_DIR, fileName);
+        if (!sessionFile.exists())
+            return null;
+        try {
+            return FileUtils.readAll(sessionFile.getAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Error loading upload session \"" + fileName + "\"");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Unlike getWaitingUploads() the sessions are not deleted, they are needed until the uploads has finished
+     * @return a list of string representations of all saved upload sessions
+     */
+    public ArrayList<String> getUploadSessions() {
+        ArrayList<String> sessions = new ArrayList<>();
+        File[] directoryListing = new File(UPLOAD_SESSION_DIR).listFiles();
+        if (directoryListing == null)
+            return sessions;
+        for (File sessionFile : directoryListing) {
+            if (sessionFile.getName().endsWith(".tmp"))
+                continue;
+            String loaded = getUploadSession(sessionFile.getName());
+            if (loaded != null)
+                sessions.add(loaded);
+        }
+        return sessions;
+    }
+
+    /**
+     * Deletes a saved upload session, does nothing if it does not exist
+     * @param fileName name of the session file
+     */
+    public void deleteUploadSession(String fileName) {
+        try {
+            Files.deleteIfExists(Paths.get(UPLOAD_SESSION_DIR, fileName));
+        } catch (IOException e) {
+            System.err.println("Failed to delete upload session \"" + fileName + "\"");
+            e.printStackTrace();
+        }
+    }
+
     // Categories
 
     /**
@@ -1,14 +1,64 @@
 package io.github.stekeblad.videouploader.utils;
 
+import io.github.stekeblad.videouploader.utils.metrics.ApiMetricsInterceptor;
 import okhttp3.*;
 
+import javax.net.SocketFactory;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simple methods hiding the logic in making HTTP GETs and POSTs
+ * Simple methods hiding the logic in making HTTP GETs and POSTs.
+ * <p>
+ * Also owns the OkHttpClient that all network traffic in the program goes through, including the YouTube API via
+ * {@link OkHttpTransport}. Sharing one client means connections to the same server are kept alive and reused between
+ * API calls and upload chunks. HTTP/2 lets the requests made here share a single connection, OkHttpTransport uses
+ * HTTP/1.1 so the upload slots does not have to share one. The time and outcome of every request is recorded in
+ * UploadMetrics.
  */
 public class HttpOperations {
-    private static final OkHttpClient client = new OkHttpClient();
+    // Idle connections are kept open this long so the next API call or upload chunk does not need a new TLS handshake
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // Limits for asynchronous calls, synchronous calls (used everywhere at the moment) are limited by the callers
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 16;
+
+    /**
+     * Created the first time it is used so the settings are loaded when the socket buffer sizes are read
+     */
+    private static class ClientHolder {
+        private static final OkHttpClient CLIENT = createClient();
+    }
+
+    /**
+     * @return the OkHttpClient shared by the entire program. Use {@link OkHttpClient#newBuilder()} if a request needs
+     * other timeouts, the new client keeps sharing the connection pool and dispatcher with this one.
+     */
+    public static OkHttpClient getClient() {
+        return ClientHolder.CLIENT;
+    }
+
+    private static OkHttpClient createClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(new ApiMetricsInterceptor())
+                .socketFactory(new TunedSocketFactory(
+                        ConfigManager.INSTANCE.getSocketSendBufferKiB() * 1024,
+                        ConfigManager.INSTANCE.getSocketReceiveBufferKiB() * 1024))
+                .build();
+    }
 
     /**
      * Performs a HTTP GET request on the given URL
@@ -21,7 +71,7 @@ public class HttpOperations {
                 .url(url)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = getClient().newCall(request).execute()) {
             if (!response.isSuccessful())
                 return null;
 
@@ -46,7 +96,7 @@ public class HttpOperations {
                 .url(url)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = getClient().newCall(request).execute()) {
             if (!response.isSuccessful())
                 return null;
 
@@ -74,7 +124,7 @@ public class HttpOperations {
                 .post(formBody)
                 .build();
 
-        Response response = client.newCall(request).execute();
+        Response response = getClient().newCall(request).execute();
         boolean success = response.isSuccessful();
 
         // For debugging or returning in some way in the future:
@@ -87,4 +137,68 @@ public class HttpOperations {
         return success;
 
     }
+
+    /**
+     * Creates plain sockets with the configured send and receive buffer sizes, TLS is added on top of them by OkHttp.
+     * A size of 0 keeps the operating system default.
+     * <p>
+     * Nagle's algorithm is turned off. HTTP/2 sends small frames, like window updates, that would otherwise wait for
+     * the server to acknowledge earlier data and delay the next request by up to the server's delayed ACK timeout.
+     */
+    private static class TunedSocketFactory extends SocketFactory {
+        private final SocketFactory delegate = SocketFactory.getDefault();
+        private final int sendBufferSize;
+        private final int receiveBufferSize;
+
+        TunedSocketFactory(int sendBufferSize, int receiveBufferSize) {
+            this.sendBufferSize = sendBufferSize;
+            this.receiveBufferSize = receiveBufferSize;
+        }
+
+        private Socket configure(Socket socket) throws SocketException {
+            socket.setTcpNoDelay(true);
+            if (sendBufferSize > 0)
+                socket.setSendBufferSize(sendBufferSize);
+            // Must be set before connecting for the TCP window scaling to use it
+            if (receiveBufferSize > 0)
+                socket.setReceiveBufferSize(receiveBufferSize);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return configure(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket socket = configure(delegate.createSocket());
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            Socket socket = configure(delegate.createSocket());
+            socket.bind(new InetSocketAddress(localHost, localPort));
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            Socket socket = configure(delegate.createSocket());
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            Socket socket = configure(delegate.createSocket());
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(new InetSocketAddress(address, port));
+            return socket;
+        }
+    }
 }
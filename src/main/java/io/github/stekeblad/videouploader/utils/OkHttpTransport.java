@@ -0,0 +1,236 @@
+package io.github.stekeblad.videouploader.utils;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import okhttp3.*;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A HttpTransport for the Google API client that sends its requests with OkHttp instead of HttpURLConnection.
+ * With the client from {@link HttpOperations#getClient()} the YouTube API calls and upload chunks reuses pooled
+ * connections together with all other traffic from the program.
+ * <p>
+ * The requests are sent with HTTP/1.1 so every upload slot gets a connection of its own. With HTTP/2 all slots
+ * shares one connection and its flow control window, which made uploading from several slots at once slower than
+ * with HttpURLConnection (see TransportBenchmark). This class is threadsafe.
+ */
+public class OkHttpTransport extends HttpTransport {
+    private final OkHttpClient client;
+    // The clients for the timeouts that has been asked for, the Google API client almost always uses the same ones
+    private final ConcurrentHashMap<List<Integer>, OkHttpClient> timeoutClients = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a transport using the OkHttpClient shared by the entire program
+     */
+    public OkHttpTransport() {
+        this(HttpOperations.getClient());
+    }
+
+    /**
+     * @param client the client to send requests with
+     */
+    public OkHttpTransport(OkHttpClient client) {
+        // The Google API client follows redirects itself, and 308 means "resume incomplete" for uploads
+        this.client = client.newBuilder()
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new OkHttpRequest(this, method, url);
+    }
+
+    /**
+     * @return a client with the given timeouts in milliseconds, a negative timeout keeps the one from the shared
+     * client. The clients shares the connection pool and dispatcher and are only created once for every combination.
+     */
+    private OkHttpClient getClient(int connectTimeout, int readTimeout, int writeTimeout) {
+        if (connectTimeout < 0 && readTimeout < 0 && writeTimeout < 0)
+            return client;
+        return timeoutClients.computeIfAbsent(Arrays.asList(connectTimeout, readTimeout, writeTimeout), key -> {
+            OkHttpClient.Builder clientBuilder = client.newBuilder();
+            if (connectTimeout >= 0)
+                clientBuilder.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+            if (readTimeout >= 0)
+                clientBuilder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
+            if (writeTimeout >= 0)
+                clientBuilder.writeTimeout(writeTimeout, TimeUnit.MILLISECONDS);
+            return clientBuilder.build();
+        });
+    }
+
+    private static class OkHttpRequest extends LowLevelHttpRequest {
+        private final OkHttpTransport transport;
+        private final String method;
+        private final Request.Builder builder;
+        private int connectTimeout = -1;
+        private int readTimeout = -1;
+        private int writeTimeout = -1;
+
+        OkHttpRequest(OkHttpTransport transport, String method, String url) {
+            this.transport = transport;
+            this.method = method;
+            this.builder = new Request.Builder().url(url);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            builder.addHeader(name, value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public void setWriteTimeout(int writeTimeout) {
+            this.writeTimeout = writeTimeout;
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            RequestBody body = null;
+            if (getStreamingContent() != null) {
+                body = new StreamingRequestBody(this, getContentType(), getContentLength());
+                if (getContentEncoding() != null)
+                    builder.header("Content-Encoding", getContentEncoding());
+            } else if (method.equals("POST") || method.equals("PUT") || method.equals("PATCH")) {
+                // OkHttp requires a body for these methods
+                body = RequestBody.create(new byte[0], null);
+            }
+            builder.method(method, body);
+
+            OkHttpClient client = transport.getClient(connectTimeout, readTimeout, writeTimeout);
+            return new OkHttpResponse(client.newCall(builder.build()).execute());
+        }
+
+        /**
+         * Writes the content of the request, like a upload chunk, directly to the connection
+         */
+        void writeContentTo(BufferedSink sink) throws IOException {
+            getStreamingContent().writeTo(sink.outputStream());
+        }
+    }
+
+    /**
+     * Lets the Google API client write the request content, like a upload chunk, directly to the connection. The
+     * content is streamed from the video file and can only be written once, OkHttp must not retry the request with
+     * the same body.
+     */
+    private static class StreamingRequestBody extends RequestBody {
+        private final OkHttpRequest request;
+        private final MediaType contentType;
+        private final long contentLength;
+
+        StreamingRequestBody(OkHttpRequest request, String contentType, long contentLength) {
+            this.request = request;
+            this.contentType = contentType == null ? null : MediaType.parse(contentType);
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            request.writeContentTo(sink);
+        }
+    }
+
+    private static class OkHttpResponse extends LowLevelHttpResponse {
+        private final Response response;
+        private final Headers headers;
+
+        OkHttpResponse(Response response) {
+            this.response = response;
+            this.headers = response.headers();
+        }
+
+        @Override
+        public InputStream getContent() {
+            return response.body().byteStream();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.header("Content-Encoding");
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.body().contentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return response.header("Content-Type");
+        }
+
+        @Override
+        public String getStatusLine() {
+            String protocol = response.protocol() == Protocol.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+            return protocol + " " + response.code() + " " + response.message();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.code();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return response.message();
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headers.size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return headers.name(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return headers.value(index);
+        }
+
+        @Override
+        public void disconnect() {
+            response.close();
+        }
+    }
+}
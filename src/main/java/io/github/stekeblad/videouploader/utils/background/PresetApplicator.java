@@ -1,46 +1,73 @@
 package io.github.stekeblad.videouploader.utils.background;
 
 import io.github.stekeblad.videouploader.tagProcessing.ITagProcessor;
+import io.github.stekeblad.videouploader.tagProcessing.TagContext;
+import io.github.stekeblad.videouploader.tagProcessing.template.PresetTemplate;
 import io.github.stekeblad.videouploader.youtube.VideoPreset;
 import io.github.stekeblad.videouploader.youtube.VideoUpload;
-import javafx.application.Platform;
-import javafx.concurrent.Task;
 import org.jcodec.api.NotSupportedException;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
- * Can apply a preset to a set of video files in a background thread and return VideoUpload objects.
+ * Can apply a preset to a set of video files in background threads and return VideoUpload objects.
+ * <p>
+ * The files are processed in parallel by one thread per processor core, but at most READERS_PER_DISK files on the
+ * same disk is read at the same time so a spinning disk is not made slower by seeking between many files. Every file
+ * gets its episode number when it is queued, so $(ep) follows the order of the files and not the order they happens
+ * to be finished in. The finished uploads is given to the success callback in the same order, in batches of the ones
+ * that was ready during the same frame.
  */
 public class PresetApplicator {
+    private static final int READERS_PER_DISK = 2;
+    // Used for files where the file store could not be found
+    private static final String UNKNOWN_DISK = "unknown";
+    // The preset and the created uploads are JavaFX nodes, they are not shown but only one thread at a time should
+    // read or create them
+    private static final Object JAVAFX_LOCK = new Object();
+
     private final Map<String, Future> tasks;
-    private Consumer<VideoUpload> successCallback = null;
+    private Consumer<List<VideoUpload>> successCallback = null;
     private BiConsumer<File, Throwable> errorCallback = null;
     private final ExecutorService exec;
+    private final UiUpdateDispatcher uiUpdates = UiUpdateDispatcher.INSTANCE;
+    private final Map<Object, Semaphore> diskReaders = new ConcurrentHashMap<>();
 
-    private VideoPreset lastPreset;
-    private List<ITagProcessor> tagProcessors = null;
+    // Stateless, shared by all threads
+    private final List<ITagProcessor> tagProcessors;
 
     public PresetApplicator() {
-        exec = Executors.newSingleThreadExecutor(Thread::new);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        exec = Executors.newFixedThreadPool(threads, Thread::new);
         tasks = Collections.synchronizedMap(new HashMap<>());
+        List<ITagProcessor> processors = new ArrayList<>();
+        for (ITagProcessor tagProcessor : ServiceLoader.load(ITagProcessor.class))
+            processors.add(tagProcessor);
+        tagProcessors = Collections.unmodifiableList(processors);
     }
 
     /**
-     * Set a method to be called every time PresetApplicator has successfully applied a preset to a video.
+     * Set a method to be called every time PresetApplicator has successfully applied a preset to one or more videos.
+     * The callback is called on the JavaFX application thread with the new uploads in the order the files was given
+     * to applyPreset().
      * Setting this callback is required and needs to be set before providing any videos to apply a preset to.
      * If you attempt to change the callback while the PresetApplicator is working an NotSupportedException will be thrown.
      *
-     * @param presetApplicatorSuccessCallback the callback to call for every created VideoUpload
+     * @param presetApplicatorSuccessCallback the callback to call with the created VideoUploads
      * @throws NotSupportedException if you try to change the callback while the PresetApplicator is working
      */
-    public void setSuccessCallback(Consumer<VideoUpload> presetApplicatorSuccessCallback) throws NotSupportedException {
+    public void setSuccessCallback(Consumer<List<VideoUpload>> presetApplicatorSuccessCallback) throws NotSupportedException {
         if (!tasks.keySet().isEmpty())
             throw new NotSupportedException("Success callback can not be changed while the PresetApplicator is working");
         else
@@ -49,6 +76,7 @@ public class PresetApplicator {
 
     /**
      * Set a method to be called if any unhandled exceptions are thrown.
+     * The callback is called on the JavaFX application thread.
      * Setting this callback is not required. It is recommended to call this method
      * shortly after an instance of the class is created and before providing any videos to apply a preset to.
      * If you attempt to change the callback while the PresetApplicator is working an NotSupportedException will be thrown.
@@ -80,96 +108,159 @@ public class PresetApplicator {
         return tasks.keySet();
     }
 
+    /**
+     * Queues the files to get the preset applied to them in the background
+     *
+     * @param videoFiles the files to create uploads for
+     * @param preset     the preset to apply
+     * @param autoNum    the episode number of the first file, the next file gets the next number and so on
+     */
     public void applyPreset(List<File> videoFiles, VideoPreset preset, int autoNum) {
-        for (File videoFile : videoFiles) {
+        // Compiled once here and shared by all threads
+        PresetTemplate template = compile(preset);
+        Batch batch = new Batch(videoFiles.size());
+        for (int i = 0; i < videoFiles.size(); i++) {
+            File videoFile = videoFiles.get(i);
             // assume the user will not send a file to PresetApplicator that is already queued
             String cancelName = videoFile.getAbsolutePath();
-            int taskAutoNum = autoNum; // variable used inside task "needs to be final or effectively final"
-            // Create a task
-            Task newTask = new Task<Void>() {
-                @Override
-                // Define what it does
-                protected Void call() {
-                    try {
-                        //Apply
-                        VideoUpload readyUpload = apply(videoFile, preset, taskAutoNum);
-                        Platform.runLater(() -> successCallback.accept(readyUpload));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        if (errorCallback != null) {
-                            Platform.runLater(() -> errorCallback.accept(videoFile, e));
-                        }
+            int index = i;
+            int fileAutoNum = autoNum + i;
+            Runnable task = () -> {
+                VideoUpload readyUpload = null;
+                Semaphore readers = diskReaders.computeIfAbsent(diskOf(videoFile), disk -> new Semaphore(READERS_PER_DISK));
+                try {
+                    readers.acquire();
+                } catch (InterruptedException e) {
+                    // kill() has been called
+                    return;
+                }
+                try {
+                    readyUpload = apply(videoFile, preset, template, fileAutoNum);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    if (errorCallback != null) {
+                        uiUpdates.post(() -> errorCallback.accept(videoFile, e));
                     }
-                    // remove the task from the list
+                } finally {
+                    readers.release();
+                    // Also after a Error, a file that is never finished holds back the rest of the batch
                     tasks.remove(cancelName);
-                    return null;
+                    batch.finished(index, readyUpload);
                 }
             };
-            newTask.setOnFailed(event -> {
-                if (errorCallback != null) {
-                    Platform.runLater(() -> errorCallback.accept(videoFile, newTask.getException()));
-                }
-            });
-            Future futureTask = exec.submit(newTask);
-            tasks.put(cancelName, futureTask); // save the future to be able to abort the task
-            autoNum++;
+            // Submit while holding the lock, the task may otherwise be finished and removed before it has been added
+            synchronized (tasks) {
+                Future futureTask = exec.submit(task);
+                tasks.put(cancelName, futureTask); // save the future to be able to abort the task
+            }
         }
+    }
 
+    /**
+     * @return the file store the file is on, or UNKNOWN_DISK if it could not be found
+     */
+    private static Object diskOf(File file) {
+        try {
+            return Files.getFileStore(file.toPath());
+        } catch (IOException | SecurityException e) {
+            return UNKNOWN_DISK;
+        }
     }
 
     /**
-     * Does the thing we actually care about
-     *
-     * @param videoFile a video file to apply a preset to
-     * @param preset    the preset to apply
-     * @param autoNum   automatic episode numbering number
-     * @return a VideoUpload, ready to be uploaded
+     * The files given to one call of applyPreset(). Keeps the uploads that was finished before an upload for a file
+     * earlier in the list so they can be given to the success callback in the right order.
      */
-    private VideoUpload apply(File videoFile, VideoPreset preset, int autoNum) {
-        // Find tagProcessors if tagProcessors list is null
-        if (tagProcessors == null) {
-            tagProcessors = new ArrayList<>();
-            ServiceLoader<ITagProcessor> tagProcessorServiceLoader = ServiceLoader.load(ITagProcessor.class);
-            for (ITagProcessor tagProcessor : tagProcessorServiceLoader) {
-                tagProcessors.add(tagProcessor);
+    private class Batch {
+        private final VideoUpload[] results;
+        private final boolean[] done;
+        private int nextToDeliver = 0;
+        private List<VideoUpload> ready = new ArrayList<>();
+        private boolean deliveryPosted = false;
+
+        Batch(int size) {
+            results = new VideoUpload[size];
+            done = new boolean[size];
+        }
+
+        /**
+         * @param index  the position of the file in the list given to applyPreset()
+         * @param upload the created upload or null if it failed
+         */
+        synchronized void finished(int index, VideoUpload upload) {
+            results[index] = upload;
+            done[index] = true;
+            while (nextToDeliver < done.length && done[nextToDeliver]) {
+                if (results[nextToDeliver] != null)
+                    ready.add(results[nextToDeliver]);
+                results[nextToDeliver] = null;
+                nextToDeliver++;
+            }
+            if (!ready.isEmpty() && !deliveryPosted) {
+                deliveryPosted = true;
+                // Everything that is ready when the frame is shown is delivered together
+                uiUpdates.post(this::deliver);
             }
         }
 
-        // Update tag processors if they are initialized to the wrong preset
-        if (!preset.equals(lastPreset)) {
-            for (ITagProcessor tagProcessor : tagProcessors) {
-                tagProcessor.init(preset, autoNum);
+        private void deliver() {
+            List<VideoUpload> uploads;
+            synchronized (this) {
+                uploads = ready;
+                ready = new ArrayList<>();
+                deliveryPosted = false;
             }
-            lastPreset = preset;
+            successCallback.accept(uploads);
         }
+    }
 
-        // run the tag processors on the preset and video file
-        String name = preset.getVideoName();
-        String description = preset.getVideoDescription();
-        List<String> videoTags = preset.getVideoTags();
+    /**
+     * Compiles the title, description and tags of a preset so it can be applied to files. Call it on the JavaFX
+     * application thread or on a thread that is the only one using the preset.
+     *
+     * @param preset the preset to compile
+     * @return the compiled preset
+     */
+    public PresetTemplate compile(VideoPreset preset) {
+        return PresetTemplate.compile(preset, tagProcessors);
+    }
 
-        for (ITagProcessor processor : tagProcessors) {
-            name = processor.processTitle(name, videoFile);
-            description = processor.processDescription(description, videoFile);
-            videoTags = processor.processTags(videoTags, videoFile);
-        }
+    /**
+     * Does the thing we actually care about. Runs on the calling thread, applyPreset() calls it from its background
+     * threads and the benchmarks calls it directly. Threadsafe.
+     *
+     * @param videoFile a video file to apply a preset to
+     * @param preset    the preset to apply
+     * @param template  the preset compiled by compile()
+     * @param autoNum   the episode number of this video
+     * @return a VideoUpload, ready to be uploaded
+     */
+    public VideoUpload apply(File videoFile, VideoPreset preset, PresetTemplate template, int autoNum) {
+        TagContext context = new TagContext(videoFile, autoNum);
+        // Replace all tags in one pass per field, the slow part that is done in parallel. Every tag value records
+        // its own flight recorder event.
+        String name = template.renderTitle(context);
+        String description = template.renderDescription(context);
+        List<String> videoTags = template.renderTags(context);
 
         // Create the VideoUpload object
-        VideoUpload.Builder newUploadBuilder = new VideoUpload.Builder()
-                .setVideoName(name)
-                .setVideoDescription(description)
-                .setVisibility(preset.getVisibility())
-                .setVideoTags(videoTags)
-                .setSelectedPlaylist(preset.getSelectedPlaylist())
-                .setCategory(preset.getCategory())
-                .setTellSubs(preset.isTellSubs())
-                .setMadeForKids(preset.isMadeForKids())
-                // assume two videos in upload pane never will have the same number and use the same preset
-                .setPaneName("upload-" + preset.getPresetName() + "-" + autoNum)
-                .setVideoFile(videoFile);
-        if (preset.getThumbNail() != null) {
-            newUploadBuilder.setThumbNailPath(preset.getThumbNail().getAbsolutePath());
+        synchronized (JAVAFX_LOCK) {
+            VideoUpload.Builder newUploadBuilder = new VideoUpload.Builder()
+                    .setVideoName(name)
+                    .setVideoDescription(description)
+                    .setVisibility(preset.getVisibility())
+                    .setVideoTags(videoTags)
+                    .setSelectedPlaylist(preset.getSelectedPlaylist())
+                    .setCategory(preset.getCategory())
+                    .setTellSubs(preset.isTellSubs())
+                    .setMadeForKids(preset.isMadeForKids())
+                    // assume two videos in upload pane never will have the same number and use the same preset
+                    .setPaneName("upload-" + preset.getPresetName() + "-" + autoNum)
+                    .setVideoFile(videoFile);
+            if (preset.getThumbNail() != null) {
+                newUploadBuilder.setThumbNailPath(preset.getThumbNail().getAbsolutePath());
+            }
+            return newUploadBuilder.build();
         }
-        return newUploadBuilder.build();
     }
 }
@@ -0,0 +1,214 @@
+package io.github.stekeblad.videouploader.utils.background;
+
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MediaInfoCache;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.HashUtils;
+import org.jcodec.api.FrameGrab;
+import org.jcodec.api.JCodecException;
+import org.jcodec.api.UnsupportedFormatException;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Rect;
+import org.jcodec.scale.ColorUtil;
+import org.jcodec.scale.Transform;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static io.github.stekeblad.videouploader.utils.Constants.THUMBNAIL_CACHE_DIR;
+
+/**
+ * Creates thumbnails for videos from a frame of the video file in background threads. The frame is taken from the
+ * keyframe closest before the time set in the settings (thumbnailFrameSeconds), or the middle of the video if it is
+ * shorter than that, so only one group of frames needs to be decoded no matter how long the video is. jcodec can read
+ * frames from MP4 and MOV files, other files does not get a thumbnail. Nothing is created unless the user has turned
+ * it on by setting thumbnailFrameSeconds to zero or more.
+ * <p>
+ * The thumbnails are saved as JPEG images no larger than MAX_WIDTH x MAX_HEIGHT in THUMBNAIL_CACHE_DIR. The name of a
+ * thumbnail is a hash of the path, size and modification time of the video file and the time of the frame, so a
+ * thumbnail is only created once for every version of a file. At most MAX_CACHED_THUMBNAILS are kept, the ones that
+ * was used least recently are deleted when the generator is created.
+ */
+public class ThumbnailGenerator {
+    public static final int MAX_WIDTH = 1280;
+    public static final int MAX_HEIGHT = 720;
+    public static final int MAX_CACHED_THUMBNAILS = 500;
+    // Decoding a frame uses a lot of processor time, do not take it from the uploads and the user interface
+    private static final int MAX_THREADS = 2;
+
+    private final ExecutorService exec;
+    private final UiUpdateDispatcher uiUpdates = UiUpdateDispatcher.INSTANCE;
+    private final ConfigManager configManager = ConfigManager.INSTANCE;
+
+    public ThumbnailGenerator() {
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() / 2));
+        exec = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "Thumbnail generator");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        exec.submit(this::pruneCache);
+    }
+
+    /**
+     * Creates a thumbnail for a video in the background, or finds the one that was created before. Does nothing if
+     * thumbnailFrameSeconds in the settings is negative.
+     *
+     * @param videoFile the video to create a thumbnail for
+     * @param callback  is given the thumbnail on the JavaFX application thread, it is not called if no thumbnail could
+     *                  be created
+     */
+    public void generate(File videoFile, Consumer<File> callback) {
+        double seconds = configManager.getThumbnailFrameSeconds();
+        if (seconds < 0 || exec.isShutdown())
+            return;
+        exec.submit(() -> {
+            File thumbnail = getThumbnail(videoFile, seconds);
+            if (thumbnail != null)
+                uiUpdates.post(() -> callback.accept(thumbnail));
+        });
+    }
+
+    /**
+     * Stops creating thumbnails, the ones that are not finished are not created
+     */
+    public void kill() {
+        exec.shutdownNow();
+    }
+
+    /**
+     * Gets the thumbnail for a video from the cache or creates it, runs on the calling thread
+     *
+     * @param videoFile the video to create a thumbnail for
+     * @param seconds   the time in the video to take the frame from
+     * @return the thumbnail or null if the video format is not supported or the frame could not be read
+     */
+    public File getThumbnail(File videoFile, double seconds) {
+        if (!videoFile.isFile())
+            return null;
+        File thumbnail = new File(THUMBNAIL_CACHE_DIR, cacheName(videoFile, seconds) + ".jpg");
+        if (thumbnail.isFile()) {
+            // Remember that it was used for when the cache is pruned
+            thumbnail.setLastModified(System.currentTimeMillis());
+            return thumbnail;
+        }
+
+        long durationMillis = MediaInfoCache.INSTANCE.get(videoFile).getDurationMillis();
+        if (durationMillis > 0 && seconds * 1000 >= durationMillis)
+            seconds = durationMillis / 2000.0;
+
+        Path tempFile = null;
+        try (FileChannelWrapper channel = NIOUtils.readableChannel(videoFile)) {
+            FrameGrab grab = FrameGrab.createFrameGrab(channel);
+            // Sloppy seeking stops at the keyframe and does not decode the frames between it and the exact time
+            grab.seekToSecondSloppy(seconds);
+            Picture picture = grab.getNativeFrame();
+            if (picture == null)
+                return null;
+            BufferedImage image = scaleToFit(toBufferedImage(picture), MAX_WIDTH, MAX_HEIGHT);
+            // A unique name, the same thumbnail can be created by two threads at the same time
+            tempFile = Files.createTempFile(thumbnail.getParentFile().toPath(), thumbnail.getName(), ".tmp");
+            if (!ImageIO.write(image, "jpg", tempFile.toFile())) {
+                Files.delete(tempFile);
+                return null;
+            }
+            Files.move(tempFile, thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return thumbnail;
+        } catch (UnsupportedFormatException e) {
+            return null;
+        } catch (IOException | JCodecException | RuntimeException e) {
+            System.err.println("Could not create a thumbnail for " + videoFile.getAbsolutePath());
+            e.printStackTrace();
+            try {
+                if (tempFile != null)
+                    Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    private static String cacheName(File videoFile, double seconds) {
+        return HashUtils.sha256(videoFile.getAbsolutePath() + "\n" + videoFile.length() + "\n" +
+                videoFile.lastModified() + "\n" + seconds);
+    }
+
+    /**
+     * Converts a decoded frame to a image, the decoder uses signed bytes so 128 is added to every value
+     */
+    private static BufferedImage toBufferedImage(Picture picture) {
+        Picture rgb = picture;
+        if (picture.getColor() != ColorSpace.RGB) {
+            Transform transform = ColorUtil.getTransform(picture.getColor(), ColorSpace.RGB);
+            if (transform == null)
+                throw new IllegalArgumentException("Unsupported color space " + picture.getColor());
+            rgb = Picture.create(picture.getWidth(), picture.getHeight(), ColorSpace.RGB);
+            transform.transform(picture, rgb);
+        }
+        BufferedImage image = new BufferedImage(rgb.getWidth(), rgb.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        byte[] imageData = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        byte[] pictureData = rgb.getPlaneData(0);
+        for (int i = 0; i < imageData.length; i += 3) {
+            imageData[i] = (byte) (pictureData[i + 2] + 128);
+            imageData[i + 1] = (byte) (pictureData[i + 1] + 128);
+            imageData[i + 2] = (byte) (pictureData[i] + 128);
+        }
+        // The decoded frame can be larger than the video, like 1088 lines for a 1080p video
+        Rect crop = picture.getCrop();
+        if (crop != null)
+            return image.getSubimage(crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight());
+        return image;
+    }
+
+    /**
+     * @return the image scaled down to fit inside maxWidth x maxHeight, or the image itself if it already fits
+     */
+    static BufferedImage scaleToFit(BufferedImage image, int maxWidth, int maxHeight) {
+        double scale = Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight());
+        if (scale >= 1)
+            return image;
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    /**
+     * Deletes the thumbnails that was used least recently if there is more than MAX_CACHED_THUMBNAILS
+     */
+    private void pruneCache() {
+        File[] thumbnails = new File(THUMBNAIL_CACHE_DIR).listFiles();
+        if (thumbnails == null || thumbnails.length <= MAX_CACHED_THUMBNAILS)
+            return;
+        Arrays.sort(thumbnails, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < thumbnails.length - MAX_CACHED_THUMBNAILS; i++) {
+            if (!thumbnails[i].delete())
+                System.err.println("Could not delete the old thumbnail " + thumbnails[i].getName());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.stekeblad.videouploader.utils.background;
+
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.FileIdentity;
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.FileIdentityCache;
+import io.github.stekeblad.videouploader.utils.HashUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.github.stekeblad.videouploader.utils.Constants.THUMBNAIL_CACHE_DIR;
+import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SIZE;
+
+/**
+ * Enum-Singleton class that makes sure thumbnails can be uploaded to YouTube. A thumbnail that is larger than
+ * MAX_WIDTH x MAX_HEIGHT or MAX_THUMB_SIZE bytes is scaled down to fit inside MAX_WIDTH x MAX_HEIGHT and saved as a
+ * JPEG image with the highest quality in QUALITIES that is not larger than MAX_THUMB_SIZE. Thumbnails that already
+ * fits is used as they are.
+ * <p>
+ * The new images are saved in THUMBNAIL_CACHE_DIR named after a hash of the content of the original image, so the
+ * same image is only converted once even if it is used by many uploads or copied. The result for a file is also
+ * remembered until its size or modification time changes so the file does not need to be read again. All methods are
+ * threadsafe.
+ */
+public enum ThumbnailNormalizer {
+    INSTANCE;
+
+    public static final int MAX_WIDTH = ThumbnailGenerator.MAX_WIDTH;
+    public static final int MAX_HEIGHT = ThumbnailGenerator.MAX_HEIGHT;
+    public static final int MAX_FILES = 1000;
+    private static final float[] QUALITIES = {0.92f, 0.85f, 0.75f, 0.6f, 0.45f, 0.3f};
+
+    // The image to upload for each original image
+    private final FileIdentityCache<File> entries = new FileIdentityCache<>(MAX_FILES);
+
+    private final ExecutorService exec = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Thumbnail normalizer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Starts converting a thumbnail in the background so it is ready when the video has been uploaded. Errors are
+     * ignored, they are reported when normalize() is called again before uploading the thumbnail.
+     *
+     * @param thumbnail the image to convert, nothing is done if it is null
+     */
+    public void prepare(File thumbnail) {
+        if (thumbnail == null)
+            return;
+        exec.submit(() -> {
+            try {
+                normalize(thumbnail);
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    /**
+     * Gets a version of a thumbnail that can be uploaded to YouTube, converts it on the calling thread if it has not
+     * been done before
+     *
+     * @param thumbnail the image to upload
+     * @return thumbnail if it already can be uploaded, otherwise a smaller copy of it
+     * @throws IOException if the image could not be read or could not be made small enough
+     */
+    public File normalize(File thumbnail) throws IOException {
+        FileIdentity identity = FileIdentity.of(thumbnail);
+        File cached = entries.get(identity);
+        if (cached != null && cached.isFile())
+            return cached;
+
+        File normalized = thumbnail;
+        if (thumbnail.length() > MAX_THUMB_SIZE || !fits(thumbnail)) {
+            normalized = new File(THUMBNAIL_CACHE_DIR, HashUtils.sha256(thumbnail) + ".jpg");
+            if (normalized.isFile()) {
+                // Remember that it was used for when the cache is pruned
+                normalized.setLastModified(System.currentTimeMillis());
+            } else {
+                writeJpeg(scale(thumbnail), normalized);
+            }
+        }
+
+        // Do not remember files that changed while they were read
+        if (identity.equals(FileIdentity.of(thumbnail)))
+            entries.put(identity, normalized);
+        return normalized;
+    }
+
+    /**
+     * @return true if the image is not larger than MAX_WIDTH x MAX_HEIGHT, only the header of the image is read
+     */
+    private static boolean fits(File image) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+            if (input == null)
+                throw new IOException("Could not open the thumbnail " + image.getAbsolutePath());
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext())
+                throw new IOException("The thumbnail " + image.getAbsolutePath() + " is not a supported image");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return reader.getWidth(0) <= MAX_WIDTH && reader.getHeight(0) <= MAX_HEIGHT;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads a image and scales it down to fit inside MAX_WIDTH x MAX_HEIGHT, transparent parts becomes black as
+     * JPEG images can not be transparent
+     */
+    private static BufferedImage scale(File thumbnail) throws IOException {
+        BufferedImage image = ImageIO.read(thumbnail);
+        if (image == null)
+            throw new IOException("The thumbnail " + thumbnail.getAbsolutePath() + " is not a supported image");
+        image = ThumbnailGenerator.scaleToFit(image, MAX_WIDTH, MAX_HEIGHT);
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR)
+            return image;
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, Color.BLACK, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    /**
+     * Saves the image as a JPEG image with the highest quality that makes it small enough
+     */
+    private static void writeJpeg(BufferedImage image, File target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            for (float quality : QUALITIES) {
+                jpeg.reset();
+                param.setCompressionQuality(quality);
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(jpeg)) {
+                    writer.setOutput(output);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                }
+                if (jpeg.size() <= MAX_THUMB_SIZE) {
+                    Path tempFile = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".tmp");
+                    try {
+                        try (OutputStream out = Files.newOutputStream(tempFile)) {
+                            jpeg.writeTo(out);
+                        }
+                        Files.move(tempFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(tempFile);
+                    }
+                    return;
+                }
+            }
+            throw new IOException("The thumbnail could not be made smaller than " + MAX_THUMB_SIZE + " bytes");
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.github.stekeblad.videouploader.utils.background;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Enum-Singleton class that collects updates to the user interface from background threads and applies them on the
+ * JavaFX application thread at most FRAMES_PER_SECOND times per second, instead of every update posting its own
+ * Platform.runLater(). This keeps the JavaFX event queue short when many uploads report their progress at the same
+ * time.
+ * <p>
+ * Things that change often, like the progress of a upload, is reported to a Slot. A slot only remembers the latest
+ * state and updating it does not allocate anything, so it can be done for every chunk of a upload. Things that
+ * happens once, like a preset being applied, is given to post() and runs in the same order they was posted, together
+ * with everything else posted during the same frame.
+ * <p>
+ * The JavaFX toolkit must be started before this class is used. All methods are threadsafe.
+ */
+public enum UiUpdateDispatcher {
+    INSTANCE;
+
+    public static final int FRAMES_PER_SECOND = 30;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+
+    private final List<Slot> slots = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> posted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // Only used on the JavaFX application thread
+    private AnimationTimer timer = null;
+    private long lastFrame = 0;
+
+    /**
+     * Creates a new slot and starts to show its state. Call close() on the slot when it will not be updated anymore.
+     *
+     * @param progressTarget receives the progress on the JavaFX application thread, like a progress bar's setProgress
+     * @param textTarget     receives the status text on the JavaFX application thread, like a label's setText
+     * @return a slot for reporting the progress and status of one thing
+     */
+    public Slot register(DoubleConsumer progressTarget, Consumer<String> textTarget) {
+        Slot slot = new Slot(progressTarget, textTarget);
+        slots.add(slot);
+        ensureRunning();
+        return slot;
+    }
+
+    /**
+     * Runs update on the JavaFX application thread the next frame. Updates runs in the order they are posted.
+     *
+     * @param update something that changes the user interface
+     */
+    public void post(Runnable update) {
+        posted.add(update);
+        ensureRunning();
+    }
+
+    /**
+     * Starts the timer if it is not running. It stops itself when there is no slots and nothing posted.
+     */
+    private void ensureRunning() {
+        if (running.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                if (timer == null)
+                    timer = new FrameTimer();
+                timer.start();
+            });
+        }
+    }
+
+    /**
+     * Applies everything that has changed since the last frame. Called on the JavaFX application thread.
+     */
+    private void flush() {
+        for (Slot slot : slots)
+            slot.flush();
+        Runnable update;
+        while ((update = posted.poll()) != null)
+            update.run();
+    }
+
+    private class FrameTimer extends AnimationTimer {
+        @Override
+        public void handle(long now) {
+            // The pulse runs at the refresh rate of the screen, only update the user interface every FRAME_NANOS
+            if (now - lastFrame < FRAME_NANOS)
+                return;
+            lastFrame = now;
+            flush();
+            if (slots.isEmpty() && posted.isEmpty()) {
+                stop();
+                running.set(false);
+                // Something may have been registered or posted after the check but before running was cleared
+                if ((!slots.isEmpty() || !posted.isEmpty()) && running.compareAndSet(false, true))
+                    start();
+            }
+        }
+    }
+
+    /**
+     * The latest progress and status text of one thing, for example a upload. Setting the progress or text only
+     * writes a field and they are applied to the user interface on the next frame. If the same value is set
+     * several times during a frame only the last one is shown.
+     */
+    public final class Slot {
+        private static final double NO_PROGRESS = -2;
+
+        private final DoubleConsumer progressTarget;
+        private final Consumer<String> textTarget;
+        private final AtomicBoolean changed = new AtomicBoolean(false);
+        private volatile double progress = NO_PROGRESS;
+        private volatile String text = null;
+        // When set the status text is created from it and the progress in percent when the frame is shown
+        private volatile String percentFormat = null;
+        private volatile boolean closed = false;
+
+        // Only used on the JavaFX application thread
+        private double shownProgress = NO_PROGRESS;
+        private String shownText = null;
+        private int shownPercent = -1;
+
+        private Slot(DoubleConsumer progressTarget, Consumer<String> textTarget) {
+            this.progressTarget = progressTarget;
+            this.textTarget = textTarget;
+        }
+
+        /**
+         * @param progress the new progress, 0.0 to 1.0 or a negative value for indeterminate
+         */
+        public void setProgress(double progress) {
+            this.progress = progress;
+            changed.lazySet(true);
+        }
+
+        /**
+         * @param text the new status text
+         */
+        public void setText(String text) {
+            percentFormat = null;
+            this.text = text;
+            changed.lazySet(true);
+        }
+
+        /**
+         * Sets the progress and makes the status text show it in percent. The text is created when the frame is shown
+         * and only if the percent has changed.
+         *
+         * @param progress      the new progress, 0.0 to 1.0
+         * @param percentFormat a format string with one %s or %d that is replaced by the progress in whole percent
+         */
+        public void setProgress(double progress, String percentFormat) {
+            this.progress = progress;
+            this.percentFormat = percentFormat;
+            changed.lazySet(true);
+        }
+
+        /**
+         * Shows the latest state one last time and stops showing it. Platform.runLater() calls made after this shows
+         * their changes after the last state of the slot.
+         */
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            Platform.runLater(() -> {
+                flush();
+                slots.remove(this);
+            });
+        }
+
+        private void flush() {
+            if (!changed.getAndSet(false))
+                return;
+            double newProgress = progress;
+            if (newProgress != shownProgress && newProgress != NO_PROGRESS) {
+                shownProgress = newProgress;
+                progressTarget.accept(newProgress);
+            }
+            String format = percentFormat;
+            String newText;
+            if (format != null) {
+                int percent = (int) Math.floor(newProgress * 100);
+                if (percent == shownPercent && shownText != null)
+                    return;
+                shownPercent = percent;
+                newText = String.format(format, percent);
+            } else {
+                shownPercent = -1;
+                newText = text;
+            }
+            if (newText != null && !newText.equals(shownText)) {
+                shownText = newText;
+                textTarget.accept(newText);
+            }
+        }
+    }
+}
@@ -53,7 +53,8 @@ public class UpdaterUi {
         if (!inBackground)
             Platform.runLater(dialogStage::show);
 
-        updater = new UpdaterCore(statusString -> Platform.runLater(() ->
+        // Status messages that arrives during the same frame is appended together
+        updater = new UpdaterCore(statusString -> UiUpdateDispatcher.INSTANCE.post(() ->
                 updatingStatus.setText(updatingStatus.getText() + statusString)));
 
         updater.checkForUpdate(updateInfo -> {
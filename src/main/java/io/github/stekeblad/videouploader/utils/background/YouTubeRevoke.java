@@ -94,6 +94,8 @@ public class YouTubeRevoke {
                                     .add("token", youtubeToken)
                                     .build();
                             revokeSuccess = HttpOperations.postForm("https://oauth2.googleapis.com/revoke", form);
+                            if (revokeSuccess)
+                                Auth.clearCachedCredential();
                         } catch (Exception ignored) {
                             revokeSuccess = false;
                         }
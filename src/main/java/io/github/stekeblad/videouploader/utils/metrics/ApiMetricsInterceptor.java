@@ -0,0 +1,70 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Reports the time and outcome of every request made with the OkHttpClient it is added to to UploadMetrics. The
+ * time is measured until the response headers has been received, reading the body is not included.
+ * <p>
+ * Requests to the Google APIs are grouped by method, host and path, so all upload chunks end up under
+ * "PUT www.googleapis.com/upload/youtube/v3/videos". Requests to hosts added with groupByPath(), like the local test
+ * server the load test uses, are grouped the same way. Requests to other servers are only grouped by method and host,
+ * their paths can contain things like version numbers. The requests that sends a chunk of a video file is also recorded as chunk latency, that includes
+ * the last chunk that AdaptiveChunkSizer never measures.
+ */
+public class ApiMetricsInterceptor implements Interceptor {
+    private static final Set<String> pathGroupedHosts = new CopyOnWriteArraySet<>();
+
+    private final UploadMetrics metrics = UploadMetrics.INSTANCE;
+
+    /**
+     * Makes requests to a host that stands in for the Google APIs, like a local test server, grouped by path
+     *
+     * @param host the host name or IP address as it is written in the URLs
+     */
+    public static void groupByPath(String host) {
+        pathGroupedHosts.add(host);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = endpointOf(request.method(), request.url());
+        long start = System.nanoTime();
+        try {
+            Response response = chain.proceed(request);
+            // 308 is how YouTube confirms a upload chunk that is not the last one
+            boolean failed = !response.isSuccessful() && response.code() != 308;
+            long nanos = System.nanoTime() - start;
+            metrics.apiCallCompleted(endpoint, nanos, failed);
+            if (isUploadChunk(request))
+                metrics.chunkConfirmed(nanos);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            metrics.apiCallCompleted(endpoint, System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if request sends a part of a video file to a upload session, asking how much of the file that has
+     * been received is done with a empty PUT
+     */
+    private static boolean isUploadChunk(Request request) throws IOException {
+        return request.method().equals("PUT") && request.url().encodedPath().startsWith("/upload/") &&
+                request.body() != null && request.body().contentLength() > 0;
+    }
+
+    static String endpointOf(String method, HttpUrl url) {
+        if (url.host().endsWith("googleapis.com") || pathGroupedHosts.contains(url.host()))
+            return method + " " + url.host() + url.encodedPath();
+        return method + " " + url.host();
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import java.io.File;
+
+/**
+ * The spans that records events. This class is the only one that refers to the event classes and it is only loaded
+ * by UploadFlightEvents after it has checked that Java Flight Recorder is available.
+ */
+class JfrSpans {
+
+    static boolean isAvailable() {
+        if (!FlightRecorder.isAvailable())
+            return false;
+        // Makes the events show up in JDK Mission Control before the first one has been recorded
+        FlightRecorder.register(UploadStepEvent.class);
+        FlightRecorder.register(TagProcessorEvent.class);
+        return true;
+    }
+
+    static UploadSpan beginUploadStep(UploadFlightEvents.Step step, File videoFile) {
+        UploadStepEvent event = new UploadStepEvent();
+        if (!event.isEnabled())
+            return UploadFlightEvents.NO_SPAN;
+        event.begin();
+        return new UploadStepSpan(event, step, videoFile);
+    }
+
+    static UploadSpan beginTagProcessor(String processor, String part, File videoFile) {
+        TagProcessorEvent event = new TagProcessorEvent();
+        if (!event.isEnabled())
+            return UploadFlightEvents.NO_SPAN;
+        event.begin();
+        return new TagProcessorSpan(event, processor, part, videoFile);
+    }
+
+    private static class UploadStepSpan implements UploadSpan {
+        private final UploadStepEvent event;
+        private final UploadFlightEvents.Step step;
+        private final File videoFile;
+        private long bytesSent = 0;
+        private boolean ended = false;
+
+        UploadStepSpan(UploadStepEvent event, UploadFlightEvents.Step step, File videoFile) {
+            this.event = event;
+            this.step = step;
+            this.videoFile = videoFile;
+        }
+
+        @Override
+        public void addBytesSent(long bytes) {
+            bytesSent += bytes;
+        }
+
+        @Override
+        public void end() {
+            if (ended)
+                return;
+            ended = true;
+            event.end();
+            if (!event.shouldCommit())
+                return;
+            event.step = step.name();
+            if (videoFile != null) {
+                event.videoFile = videoFile.getAbsolutePath();
+                event.fileSize = videoFile.length();
+            }
+            event.bytesSent = bytesSent;
+            event.commit();
+        }
+    }
+
+    private static class TagProcessorSpan implements UploadSpan {
+        private final TagProcessorEvent event;
+        private final String processor;
+        private final String part;
+        private final File videoFile;
+        private boolean ended = false;
+
+        TagProcessorSpan(TagProcessorEvent event, String processor, String part, File videoFile) {
+            this.event = event;
+            this.processor = processor;
+            this.part = part;
+            this.videoFile = videoFile;
+        }
+
+        @Override
+        public void addBytesSent(long bytes) {
+            // tag processors does not send anything
+        }
+
+        @Override
+        public void end() {
+            if (ended)
+                return;
+            ended = true;
+            event.end();
+            if (!event.shouldCommit())
+                return;
+            event.processor = processor;
+            event.part = part;
+            event.videoFile = videoFile.getAbsolutePath();
+            event.fileSize = videoFile.length();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many measured durations falls in each of a fixed set of buckets. The buckets doubles in size, the first
+ * is 0 to 1 ms and the last is everything longer than about 17 minutes. Recording a value does not allocate anything
+ * and the percentiles are the upper limits of the bucket they are in, that is good enough for telling a 40 ms API call
+ * from a 400 ms one. All methods are threadsafe.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 22;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos a measured duration in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        totalNanos.add(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // someone else recorded a new max at the same time, try again
+        }
+    }
+
+    /**
+     * @return the bucket that contains millis, bucket n contains values above 2^(n-1) up to 2^n
+     */
+    private static int bucketOf(long millis) {
+        if (millis <= 1)
+            return 0;
+        int bucket = 64 - Long.numberOfLeadingZeros(millis - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @return the upper limit of a bucket in milliseconds, Long.MAX_VALUE for the last one
+     */
+    private static long upperLimitMillis(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    public long getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count);
+    }
+
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the upper limit in milliseconds of the bucket the percentile is in, or 0 if nothing has been recorded.
+     * The largest measured value is returned instead if it is smaller.
+     */
+    public long getPercentileMillis(double percentile) {
+        long count = getCount();
+        if (count == 0)
+            return 0;
+        long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted)
+                return Math.min(upperLimitMillis(i), getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return the number of values in each bucket that has any, with keys like "&lt;= 64 ms"
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count == 0)
+                continue;
+            if (i == BUCKETS - 1)
+                buckets.put("> " + upperLimitMillis(i - 1) + " ms", count);
+            else
+                buckets.put("<= " + upperLimitMillis(i) + " ms", count);
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Only loaded when Java Flight Recorder is available, use UploadFlightEvents
+ */
+@Name("io.github.stekeblad.videouploader.TagProcessor")
+@Label("Tag Processor")
+@Description("A tag processor processing the title, description or tags of a video when a preset is applied")
+@Category({"Stekeblads Video Uploader", "Presets"})
+class TagProcessorEvent extends jdk.jfr.Event {
+    @Label("Processor")
+    String processor;
+
+    @Label("Part")
+    String part;
+
+    @Label("Video File")
+    String videoFile;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+}
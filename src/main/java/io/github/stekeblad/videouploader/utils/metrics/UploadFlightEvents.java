@@ -0,0 +1,75 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import java.io.File;
+
+/**
+ * Creates Java Flight Recorder events for the steps of a upload and for the tag processors, so a recording shows
+ * where the time of a batch goes. Start a recording with -XX:StartFlightRecording or from JDK Mission Control and
+ * look for the events under "Stekeblads Video Uploader".
+ * <p>
+ * Not all Java 8 runtimes include Flight Recorder, on those and when no recording wants the events every span is a
+ * shared object that does nothing. The file size is only read when a event is recorded. All methods are threadsafe,
+ * a span should only be used by one thread at the time.
+ */
+public class UploadFlightEvents {
+    /**
+     * The steps of a upload. COMPLETION is the entire upload, from it leaves the queue until the video has its
+     * thumbnail and is added to its playlist.
+     */
+    public enum Step {
+        AUTHENTICATION,
+        SESSION_INITIATION,
+        MEDIA_CHUNK,
+        THUMBNAIL,
+        PLAYLIST_INSERT,
+        COMPLETION
+    }
+
+    static final UploadSpan NO_SPAN = new UploadSpan() {
+        @Override
+        public void addBytesSent(long bytes) {
+        }
+
+        @Override
+        public void end() {
+        }
+    };
+
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return JfrSpans.isAvailable();
+        } catch (ClassNotFoundException | LinkageError | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if Flight Recorder is available, events can still be disabled in the running recordings. Use it to
+     * skip preparing for spans that can never be recorded.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @param step      the step that starts
+     * @param videoFile the video file being uploaded, or null if the step is not for a specific video
+     * @return a span to end when the step is done
+     */
+    public static UploadSpan beginUploadStep(Step step, File videoFile) {
+        return AVAILABLE ? JfrSpans.beginUploadStep(step, videoFile) : NO_SPAN;
+    }
+
+    /**
+     * @param processor the name of the tag processor
+     * @param part      the part of the video that is processed: title, description or tags
+     * @param videoFile the video file the preset is applied to
+     * @return a span to end when the processor is done
+     */
+    public static UploadSpan beginTagProcessor(String processor, String part, File videoFile) {
+        return AVAILABLE ? JfrSpans.beginTagProcessor(processor, part, videoFile) : NO_SPAN;
+    }
+}
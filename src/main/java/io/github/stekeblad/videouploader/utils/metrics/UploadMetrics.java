@@ -0,0 +1,354 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Enum-Singleton class that collects statistics about the uploads and the API calls: how fast the uploads goes, how
+ * long chunks and API calls takes, how many uploads is waiting and how long they spend in each phase. Uploader
+ * reports to it and the shared OkHttpClient reports all requests through {@link ApiMetricsInterceptor}.
+ * <p>
+ * The statistics can be read directly, are shown in the main window and is available over JMX after
+ * registerMBeans() has been called. Uploads are identified by their cancelName. All methods are threadsafe.
+ */
+public enum UploadMetrics implements UploadMetricsMXBean {
+    INSTANCE;
+
+    public static final String JMX_DOMAIN = "io.github.stekeblad.videouploader";
+
+    /**
+     * The phases a upload goes through, it can go back to WAITING_FOR_QUOTA from UPLOADING and POST_UPLOAD
+     */
+    public enum Phase {
+        QUEUED,
+        WAITING_FOR_QUOTA,
+        UPLOADING,
+        POST_UPLOAD
+    }
+
+    private final Map<String, UploadStats> uploads = new ConcurrentHashMap<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final LatencyHistogram chunkLatency = new LatencyHistogram();
+    private final LongAdder chunkSizeIncreases = new LongAdder();
+    private final LongAdder chunkSizeDecreases = new LongAdder();
+    private final LongAdder totalBytesUploaded = new LongAdder();
+    private final LongAdder finishedUploads = new LongAdder();
+    private final EnumMap<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private volatile MBeanServer mBeanServer = null;
+
+    UploadMetrics() {
+        for (Phase phase : Phase.values())
+            phaseNanos.put(phase, new LongAdder());
+    }
+
+    /**
+     * Makes the statistics available over JMX. The uploads that are queued after this is called gets their own
+     * MBean.
+     */
+    public void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=UploadMetrics");
+            if (!server.isRegistered(name))
+                server.registerMBean(new StandardMBean(this, UploadMetricsMXBean.class, true), name);
+            mBeanServer = server;
+        } catch (JMException e) {
+            System.err.println("Could not register the upload metrics MBean");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts to collect statistics for a upload, it starts in the QUEUED phase
+     *
+     * @param cancelName the name of the upload
+     * @param videoFile  the file that will be uploaded
+     */
+    public void uploadQueued(String cancelName, File videoFile) {
+        UploadStats stats = new UploadStats(videoFile);
+        UploadStats replaced = uploads.put(cancelName, stats);
+        if (replaced != null)
+            phaseNanos.get(replaced.phase()).add(replaced.changePhase(replaced.phase()));
+        MBeanServer server = mBeanServer;
+        if (server == null)
+            return;
+        try {
+            ObjectName name = uploadObjectName(cancelName);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(new StandardMBean(stats, UploadStatsMXBean.class, true), name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param cancelName the name of the upload
+     * @param phase      the phase the upload has entered
+     */
+    public void phaseChanged(String cancelName, Phase phase) {
+        UploadStats stats = uploads.get(cancelName);
+        if (stats == null)
+            return;
+        Phase oldPhase = stats.phase();
+        phaseNanos.get(oldPhase).add(stats.changePhase(phase));
+    }
+
+    /**
+     * Called every time YouTube confirms it has received more of the video file. The first call after the upload
+     * entered the UPLOADING phase starts the speed measurement.
+     *
+     * @param cancelName the name of the upload
+     * @param bytes      the number of bytes YouTube has confirmed it has received in total
+     */
+    public void bytesConfirmed(String cancelName, long bytes) {
+        UploadStats stats = uploads.get(cancelName);
+        if (stats != null)
+            totalBytesUploaded.add(stats.bytesConfirmed(bytes));
+    }
+
+    /**
+     * @param chunkNanos the time from a chunk of a video file was sent until YouTube confirmed it
+     */
+    public void chunkConfirmed(long chunkNanos) {
+        chunkLatency.record(chunkNanos);
+    }
+
+    /**
+     * Called when AdaptiveChunkSizer has selected the size of the next chunk of a upload
+     *
+     * @param cancelName            the name of the upload
+     * @param oldChunkSize          the size of the previous chunk, the same as newChunkSize for the first chunk
+     * @param newChunkSize          the size of the next chunk
+     * @param averageBytesPerSecond the throughput the size was selected from
+     */
+    public void chunkSizeSelected(String cancelName, int oldChunkSize, int newChunkSize, long averageBytesPerSecond) {
+        if (newChunkSize > oldChunkSize)
+            chunkSizeIncreases.increment();
+        else if (newChunkSize < oldChunkSize)
+            chunkSizeDecreases.increment();
+        UploadStats stats = uploads.get(cancelName);
+        if (stats != null)
+            stats.chunkSizeSelected(newChunkSize, averageBytesPerSecond);
+    }
+
+    /**
+     * Stops collecting statistics for a upload, call it when it is finished, has failed or is aborted
+     *
+     * @param cancelName the name of the upload
+     * @param finished   true if the upload was successful
+     */
+    public void uploadEnded(String cancelName, boolean finished) {
+        UploadStats stats = uploads.remove(cancelName);
+        if (stats == null)
+            return;
+        phaseNanos.get(stats.phase()).add(stats.changePhase(stats.phase()));
+        if (finished)
+            finishedUploads.increment();
+        MBeanServer server = mBeanServer;
+        if (server == null)
+            return;
+        try {
+            ObjectName name = uploadObjectName(cancelName);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param endpoint the method and address of the request without the query, see ApiMetricsInterceptor
+     * @param nanos    the time from the request was sent until the response headers was received or it failed
+     * @param failed   true if the request failed with a network error or a error status code
+     */
+    public void apiCallCompleted(String endpoint, long nanos, boolean failed) {
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+        stats.latency.record(nanos);
+        if (failed)
+            stats.failures.increment();
+    }
+
+    private static ObjectName uploadObjectName(String cancelName) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Upload,name=" + ObjectName.quote(cancelName));
+    }
+
+    private static class EndpointStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+    }
+
+    /**
+     * @param cancelName the name of a upload
+     * @return the statistics of the upload or null if it is not queued or active
+     */
+    public UploadStats getUpload(String cancelName) {
+        return uploads.get(cancelName);
+    }
+
+    @Override
+    public long getTotalBytesUploaded() {
+        return totalBytesUploaded.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        long bytesPerSecond = 0;
+        for (UploadStats stats : uploads.values())
+            bytesPerSecond += stats.getBytesPerSecond();
+        return bytesPerSecond;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        long remaining = 0;
+        for (UploadStats stats : uploads.values()) {
+            if (stats.phase() != Phase.POST_UPLOAD)
+                remaining += stats.remainingBytes();
+        }
+        if (remaining == 0)
+            return 0;
+        long bytesPerSecond = getBytesPerSecond();
+        return bytesPerSecond <= 0 ? -1 : remaining / bytesPerSecond;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return countInPhase(Phase.QUEUED);
+    }
+
+    @Override
+    public int getActiveUploads() {
+        return countInPhase(Phase.UPLOADING);
+    }
+
+    private int countInPhase(Phase phase) {
+        int count = 0;
+        for (UploadStats stats : uploads.values()) {
+            if (stats.phase() == phase)
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long getFinishedUploads() {
+        return finishedUploads.sum();
+    }
+
+    @Override
+    public Map<String, Integer> getUploadsInPhase() {
+        Map<String, Integer> inPhase = new TreeMap<>();
+        for (Phase phase : Phase.values())
+            inPhase.put(phase.name(), countInPhase(phase));
+        return inPhase;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTimeMillis() {
+        Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+        phaseNanos.forEach((phase, adder) -> nanos.put(phase, adder.sum()));
+        for (UploadStats stats : uploads.values())
+            nanos.merge(stats.phase(), TimeUnit.MILLISECONDS.toNanos(stats.getTimeInPhaseMillis()), Long::sum);
+        Map<String, Long> millis = new TreeMap<>();
+        nanos.forEach((phase, spent) -> millis.put(phase.name(), TimeUnit.NANOSECONDS.toMillis(spent)));
+        return millis;
+    }
+
+    @Override
+    public long getChunkCount() {
+        return chunkLatency.getCount();
+    }
+
+    @Override
+    public long getChunkLatencyMeanMillis() {
+        return chunkLatency.getMeanMillis();
+    }
+
+    @Override
+    public long getChunkLatencyMedianMillis() {
+        return chunkLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public long getChunkLatencyP95Millis() {
+        return chunkLatency.getPercentileMillis(95);
+    }
+
+    @Override
+    public long getChunkLatencyMaxMillis() {
+        return chunkLatency.getMaxMillis();
+    }
+
+    @Override
+    public Map<String, Long> getChunkLatencyBuckets() {
+        return chunkLatency.getBuckets();
+    }
+
+    @Override
+    public long getChunkSizeIncreases() {
+        return chunkSizeIncreases.sum();
+    }
+
+    @Override
+    public long getChunkSizeDecreases() {
+        return chunkSizeDecreases.sum();
+    }
+
+    @Override
+    public Map<String, Long> getApiCallCounts() {
+        return perEndpoint(stats -> stats.latency.getCount());
+    }
+
+    @Override
+    public Map<String, Long> getApiFailureCounts() {
+        return perEndpoint(stats -> stats.failures.sum());
+    }
+
+    @Override
+    public Map<String, Long> getApiLatencyMeanMillis() {
+        return perEndpoint(stats -> stats.latency.getMeanMillis());
+    }
+
+    @Override
+    public Map<String, Long> getApiLatencyP95Millis() {
+        return perEndpoint(stats -> stats.latency.getPercentileMillis(95));
+    }
+
+    private Map<String, Long> perEndpoint(ToLongFunction<EndpointStats> value) {
+        Map<String, Long> result = new TreeMap<>();
+        endpoints.forEach((endpoint, stats) -> result.put(endpoint, value.applyAsLong(stats)));
+        return result;
+    }
+
+    /**
+     * @return the number of API calls to all endpoints
+     */
+    public long getApiCallTotal() {
+        long total = 0;
+        for (EndpointStats stats : endpoints.values())
+            total += stats.latency.getCount();
+        return total;
+    }
+
+    /**
+     * @return the number of failed API calls to all endpoints
+     */
+    public long getApiFailureTotal() {
+        long total = 0;
+        for (EndpointStats stats : endpoints.values())
+            total += stats.failures.sum();
+        return total;
+    }
+}
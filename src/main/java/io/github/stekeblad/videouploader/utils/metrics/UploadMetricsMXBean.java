@@ -0,0 +1,73 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import java.util.Map;
+
+/**
+ * The upload statistics of the entire program as seen over JMX, for example in JConsole or VisualVM under
+ * io.github.stekeblad.videouploader:type=UploadMetrics. Durations are in milliseconds and sizes in bytes.
+ */
+public interface UploadMetricsMXBean {
+    long getTotalBytesUploaded();
+
+    /**
+     * @return the sum of the average speed of all uploads that is uploading right now
+     */
+    long getBytesPerSecond();
+
+    /**
+     * @return the estimated number of seconds until all queued and active uploads are uploaded, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    int getQueueDepth();
+
+    int getActiveUploads();
+
+    long getFinishedUploads();
+
+    /**
+     * @return the number of uploads in each phase right now
+     */
+    Map<String, Integer> getUploadsInPhase();
+
+    /**
+     * @return the total time all uploads has spent in each phase, including the uploads that is still in it
+     */
+    Map<String, Long> getPhaseTimeMillis();
+
+    long getChunkCount();
+
+    long getChunkLatencyMeanMillis();
+
+    long getChunkLatencyMedianMillis();
+
+    long getChunkLatencyP95Millis();
+
+    long getChunkLatencyMaxMillis();
+
+    Map<String, Long> getChunkLatencyBuckets();
+
+    /**
+     * @return the number of times AdaptiveChunkSizer made the chunks of a upload larger
+     */
+    long getChunkSizeIncreases();
+
+    /**
+     * @return the number of times AdaptiveChunkSizer made the chunks of a upload smaller
+     */
+    long getChunkSizeDecreases();
+
+    /**
+     * @return the number of requests sent to each endpoint, like "POST www.googleapis.com/upload/youtube/v3/videos"
+     */
+    Map<String, Long> getApiCallCounts();
+
+    /**
+     * @return the number of requests to each endpoint that failed with a network error or a error status code
+     */
+    Map<String, Long> getApiFailureCounts();
+
+    Map<String, Long> getApiLatencyMeanMillis();
+
+    Map<String, Long> getApiLatencyP95Millis();
+}
@@ -0,0 +1,17 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+/**
+ * A timed part of a upload or of applying a preset that is recorded as a Java Flight Recorder event when it ends.
+ * Get one from UploadFlightEvents, when no recording is running the span does nothing.
+ */
+public interface UploadSpan {
+    /**
+     * @param bytes the number of bytes sent during the span, added to what has been set before
+     */
+    void addBytesSent(long bytes);
+
+    /**
+     * Ends the span and records the event if a recording wants it. Calling it more than once does nothing.
+     */
+    void end();
+}
@@ -0,0 +1,127 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of one upload, created by UploadMetrics when the upload is queued. Updated from the thread that
+ * uploads the video and read from anywhere.
+ */
+public class UploadStats implements UploadStatsMXBean {
+    private final String videoFile;
+    private final long fileSize;
+    private volatile long bytesConfirmed = 0;
+    // The speed is measured from the first confirmed byte count after the upload started or was resumed
+    private volatile long rateStartBytes = -1;
+    private volatile long rateStartNanos = 0;
+    private volatile UploadMetrics.Phase phase = UploadMetrics.Phase.QUEUED;
+    private volatile long phaseStartNanos = System.nanoTime();
+    private volatile int chunkSize = 0;
+    private volatile long chunkBytesPerSecond = 0;
+
+    UploadStats(File videoFile) {
+        this.videoFile = videoFile.getAbsolutePath();
+        // Read once, the length is not looked at again while uploading
+        this.fileSize = videoFile.length();
+    }
+
+    /**
+     * @return the number of bytes that was not confirmed before
+     */
+    long bytesConfirmed(long bytes) {
+        if (rateStartBytes < 0) {
+            rateStartBytes = bytes;
+            rateStartNanos = System.nanoTime();
+            bytesConfirmed = bytes;
+            return 0;
+        }
+        long added = bytes - bytesConfirmed;
+        bytesConfirmed = bytes;
+        return Math.max(0, added);
+    }
+
+    /**
+     * @return the time spent in the previous phase in nanoseconds
+     */
+    long changePhase(UploadMetrics.Phase newPhase) {
+        long now = System.nanoTime();
+        long spent = now - phaseStartNanos;
+        if (newPhase == UploadMetrics.Phase.UPLOADING)
+            rateStartBytes = -1; // measure from the first confirmation, not from the previous attempt
+        phase = newPhase;
+        phaseStartNanos = now;
+        return spent;
+    }
+
+    void chunkSizeSelected(int chunkSize, long averageBytesPerSecond) {
+        this.chunkSize = chunkSize;
+        this.chunkBytesPerSecond = averageBytesPerSecond;
+    }
+
+    UploadMetrics.Phase phase() {
+        return phase;
+    }
+
+    long remainingBytes() {
+        return Math.max(0, fileSize - bytesConfirmed);
+    }
+
+    @Override
+    public String getVideoFile() {
+        return videoFile;
+    }
+
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public long getBytesConfirmed() {
+        return bytesConfirmed;
+    }
+
+    @Override
+    public double getProgress() {
+        return fileSize == 0 ? 0 : (double) bytesConfirmed / fileSize;
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        long startBytes = rateStartBytes;
+        if (phase != UploadMetrics.Phase.UPLOADING || startBytes < 0)
+            return 0;
+        long nanos = System.nanoTime() - rateStartNanos;
+        if (nanos <= 0)
+            return 0;
+        return (long) ((bytesConfirmed - startBytes) / (nanos / 1e9));
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        long bytesPerSecond = getBytesPerSecond();
+        if (bytesPerSecond <= 0)
+            return -1;
+        return remainingBytes() / bytesPerSecond;
+    }
+
+    @Override
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public long getChunkBytesPerSecond() {
+        return chunkBytesPerSecond;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase.name();
+    }
+
+    @Override
+    public long getTimeInPhaseMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos);
+    }
+}
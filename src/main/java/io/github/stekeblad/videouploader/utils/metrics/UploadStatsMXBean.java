@@ -0,0 +1,42 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+/**
+ * The statistics of one upload as seen over JMX, registered as io.github.stekeblad.videouploader:type=Upload,name=...
+ * from the upload is queued until it is finished, fails or is aborted.
+ */
+public interface UploadStatsMXBean {
+    String getVideoFile();
+
+    long getFileSize();
+
+    long getBytesConfirmed();
+
+    /**
+     * @return the part of the video file YouTube has confirmed it has received, 0.0 to 1.0
+     */
+    double getProgress();
+
+    /**
+     * @return the average speed since the upload of the video file started or was resumed, 0 if it has not started
+     */
+    long getBytesPerSecond();
+
+    /**
+     * @return the estimated number of seconds until the video file is uploaded, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * @return the size of the next chunk selected by AdaptiveChunkSizer, 0 if the upload has not started
+     */
+    int getChunkSize();
+
+    /**
+     * @return the average speed of the chunks that AdaptiveChunkSizer selected the chunk size from
+     */
+    long getChunkBytesPerSecond();
+
+    String getPhase();
+
+    long getTimeInPhaseMillis();
+}
@@ -0,0 +1,30 @@
+package io.github.stekeblad.videouploader.utils.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Only loaded when Java Flight Recorder is available, use UploadFlightEvents
+ */
+@Name("io.github.stekeblad.videouploader.UploadStep")
+@Label("Upload Step")
+@Description("A step of uploading a video, the duration is the time the step took")
+@Category({"Stekeblads Video Uploader", "Upload"})
+class UploadStepEvent extends jdk.jfr.Event {
+    @Label("Step")
+    String step;
+
+    @Label("Video File")
+    String videoFile;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+}
@@ -1,6 +1,7 @@
 package io.github.stekeblad.videouploader.windowControllers;
 
 import io.github.stekeblad.videouploader.jfxExtension.IWindowController;
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataCache;
 import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.MetaDataReader;
 import io.github.stekeblad.videouploader.utils.AlertUtils;
 import io.github.stekeblad.videouploader.utils.FileUtils;
@@ -82,7 +83,7 @@ public class MetaDataToolWindowController implements IWindowController {
         Task<Void> newTask = new Task<Void>() {
             @Override
             protected Void call() {
-                MetaDataReader metaDataReader = new MetaDataReader(file);
+                MetaDataReader metaDataReader = MetaDataCache.INSTANCE.get(file);
                 if (metaDataReader.isFileSupported()) {
                     Platform.runLater(() -> {
                         table_metadata.getItems().clear();
@@ -6,6 +6,7 @@ import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.utils.Constants;
 import io.github.stekeblad.videouploader.utils.FileUtils;
 import io.github.stekeblad.videouploader.utils.background.OpenInBrowser;
+import io.github.stekeblad.videouploader.utils.background.ThumbnailNormalizer;
 import io.github.stekeblad.videouploader.utils.state.ButtonProperties;
 import io.github.stekeblad.videouploader.utils.state.VideoPresetState;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
@@ -33,7 +34,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import static io.github.stekeblad.videouploader.utils.Constants.*;
-import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SIZE;
+import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.MAX_THUMB_SOURCE_SIZE;
 import static io.github.stekeblad.videouploader.youtube.VideoInformationBase.THUMBNAIL_FILE_FORMAT;
 
 
@@ -367,10 +368,11 @@ public class PresetsWindowController {
         videoPresets.get(selected).setOnThumbnailClicked(event -> {
             if (event.getButton() == MouseButton.SECONDARY)
                 return; // Conflicting with context menu, only do this on left click
-            File pickedThumbnail = FileUtils.pickThumbnail(THUMBNAIL_FILE_FORMAT, MAX_THUMB_SIZE);
+            File pickedThumbnail = FileUtils.pickThumbnail(THUMBNAIL_FILE_FORMAT, MAX_THUMB_SOURCE_SIZE);
             if(pickedThumbnail != null) {
                 try {
                     videoPresets.get(selected).setThumbNailFile(pickedThumbnail);
+                    ThumbnailNormalizer.INSTANCE.prepare(pickedThumbnail);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -0,0 +1,157 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+
+import java.util.function.Consumer;
+
+/**
+ * Picks the chunk size for a resumable upload from how fast the previous chunks was uploaded.
+ * <p>
+ * Every chunk costs at least one round-trip, on a fast link small chunks spends more time waiting for YouTube to
+ * confirm them than sending data. On a slow or unstable link a large chunk takes a long time to send again if the
+ * connection is lost. The chunk size is therefore selected so a chunk takes about TARGET_CHUNK_SECONDS to upload at
+ * the measured throughput. The size grows at most by a factor two per chunk and is halved directly if a chunk takes
+ * much longer than expected, the protocol requires it to be a multiple of 256 KiB.
+ * <p>
+ * Call chunkStarted() right before a chunk is sent and chunkConfirmed() when YouTube has confirmed it. With a
+ * MediaHttpUploader this is done from its progress listener. One instance should be used for a single upload
+ * and is not threadsafe.
+ */
+public class AdaptiveChunkSizer {
+    public static final int MIN_CHUNK_SIZE = MediaHttpUploader.MINIMUM_CHUNK_SIZE; // 256 KiB
+    public static final int MAX_CHUNK_SIZE = 512 * MediaHttpUploader.MINIMUM_CHUNK_SIZE; // 128 MiB
+    private static final double TARGET_CHUNK_SECONDS = 8;
+    private static final double SLOW_CHUNK_FACTOR = 2.5;
+    // How much the newest measurement affects the average throughput
+    private static final double THROUGHPUT_WEIGHT = 0.4;
+
+    private final Consumer<Decision> decisionListener;
+    private int chunkSize;
+    private double averageBytesPerSecond = 0;
+    private long chunkStartNanos = -1;
+    private long bytesAtChunkStart = 0;
+
+    /**
+     * @param initialChunkSize the size of the first chunk, it is rounded to a allowed size
+     * @param decisionListener called after every chunk with the measurement and the new chunk size, or null
+     */
+    public AdaptiveChunkSizer(int initialChunkSize, Consumer<Decision> decisionListener) {
+        this.chunkSize = clamp(initialChunkSize);
+        this.decisionListener = decisionListener;
+    }
+
+    /**
+     * @return the size to use for the next chunk, always a multiple of 256 KiB
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Starts the timing of a chunk
+     *
+     * @param bytesUploaded the number of bytes YouTube has confirmed before the chunk is sent
+     */
+    public void chunkStarted(long bytesUploaded) {
+        chunkStartNanos = System.nanoTime();
+        bytesAtChunkStart = bytesUploaded;
+    }
+
+    /**
+     * Measures the chunk started by the last call to chunkStarted(), selects the size of the next chunk and starts
+     * the timing of it.
+     *
+     * @param bytesUploaded the number of bytes YouTube has confirmed after the chunk was sent
+     * @return the size to use for the next chunk
+     */
+    public int chunkConfirmed(long bytesUploaded) {
+        long now = System.nanoTime();
+        long chunkBytes = bytesUploaded - bytesAtChunkStart;
+        if (chunkStartNanos < 0 || chunkBytes <= 0) {
+            chunkStarted(bytesUploaded);
+            return chunkSize;
+        }
+        long chunkNanos = Math.max(1, now - chunkStartNanos);
+        double seconds = chunkNanos / 1e9;
+        double bytesPerSecond = chunkBytes / seconds;
+        averageBytesPerSecond = averageBytesPerSecond == 0 ? bytesPerSecond :
+                THROUGHPUT_WEIGHT * bytesPerSecond + (1 - THROUGHPUT_WEIGHT) * averageBytesPerSecond;
+
+        int oldChunkSize = chunkSize;
+        long wanted = (long) (averageBytesPerSecond * TARGET_CHUNK_SECONDS);
+        if (seconds > TARGET_CHUNK_SECONDS * SLOW_CHUNK_FACTOR) {
+            // Much slower than expected, the link may be unstable and resending a large chunk is expensive
+            wanted = Math.min(wanted, oldChunkSize / 2);
+        } else {
+            wanted = Math.min(wanted, (long) oldChunkSize * 2);
+        }
+        chunkSize = clamp(wanted);
+
+        if (decisionListener != null)
+            decisionListener.accept(new Decision(chunkBytes, chunkNanos, averageBytesPerSecond, oldChunkSize, chunkSize));
+        chunkStarted(bytesUploaded);
+        return chunkSize;
+    }
+
+    /**
+     * @return size rounded down to a multiple of 256 KiB and moved inside MIN_CHUNK_SIZE to MAX_CHUNK_SIZE
+     */
+    private static int clamp(long size) {
+        long rounded = size - size % MIN_CHUNK_SIZE;
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(rounded, MAX_CHUNK_SIZE));
+    }
+
+    /**
+     * A measured chunk and the chunk size that was selected after it
+     */
+    public static class Decision {
+        private final long chunkBytes;
+        private final long chunkNanos;
+        private final double averageBytesPerSecond;
+        private final int oldChunkSize;
+        private final int newChunkSize;
+
+        Decision(long chunkBytes, long chunkNanos, double averageBytesPerSecond, int oldChunkSize, int newChunkSize) {
+            this.chunkBytes = chunkBytes;
+            this.chunkNanos = chunkNanos;
+            this.averageBytesPerSecond = averageBytesPerSecond;
+            this.oldChunkSize = oldChunkSize;
+            this.newChunkSize = newChunkSize;
+        }
+
+        /**
+         * @return the number of bytes YouTube confirmed for the measured chunk
+         */
+        public long getChunkBytes() {
+            return chunkBytes;
+        }
+
+        /**
+         * @return the time from the chunk was started until it was confirmed, in nanoseconds
+         */
+        public long getChunkNanos() {
+            return chunkNanos;
+        }
+
+        /**
+         * @return the weighted average throughput including the measured chunk
+         */
+        public double getAverageBytesPerSecond() {
+            return averageBytesPerSecond;
+        }
+
+        public int getOldChunkSize() {
+            return oldChunkSize;
+        }
+
+        public int getNewChunkSize() {
+            return newChunkSize;
+        }
+
+        public String toString() {
+            return String.format("chunk of %d KiB in %d ms, average %.2f MiB/s, chunk size %d KiB -> %d KiB",
+                    chunkBytes / 1024, chunkNanos / 1_000_000, averageBytesPerSecond / (1024 * 1024),
+                    oldChunkSize / 1024, newChunkSize / 1024);
+        }
+    }
+}
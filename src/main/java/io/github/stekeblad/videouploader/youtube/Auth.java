@@ -6,8 +6,8 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
@@ -15,6 +15,7 @@ import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.YouTubeScopes;
 import com.google.api.services.youtube.model.Channel;
 import com.google.api.services.youtube.model.ChannelListResponse;
+import io.github.stekeblad.videouploader.utils.OkHttpTransport;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -22,34 +23,174 @@ import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static io.github.stekeblad.videouploader.utils.Constants.AUTH_DIR;
 
 /**
  * Contains the logic of getting permission to access the user's YouTube account.
+ * <p>
+ * The credential and a YouTube object using it are created the first time they are needed and then shared by the
+ * entire program. A background thread refreshes the access token a few minutes before it expires so requests
+ * never has to wait for a refresh. All methods are threadsafe.
  */
 public class Auth {
 
-    public static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+    // Shares connections with HttpOperations, see OkHttpTransport
+    public static final HttpTransport HTTP_TRANSPORT = new OkHttpTransport();
     public static final JsonFactory JSON_FACTORY = new GsonFactory();
 
+    private static final String APPLICATION_NAME = "Stekeblads Video Uploader";
+    // Refresh the access token when it has less than this many seconds left
+    private static final long REFRESH_MARGIN_SECONDS = 5 * 60;
+    // How often to check the expiration time if it is not known or a refresh failed
+    private static final long RECHECK_SECONDS = 60;
+
+    private static GoogleAuthorizationCodeFlow authFlow = null;
+    // Volatile so requests can read it without waiting for a authorization that is in progress
+    private static volatile Credential credential = null;
+    private static YouTube youTube = null;
+    private static ScheduledExecutorService tokenRefresher = null;
+    private static ScheduledFuture<?> scheduledRefresh = null;
+
+    /**
+     * Returns the credential for the user's YouTube account, if the user has not given the program permission yet the
+     * web browser is opened to ask for it. The credential is only loaded once, following calls returns the same object.
+     * <p>
+     * Synchronized as several upload slots may ask for the credentials at the same time and only one of them can
+     * open the local server needed if the user has to grant permission in the browser. When the credential is loaded
+     * it is returned without locking.
+     */
     public static Credential authUser() throws IOException {
-        List<String> scope = new ArrayList<>();
-        scope.add(YouTubeScopes.YOUTUBE_UPLOAD);
-        scope.add(YouTubeScopes.YOUTUBE);
+        Credential loaded = credential;
+        if (loaded != null)
+            return loaded;
+        synchronized (Auth.class) {
+            if (credential == null)
+                credential = loadCredential();
+            return credential;
+        }
+    }
+
+    /**
+     * Loads the stored credential or asks the user for permission in the web browser, call it with the lock held
+     */
+    private static Credential loadCredential() throws IOException {
+        if (authFlow == null) {
+            List<String> scope = new ArrayList<>();
+            scope.add(YouTubeScopes.YOUTUBE_UPLOAD);
+            scope.add(YouTubeScopes.YOUTUBE);
 
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, getSecRead());
-        FileDataStoreFactory fileFactory = new FileDataStoreFactory(new File(AUTH_DIR));
+            GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, getSecRead());
+            FileDataStoreFactory fileFactory = new FileDataStoreFactory(new File(AUTH_DIR));
 
-        GoogleAuthorizationCodeFlow authFlow = new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scope).setDataStoreFactory(fileFactory)
-                .build();
+            authFlow = new GoogleAuthorizationCodeFlow.Builder(
+                    HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scope).setDataStoreFactory(fileFactory)
+                    .build();
+        }
 
         LocalServerReceiver localReceiver = new LocalServerReceiver.Builder().setPort(7835).build();
-        return new AuthorizationCodeInstalledApp(authFlow, localReceiver).authorize("user");
+        Credential authorized = new AuthorizationCodeInstalledApp(authFlow, localReceiver).authorize("user");
+        scheduleTokenRefresh(authorized, 0);
+        return authorized;
+    }
+
+    /**
+     * @return a YouTube object that authorizes all requests with the credential from authUser()
+     * @throws IOException if the user could not be authenticated
+     */
+    public static synchronized YouTube getYouTube() throws IOException {
+        // Authenticate now so it does not happen in the middle of the first request
+        authUser();
+        if (youTube == null) {
+            youTube = new YouTube.Builder(HTTP_TRANSPORT, JSON_FACTORY, request -> {
+                initializeRequest(request);
+                QuotaLedger.INSTANCE.track(request);
+            })
+                    .setYouTubeRequestInitializer(new PartialResponseInitializer())
+                    .setApplicationName(APPLICATION_NAME).build();
+        }
+        return youTube;
+    }
+
+    /**
+     * Adds the user's credential to a request. Use it in the HttpRequestInitializer of YouTube objects that is not
+     * created by getYouTube(), the requests uses the new credential after clearCachedCredential() and authUser() has
+     * been called. Called for every request, including every chunk of a upload, so it never locks or asks the user
+     * for permission.
+     *
+     * @param request a request that is being initialized
+     * @throws IOException if there is no loaded credential, call authUser() before sending the request
+     */
+    public static void initializeRequest(HttpRequest request) throws IOException {
+        Credential loaded = credential;
+        if (loaded == null)
+            throw new IOException("Not signed in to YouTube, the permission has been revoked or the stored " +
+                    "credential was invalid");
+        loaded.initialize(request);
+    }
+
+    /**
+     * Forgets the loaded credential, call it if the access to the channel has been revoked or the stored token is
+     * invalid. The next call to authUser() loads it again or asks the user for permission.
+     */
+    public static synchronized void clearCachedCredential() {
+        credential = null;
+        authFlow = null;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Schedules a check of the access token, when it is about to expire it is refreshed and a new check is scheduled.
+     *
+     * @param toRefresh    the credential to refresh
+     * @param delaySeconds seconds until the check
+     */
+    private static synchronized void scheduleTokenRefresh(Credential toRefresh, long delaySeconds) {
+        if (tokenRefresher == null) {
+            tokenRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Token refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (scheduledRefresh != null)
+            scheduledRefresh.cancel(false);
+        scheduledRefresh = tokenRefresher.schedule(() -> refreshIfExpiring(toRefresh), delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private static void refreshIfExpiring(Credential toRefresh) {
+        long nextCheck = RECHECK_SECONDS;
+        try {
+            Long expiresIn = toRefresh.getExpiresInSeconds();
+            if (expiresIn == null || expiresIn <= REFRESH_MARGIN_SECONDS) {
+                if (toRefresh.refreshToken())
+                    expiresIn = toRefresh.getExpiresInSeconds();
+            }
+            if (expiresIn != null)
+                nextCheck = Math.max(RECHECK_SECONDS, expiresIn - REFRESH_MARGIN_SECONDS);
+        } catch (TokenResponseException e) {
+            // The token has been expired or revoked, refreshing will not help. The error shows up on the next request
+            System.err.println("The access token could not be refreshed: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            // Probably a network error, try again soon
+            System.err.println("Failed to refresh the access token in the background");
+            e.printStackTrace();
+        }
+        synchronized (Auth.class) {
+            // do not schedule more checks for a credential that has been cleared
+            if (toRefresh == credential)
+                scheduleTokenRefresh(toRefresh, nextCheck);
+        }
     }
 
     /**
@@ -65,10 +206,8 @@ public class Auth {
      */
     public static String getChannelName() {
         try {
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Video Uploader").build();
-            YouTube.Channels.List myChannel = youtube.channels().list(Collections.singletonList("snippet"));
+            YouTube youtube = getYouTube();
+            YouTube.Channels.List myChannel = youtube.channels().list(PartialResponseInitializer.CHANNEL_LIST_PARTS);
             myChannel.setMine(true);
             ChannelListResponse channelListResponse = myChannel.execute();
             List<Channel> channelList = channelListResponse.getItems();
@@ -77,6 +216,7 @@ public class Auth {
             // This can occur if the "Token has been expired or revoked." (quoting an error message)
             // Delete the token and on next attempt try authenticate again.
             // Thrown from Channels.List.execute() and not from Auth.authUser()
+            clearCachedCredential();
             try {
                 if (Files.deleteIfExists(Paths.get(AUTH_DIR, "StoredCredential")))
                     System.err.println("deleted invalid token");
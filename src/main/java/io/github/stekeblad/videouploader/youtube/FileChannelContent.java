@@ -0,0 +1,206 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Media content for uploading a file, or a part of a file, that is read directly from a FileChannel.
+ * <p>
+ * Unlike InputStreamContent the length is always known, so MediaHttpUploader can send the total size with every chunk
+ * and calculate the progress by itself. The streams returned by getInputStream() supports mark() and reset() by
+ * remembering a position in the file, MediaHttpUploader therefore does not need to wrap them in a BufferedInputStream
+ * that keeps a copy of the current chunk on the heap in case it needs to be sent again. All reads are positional reads
+ * through a direct buffer and writeTo() uses FileChannel.transferTo() so the file content is never copied to the heap
+ * when it can be avoided.
+ * <p>
+ * The content owns the file channel and it must be closed when the upload is done. Slices created with slice() share
+ * the channel of the content they was created from and closing them does nothing. This class is not threadsafe.
+ */
+public class FileChannelContent extends AbstractInputStreamContent implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long length;
+    private final boolean ownsChannel;
+    private ByteBuffer readBuffer;
+
+    /**
+     * Opens file for reading. The content covers the entire file as it was when it was opened.
+     *
+     * @param type Content type or null for none
+     * @param file the file to upload
+     * @throws IOException if the file could not be opened
+     */
+    public FileChannelContent(String type, File file) throws IOException {
+        this(type, FileChannel.open(file.toPath(), StandardOpenOption.READ), 0, -1, true, null);
+    }
+
+    private FileChannelContent(String type, FileChannel channel, long start, long length, boolean ownsChannel,
+                               ByteBuffer readBuffer) throws IOException {
+        super(type);
+        this.channel = channel;
+        this.start = start;
+        this.length = length < 0 ? channel.size() - start : length;
+        this.ownsChannel = ownsChannel;
+        this.readBuffer = readBuffer;
+        // The streams never holds any resources, closing them after every request is always safe
+        setCloseInputStream(true);
+    }
+
+    /**
+     * Creates a content for a part of this content, for example a single chunk when continuing a resumable upload.
+     *
+     * @param offset the first byte of the slice, relative to the start of this content
+     * @param sliceLength the number of bytes in the slice
+     * @return a content that shares the file channel with this content
+     * @throws IOException if the size of the file could not be read
+     * @throws IllegalArgumentException if the slice is not inside this content
+     */
+    public FileChannelContent slice(long offset, long sliceLength) throws IOException {
+        if (offset < 0 || sliceLength < 0 || offset + sliceLength > length)
+            throw new IllegalArgumentException("Slice " + offset + "+" + sliceLength + " is outside the content of " +
+                    "length " + length);
+        return new FileChannelContent(getType(), channel, start + offset, sliceLength, false, getReadBuffer());
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return true, the content can be read again from the start as many times as needed
+     */
+    @Override
+    public boolean retrySupported() {
+        return true;
+    }
+
+    /**
+     * @return a new stream that starts at the beginning of this content, it supports mark, reset and cheap skips.
+     */
+    @Override
+    public InputStream getInputStream() {
+        return new ChannelInputStream();
+    }
+
+    /**
+     * Writes the content to out, letting the operating system move the bytes when out is backed by a channel
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0)
+                throw new EOFException("The file ended " + (end - position) + " bytes too early, has it been modified?");
+            position += transferred;
+        }
+        out.flush();
+    }
+
+    /**
+     * Closes the file channel if this content opened it, closing a slice does nothing
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel)
+            channel.close();
+    }
+
+    @Override
+    public FileChannelContent setType(String type) {
+        return (FileChannelContent) super.setType(type);
+    }
+
+    @Override
+    public FileChannelContent setCloseInputStream(boolean closeInputStream) {
+        return (FileChannelContent) super.setCloseInputStream(closeInputStream);
+    }
+
+    private ByteBuffer getReadBuffer() {
+        if (readBuffer == null)
+            readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        return readBuffer;
+    }
+
+    /**
+     * A stream over the content that only keeps track of a position, all reads are made at that position directly
+     * from the channel
+     */
+    private class ChannelInputStream extends InputStream {
+        private final long end = start + length;
+        private long position = start;
+        private long markedPosition = start;
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (position >= end)
+                return -1;
+            ByteBuffer buffer = getReadBuffer();
+            buffer.clear();
+            buffer.limit((int) Math.min(Math.min(len, buffer.capacity()), end - position));
+            int read = channel.read(buffer, position);
+            if (read == -1)
+                throw new EOFException("The file ended " + (end - position) + " bytes too early, has it been modified?");
+            buffer.flip();
+            buffer.get(b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        /**
+         * @param readLimit ignored, any number of bytes can be read before reset() is called
+         */
+        @Override
+        public void mark(int readLimit) {
+            markedPosition = position;
+        }
+
+        @Override
+        public void reset() {
+            position = markedPosition;
+        }
+
+        /**
+         * Does nothing, the channel is closed with the content
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.YouTubeRequest;
+import com.google.api.services.youtube.YouTubeRequestInitializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes every request to the YouTube API transfer as little as possible. Set it on all YouTube objects with
+ * YouTube.Builder.setYouTubeRequestInitializer().
+ * <p>
+ * The part lists below are the smallest ones that includes everything the program sends and reads, use them when
+ * creating requests. For each type of request the program sends a fields mask is added that removes everything from
+ * the response the program does not read, and the request and response bodies are gzip compressed. Requests of other
+ * types get the full response, remember to add a mask here when a new type of request is used and to update the
+ * mask when the code starts to read more of a response.
+ */
+public class PartialResponseInitializer extends YouTubeRequestInitializer {
+    // The parts that are written, a new video does not have any statistics worth requesting
+    public static final List<String> VIDEO_INSERT_PARTS = Collections.unmodifiableList(Arrays.asList("snippet", "status"));
+    public static final List<String> PLAYLIST_ITEM_INSERT_PARTS = Collections.singletonList("snippet");
+    public static final List<String> PLAYLIST_INSERT_PARTS = Collections.unmodifiableList(Arrays.asList("snippet", "status"));
+    // Parts that are read, the id is always included
+    public static final List<String> PLAYLIST_LIST_PARTS = Collections.singletonList("snippet");
+    public static final List<String> CHANNEL_LIST_PARTS = Collections.singletonList("snippet");
+    public static final List<String> CATEGORY_LIST_PARTS = Collections.singletonList("snippet");
+
+    private static final Map<Class<?>, String> FIELDS = new HashMap<>();
+
+    static {
+        // Only the id of the new video is used, for the thumbnail, the playlist and the link
+        FIELDS.put(YouTube.Videos.Insert.class, "id");
+        // The responses to these are not used at all
+        FIELDS.put(YouTube.Thumbnails.Set.class, "kind");
+        FIELDS.put(YouTube.PlaylistItems.Insert.class, "id");
+        // The rest only read the titles and ids
+        FIELDS.put(YouTube.Playlists.List.class, "nextPageToken,items(id,snippet/title)");
+        FIELDS.put(YouTube.Playlists.Insert.class, "id,snippet/title");
+        FIELDS.put(YouTube.Channels.List.class, "items/snippet/title");
+        FIELDS.put(YouTube.VideoCategories.List.class, "items(id,snippet(title,assignable))");
+    }
+
+    @Override
+    protected void initializeYouTubeRequest(YouTubeRequest<?> request) {
+        request.setDisableGZipContent(false);
+        request.getRequestHeaders().setAcceptEncoding("gzip");
+        // Runs when the request is created, a caller that needs more can still call setFields() before executing it
+        request.setFields(FIELDS.get(request.getClass()));
+    }
+}
@@ -0,0 +1,321 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpMethods;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Enum-Singleton class that keeps track of how much of the daily YouTube API quota the program has used. The quota is
+ * reset at midnight Pacific Time and the used units are saved to disc so they are remembered if the program is
+ * restarted during the day. Initialize ConfigManager with the configManager() method before using this class.
+ * <p>
+ * Every successful response from the API is recorded with the cost of its type of call, use track() on all requests.
+ * Failed calls, including the failed attempts of a call that is retried, are not recorded. Uploads reserve the units
+ * they are expected to use before they start and are held back until the quota is reset if they would not fit in what
+ * is left of the daily quota. The recorded calls are saved a few seconds after they are made, together with the other
+ * calls made during that time, call flush() before the program exits. All methods are threadsafe.
+ * <p>
+ * The costs are from https://developers.google.com/youtube/v3/determine_quota_cost
+ */
+public enum QuotaLedger {
+    INSTANCE;
+
+    public static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+    // Wake up waiting uploads at least this often in case the computer has been sleeping
+    private static final long MAX_WAIT_MILLIS = 60 * 1000;
+    private static final long SAVE_DELAY_SECONDS = 5;
+
+    /**
+     * The types of calls the program makes and how many quota units they cost
+     */
+    public enum Call {
+        VIDEO_INSERT(1600),
+        THUMBNAIL_SET(50),
+        PLAYLIST_ITEM_INSERT(50),
+        PLAYLIST_INSERT(50),
+        LIST(1);
+
+        private final long cost;
+
+        Call(long cost) {
+            this.cost = cost;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+    }
+
+    private final ConfigManager configManager = ConfigManager.INSTANCE;
+    private final EnumMap<Call, Long> used = new EnumMap<>(Call.class);
+    private final ThreadLocal<Long> threadReservation = ThreadLocal.withInitial(() -> 0L);
+    private LocalDate quotaDay = null;
+    // Set when YouTube says the quota is used up even if the ledger does not think so
+    private boolean exhausted = false;
+    private long reserved = 0;
+    private boolean saveScheduled = false;
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Quota ledger writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Makes the ledger record the cost of the response to the request. Replaces the response interceptor of the
+     * request, so call it before setting any interceptor that calls the previous one.
+     *
+     * @param request a request that is being initialized
+     */
+    public void track(HttpRequest request) {
+        request.setResponseInterceptor(this::responseReceived);
+    }
+
+    private void responseReceived(HttpResponse response) {
+        // Only successful calls is counted, a call that is retried after a error is counted once when it succeeds
+        if (!response.isSuccessStatusCode())
+            return;
+        HttpRequest request = response.getRequest();
+        Call call = classify(request.getRequestMethod(), request.getUrl());
+        if (call != null)
+            record(call);
+    }
+
+    /**
+     * @return the type of call a request to url is, or null if it does not cost anything, like upload chunks
+     */
+    static Call classify(String method, GenericUrl url) {
+        String path = url.getRawPath();
+        if (method.equals(HttpMethods.GET))
+            return Call.LIST;
+        if (!method.equals(HttpMethods.POST) || path == null)
+            return null;
+        // The upload chunks are sent with PUT to the same path as the insert
+        if (path.endsWith("/youtube/v3/videos"))
+            return Call.VIDEO_INSERT;
+        if (path.endsWith("/youtube/v3/thumbnails/set"))
+            return Call.THUMBNAIL_SET;
+        if (path.endsWith("/youtube/v3/playlistItems"))
+            return Call.PLAYLIST_ITEM_INSERT;
+        if (path.endsWith("/youtube/v3/playlists"))
+            return Call.PLAYLIST_INSERT;
+        return null;
+    }
+
+    /**
+     * Adds the cost of a call to the used quota. If the calling thread has reserved quota the cost is taken from the
+     * reservation.
+     *
+     * @param call the type of call that has been made
+     */
+    public synchronized void record(Call call) {
+        rollOver();
+        used.merge(call, call.getCost(), Long::sum);
+        long reservation = threadReservation.get();
+        long fromReservation = Math.min(reservation, call.getCost());
+        threadReservation.set(reservation - fromReservation);
+        reserved -= fromReservation;
+        if (!saveScheduled) {
+            saveScheduled = true;
+            saver.schedule(this::flush, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Saves the recorded calls that has not been saved yet
+     */
+    public synchronized void flush() {
+        saveScheduled = false;
+        if (quotaDay != null)
+            save();
+    }
+
+    /**
+     * Blocks until the given number of units fits in what is left of the daily quota and then reserves them for the
+     * calling thread. Units the thread has reserved already counts, only the missing units are reserved. The
+     * reservation is used up by the calls the thread makes and the rest is returned by releaseReservation().
+     *
+     * @param units  the number of units that is expected to be used
+     * @param onHold called once with the time the quota is reset if the thread has to wait for it
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void awaitReservation(long units, Consumer<Instant> onHold) throws InterruptedException {
+        long missing = units - threadReservation.get();
+        if (missing <= 0)
+            return;
+        // Something that costs more than the entire quota is allowed to use all of it
+        long needed = Math.min(missing, configManager.getDailyQuota());
+        boolean holdReported = false;
+        while (true) {
+            rollOver();
+            if (getRemaining() >= needed) {
+                reserved += missing;
+                threadReservation.set(threadReservation.get() + missing);
+                return;
+            }
+            Instant resetTime = getResetTime();
+            if (!holdReported && onHold != null) {
+                onHold.accept(resetTime);
+                holdReported = true;
+            }
+            long waitMillis = Math.max(1, resetTime.toEpochMilli() - System.currentTimeMillis());
+            wait(Math.min(waitMillis, MAX_WAIT_MILLIS));
+        }
+    }
+
+    /**
+     * Returns the part of the calling thread's reservation that was not used
+     */
+    public synchronized void releaseReservation() {
+        reserved -= threadReservation.get();
+        threadReservation.remove();
+        notifyAll();
+    }
+
+    /**
+     * Takes the calling thread's reservation away from it without returning it, so another thread can continue to
+     * use it. Give it to the other thread with attachReservation() or return it with releaseDetached().
+     *
+     * @return the number of units the thread had reserved
+     */
+    public synchronized long detachReservation() {
+        long units = threadReservation.get();
+        threadReservation.remove();
+        return units;
+    }
+
+    /**
+     * Adds units detached from another thread with detachReservation() to the calling thread's reservation
+     *
+     * @param units the number of detached units
+     */
+    public synchronized void attachReservation(long units) {
+        threadReservation.set(threadReservation.get() + units);
+    }
+
+    /**
+     * Returns units detached with detachReservation() that no thread is going to use
+     *
+     * @param units the number of detached units
+     */
+    public synchronized void releaseDetached(long units) {
+        reserved -= units;
+        notifyAll();
+    }
+
+    /**
+     * Call it when YouTube responds with quotaExceeded, all reservations are held back until the quota is reset.
+     * That can happen before the ledger thinks the quota is used up if other programs shares the same quota.
+     */
+    public synchronized void markExhausted() {
+        rollOver();
+        exhausted = true;
+        save();
+    }
+
+    /**
+     * Forgets that YouTube said the quota is used up and wakes up the waiting reservations, as if the quota had been
+     * reset. Used by the load test to not have to wait until midnight.
+     */
+    public synchronized void clearExhausted() {
+        rollOver();
+        exhausted = false;
+        save();
+        notifyAll();
+    }
+
+    /**
+     * @return the number of units that is not used or reserved today
+     */
+    public synchronized long getRemaining() {
+        rollOver();
+        if (exhausted)
+            return 0;
+        return Math.max(0, configManager.getDailyQuota() - getUsed() - reserved);
+    }
+
+    /**
+     * @return the number of units used today
+     */
+    public synchronized long getUsed() {
+        rollOver();
+        return used.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @param call a type of call
+     * @return the number of units used by calls of the given type today
+     */
+    public synchronized long getUsed(Call call) {
+        rollOver();
+        return used.getOrDefault(call, 0L);
+    }
+
+    /**
+     * @return the time the daily quota is reset next time
+     */
+    public synchronized Instant getResetTime() {
+        rollOver();
+        return quotaDay.plusDays(1).atStartOfDay(QUOTA_ZONE).toInstant();
+    }
+
+    /**
+     * Loads the ledger the first time it is used and starts over when a new day has started in the Pacific timezone
+     */
+    private void rollOver() {
+        if (quotaDay == null)
+            load();
+        LocalDate today = LocalDate.now(QUOTA_ZONE);
+        if (!today.equals(quotaDay)) {
+            quotaDay = today;
+            used.clear();
+            exhausted = false;
+            save();
+            notifyAll();
+        }
+    }
+
+    private void save() {
+        StringBuilder saveString = new StringBuilder();
+        saveString.append("day:").append(quotaDay).append("\n");
+        saveString.append("exhausted:").append(exhausted);
+        used.forEach((call, units) -> saveString.append("\n").append(call.name()).append(":").append(units));
+        configManager.saveQuotaLedger(saveString.toString());
+    }
+
+    private void load() {
+        ArrayList<String> lines = configManager.loadQuotaLedger();
+        if (lines == null)
+            return;
+        for (String line : lines) {
+            int colonIndex = line.indexOf(':');
+            if (colonIndex == -1)
+                continue;
+            String key = line.substring(0, colonIndex);
+            String value = line.substring(colonIndex + 1);
+            try {
+                if (key.equals("day")) {
+                    quotaDay = LocalDate.parse(value);
+                } else if (key.equals("exhausted")) {
+                    exhausted = Boolean.parseBoolean(value);
+                } else {
+                    used.put(Call.valueOf(key), Long.parseLong(value));
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                System.err.println("Ignoring invalid line in the quota ledger: " + line);
+            }
+        }
+    }
+}
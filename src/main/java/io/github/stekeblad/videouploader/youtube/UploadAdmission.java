@@ -0,0 +1,36 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a queued upload is allowed to start. Normally uploads starts as soon as a upload slot is free, but
+ * after a upload has failed all uploads that are about to start waits for a short moment. Many errors, like a reached
+ * daily limit or a expired authorization, makes every following upload fail the same way and the pause gives the
+ * user, or the error handler in the UI, a chance to abort the waiting uploads before they also fail.
+ * This class is threadsafe.
+ */
+class UploadAdmission {
+    static final long CANCEL_WINDOW_MILLIS = 2000;
+
+    private long holdUntilNanos = System.nanoTime();
+
+    /**
+     * Blocks until uploads are allowed to start, returns directly if no upload has failed recently
+     *
+     * @throws InterruptedException if the waiting upload is aborted
+     */
+    synchronized void awaitAdmission() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = holdUntilNanos - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Called when a upload has failed, uploads that starts during the next CANCEL_WINDOW_MILLIS will wait until it
+     * has passed
+     */
+    synchronized void uploadFailed() {
+        holdUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CANCEL_WINDOW_MILLIS);
+    }
+}
@@ -0,0 +1,307 @@
+package io.github.stekeblad.videouploader.youtube;
+
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.HashUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores what is needed to continue a started upload after the program has been closed or crashed: the URL of the
+ * resumable upload session YouTube gave us, how many bytes YouTube has confirmed it received and the VideoUpload itself.
+ * The session is saved to disc when the upload is initiated, the progress is saved by a background thread at most
+ * every PROGRESS_SAVE_INTERVAL and the session is removed when the video is uploaded or aborted. The saved progress
+ * only needs to be close, YouTube is asked how much it has received before a upload is resumed.
+ */
+public class UploadSession {
+    private static final String KEY_SESSION_URI = "_sessionUri";
+    private static final String KEY_BYTES_UPLOADED = "_sessionBytesUploaded";
+    private static final String KEY_FILE_SIZE = "_sessionFileSize";
+    private static final String KEY_FILE_MODIFIED = "_sessionFileModified";
+    private static final String KEY_CREATED = "_sessionCreated";
+    private static final String KEY_METADATA = "_sessionMetadata";
+    private static final String KEY_VIDEO_FILE = "_videofile"; // written by VideoUpload
+
+    // YouTube forgets resumable upload sessions after about a week
+    private static final long SESSION_LIFETIME = TimeUnit.DAYS.toMillis(6);
+    private static final long PROGRESS_SAVE_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    // Held while a session file is written or deleted, so a progress save that was waiting for the background thread
+    // never brings back a session that has been saved again or discarded after it
+    private static final Object FILE_LOCK = new Object();
+    // The newest progress of the sessions waiting to be written by the background thread, guarded by FILE_LOCK
+    private static final Map<String, String> pendingSaves = new HashMap<>();
+    private static final ExecutorService progressWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Upload session writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String uploadString;
+    private final File videoFile;
+    private final String sessionUri;
+    private final long fileSize;
+    private final long fileModified;
+    private final long created;
+    private final String metadata;
+    private volatile long bytesUploaded;
+    // Only used by the thread that uploads the video
+    private long lastProgressSave = 0;
+
+    /**
+     * Creates a session for a upload that just got its session URI from YouTube
+     *
+     * @param video      the video being uploaded
+     * @param sessionUri the URI returned by YouTube in the Location header when the upload was initiated
+     */
+    public UploadSession(VideoUpload video, String sessionUri) {
+        this.uploadString = video.toString();
+        this.videoFile = video.getVideoFile();
+        this.sessionUri = sessionUri;
+        this.fileSize = video.getVideoFile().length();
+        this.fileModified = video.getVideoFile().lastModified();
+        this.created = System.currentTimeMillis();
+        this.metadata = metadataHash(video);
+        this.bytesUploaded = 0;
+    }
+
+    /**
+     * Reconstructs a UploadSession from its string version created by calling toString()
+     *
+     * @param fromString The string representation of a UploadSession
+     * @throws Exception If the string could not be converted to a UploadSession
+     */
+    public UploadSession(String fromString) throws Exception {
+        String sessionUri = null;
+        String videoPath = null;
+        String metadata = null;
+        long bytesUploaded = -1, fileSize = -1, fileModified = -1, created = -1;
+        StringBuilder upload = new StringBuilder();
+        for (String line : fromString.split("\n")) {
+            int colonIndex = line.indexOf(':');
+            String key = colonIndex > 0 ? line.substring(0, colonIndex) : "";
+            // the video file line is also needed when recreating the VideoUpload, it is added to it below
+            if (key.equals(KEY_VIDEO_FILE))
+                videoPath = line.substring(colonIndex + 1);
+            switch (key) {
+                case KEY_SESSION_URI:
+                    sessionUri = line.substring(colonIndex + 1);
+                    break;
+                case KEY_BYTES_UPLOADED:
+                    bytesUploaded = Long.parseLong(line.substring(colonIndex + 1));
+                    break;
+                case KEY_FILE_SIZE:
+                    fileSize = Long.parseLong(line.substring(colonIndex + 1));
+                    break;
+                case KEY_FILE_MODIFIED:
+                    fileModified = Long.parseLong(line.substring(colonIndex + 1));
+                    break;
+                case KEY_CREATED:
+                    created = Long.parseLong(line.substring(colonIndex + 1));
+                    break;
+                case KEY_METADATA:
+                    metadata = line.substring(colonIndex + 1);
+                    break;
+                default:
+                    // belongs to the VideoUpload
+                    if (upload.length() > 0)
+                        upload.append("\n");
+                    upload.append(line);
+            }
+        }
+        if (sessionUri == null || videoPath == null || metadata == null || bytesUploaded < 0 || fileSize < 0 || fileModified < 0 || created < 0)
+            throw new Exception("Malformed string representation of class. Input: \n\"" + fromString + "\"");
+
+        this.uploadString = upload.toString();
+        this.videoFile = new File(videoPath);
+        this.sessionUri = sessionUri;
+        this.bytesUploaded = bytesUploaded;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+        this.created = created;
+        this.metadata = metadata;
+    }
+
+    public File getVideoFile() {
+        return videoFile;
+    }
+
+    public String getSessionUri() {
+        return sessionUri;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public void setBytesUploaded(long bytesUploaded) {
+        this.bytesUploaded = bytesUploaded;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return true if YouTube most likely has forgotten about the session
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() - created > SESSION_LIFETIME;
+    }
+
+    /**
+     * @return true if the video file is the same size and has the same modification time as when the session was created
+     */
+    public boolean isUnchanged() {
+        return videoFile.length() == fileSize && videoFile.lastModified() == fileModified;
+    }
+
+    /**
+     * The title, description and other details was sent to YouTube when the session was created and can not be changed
+     * by resuming it. Thumbnail and playlist are set after the upload and does not matter.
+     *
+     * @param video a VideoUpload for the same video file
+     * @return true if video has the same details as the video this session was created for
+     */
+    public boolean hasSameDetails(VideoUpload video) {
+        return metadata.equals(metadataHash(video));
+    }
+
+    private static String metadataHash(VideoUpload video) {
+        String details = video.getVideoName() + "\n" + video.getVideoDescription() + "\n" +
+                video.getVisibility().getStatusName() + "\n" + video.getVideoTags() + "\n" + video.getCategory() + "\n" +
+                video.isTellSubs() + "\n" + video.isMadeForKids();
+        return HashUtils.sha256(details);
+    }
+
+    /**
+     * Recreates the VideoUpload this session belongs to
+     *
+     * @param paneId A string used for naming all UI elements
+     * @return the VideoUpload that was being uploaded
+     * @throws Exception If the saved VideoUpload could not be read
+     */
+    public VideoUpload toVideoUpload(String paneId) throws Exception {
+        return new VideoUpload(uploadString, paneId);
+    }
+
+    /**
+     * Writes the session to disc, replacing any earlier session for the same video file
+     */
+    public void save() {
+        String fileName = sessionFileName(videoFile);
+        synchronized (FILE_LOCK) {
+            pendingSaves.remove(fileName);
+            ConfigManager.INSTANCE.saveUploadSession(fileName, toString());
+        }
+    }
+
+    /**
+     * Sets how many bytes YouTube has confirmed and saves the session in the background if it has not been saved
+     * during the last PROGRESS_SAVE_INTERVAL. Returns directly, call it from the thread that uploads the video.
+     *
+     * @param bytesUploaded the number of bytes YouTube has received
+     */
+    public void saveProgress(long bytesUploaded) {
+        this.bytesUploaded = bytesUploaded;
+        long now = System.currentTimeMillis();
+        if (now - lastProgressSave < PROGRESS_SAVE_INTERVAL)
+            return;
+        lastProgressSave = now;
+        String fileName = sessionFileName(videoFile);
+        synchronized (FILE_LOCK) {
+            // A save that is still waiting writes the new progress instead
+            if (pendingSaves.put(fileName, toString()) != null)
+                return;
+        }
+        progressWriter.execute(() -> {
+            synchronized (FILE_LOCK) {
+                String latest = pendingSaves.remove(fileName);
+                if (latest != null)
+                    ConfigManager.INSTANCE.saveUploadSession(fileName, latest);
+            }
+        });
+    }
+
+    /**
+     * Finds a saved session for the given video file that can still be used
+     *
+     * @param videoFile a video file
+     * @return the saved session or null if there is no session, it has expired or the file has changed since
+     */
+    public static UploadSession find(File videoFile) {
+        String saved = ConfigManager.INSTANCE.getUploadSession(sessionFileName(videoFile));
+        if (saved == null)
+            return null;
+        try {
+            UploadSession session = new UploadSession(saved);
+            // Never resume the upload of another file, even if it somehow got the same file name
+            if (!session.getVideoFile().getAbsoluteFile().equals(videoFile.getAbsoluteFile()))
+                return null;
+            if (!session.isExpired() && session.isUnchanged())
+                return session;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        discard(videoFile);
+        return null;
+    }
+
+    /**
+     * @return all saved sessions that has not expired, expired and unreadable sessions are deleted
+     */
+    public static List<UploadSession> loadAll() {
+        List<UploadSession> sessions = new ArrayList<>();
+        for (String saved : ConfigManager.INSTANCE.getUploadSessions()) {
+            try {
+                UploadSession session = new UploadSession(saved);
+                if (!session.isExpired())
+                    sessions.add(session);
+                else
+                    discard(session.getVideoFile());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Deletes the saved session for the given video file, if there is one
+     *
+     * @param videoFile a video file
+     */
+    public static void discard(File videoFile) {
+        String fileName = sessionFileName(videoFile);
+        synchronized (FILE_LOCK) {
+            pendingSaves.remove(fileName);
+            ConfigManager.INSTANCE.deleteUploadSession(fileName);
+        }
+    }
+
+    private static String sessionFileName(File videoFile) {
+        return HashUtils.sha256(videoFile.getAbsolutePath());
+    }
+
+    /**
+     * Creates a string representation of the class that can be saved and later used to recreate the class as it
+     * looked like before with the UploadSession(String) constructor
+     *
+     * @return A String representation of this class
+     */
+    public String toString() {
+        return uploadString + "\n" +
+                KEY_SESSION_URI + ":" + sessionUri + "\n" +
+                KEY_BYTES_UPLOADED + ":" + bytesUploaded + "\n" +
+                KEY_FILE_SIZE + ":" + fileSize + "\n" +
+                KEY_FILE_MODIFIED + ":" + fileModified + "\n" +
+                KEY_CREATED + ":" + created + "\n" +
+                KEY_METADATA + ":" + metadata;
+    }
+}
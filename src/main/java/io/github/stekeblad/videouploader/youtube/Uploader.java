@@ -1,13 +1,18 @@
 package io.github.stekeblad.videouploader.youtube;
 
-import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.googleapis.media.MediaHttpUploader;
 import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
-import com.google.api.client.http.HttpBackOffIOExceptionHandler;
-import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.http.*;
 import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.*;
+import io.github.stekeblad.videouploader.utils.ConfigManager;
+import io.github.stekeblad.videouploader.utils.background.ThumbnailNormalizer;
+import io.github.stekeblad.videouploader.utils.background.UiUpdateDispatcher;
+import io.github.stekeblad.videouploader.utils.metrics.UploadFlightEvents;
+import io.github.stekeblad.videouploader.utils.metrics.UploadMetrics;
+import io.github.stekeblad.videouploader.utils.metrics.UploadSpan;
 import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.Translations;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
@@ -18,11 +23,20 @@ import javafx.concurrent.Task;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -30,10 +44,20 @@ import java.util.function.Consumer;
  * Uploader handles the actual uploading to Youtube and contains a queue for all uploads. New uploads can be added,
  * existing once can be aborted all at the same time or just a specific. It is possible to get if their is a upload
  * in progress and set a method to be called for all finished uploads with the Id of the upload as the only parameter.
- * The uploading is performed in a separate thread and the class is partly threadsafe, check the methods documentation 
+ * The uploading is performed in a pool of background threads, one per upload slot, so several videos can be uploaded
+ * at the same time. When the video file has been uploaded the thumbnail and playlist is set by a separate small pool
+ * of threads so the upload slot can continue with the next video directly. The class is partly threadsafe, check the methods documentation
  * to see if the particular method is threadsafe
  */
 public class Uploader {
+    /**
+     * YouTube starts to reject new upload sessions for a channel when too many are open at the same time,
+     * the number of parallel uploads is never allowed to go above this value for the authenticated account.
+     */
+    public static final int MAX_PARALLEL_UPLOADS_PER_ACCOUNT = 4;
+    // Threads for setting thumbnails and adding videos to playlists, they only make short requests
+    private static final int POST_UPLOAD_THREADS = 2;
+
     private final String VIDEO_FILE_FORMAT = "video/";
 
     private final Map<String, Future> tasks;
@@ -41,19 +65,54 @@ public class Uploader {
     private final PlaylistUtils playlistUtils;
     private Consumer<String> uploadFinishedCallback = null;
     private BiConsumer<VideoUpload, Throwable> uploadErredCallback = null;
+    private BiConsumer<VideoUpload, Throwable> postUploadErredCallback = null;
     private final ExecutorService exec;
+    private final ExecutorService postUploadExec;
+    private final int uploadSlots;
     private final Translations translationsUpload;
     private final Translations translationsBasic;
+    private final String uploadWithProgressFormat;
+    // The session URI of the resumable upload started most recently by the current thread
+    private final ThreadLocal<String> initiatedSessionUri = new ThreadLocal<>();
+    private volatile boolean keepSessions = false;
+    // New uploads starts with the chunk size the last upload ended with
+    private volatile int lastChunkSize = MediaHttpUploader.DEFAULT_CHUNK_SIZE;
+    private final LongSummaryStatistics queueLatency = new LongSummaryStatistics();
+    private final UploadAdmission admission = new UploadAdmission();
+    private final QuotaLedger quotaLedger = QuotaLedger.INSTANCE;
+    private final UploadMetrics metrics = UploadMetrics.INSTANCE;
+    private volatile YouTube youTube = null;
 
-
+    /**
+     * Creates an Uploader with the number of parallel uploads set in the settings file
+     */
     public Uploader() {
+        this(ConfigManager.INSTANCE.getParallelUploads());
+    }
+
+    /**
+     * Creates an Uploader that uploads up to parallelUploads videos at the same time.
+     *
+     * @param parallelUploads the number of upload slots, values outside 1 to MAX_PARALLEL_UPLOADS_PER_ACCOUNT
+     *                        is moved to the closest allowed value
+     */
+    public Uploader(int parallelUploads) {
         translationsUpload = TranslationsManager.getTranslation(TranslationBundles.UPLOADER);
+        uploadWithProgressFormat = translationsUpload.getString("uploadWithProgress");
         translationsBasic = TranslationsManager.getTranslation(TranslationBundles.BASE);
         tasks = Collections.synchronizedMap(new HashMap<>());
         categoryUtils = CategoryUtils.INSTANCE;
         playlistUtils = PlaylistUtils.INSTANCE;
-        exec = Executors.newSingleThreadExecutor(Thread::new);
+        uploadSlots = Math.max(1, Math.min(parallelUploads, MAX_PARALLEL_UPLOADS_PER_ACCOUNT));
+        exec = Executors.newFixedThreadPool(uploadSlots, Thread::new);
+        postUploadExec = Executors.newFixedThreadPool(POST_UPLOAD_THREADS, Thread::new);
+    }
 
+    /**
+     * @return the number of uploads that can be in progress at the same time
+     */
+    public int getUploadSlots() {
+        return uploadSlots;
     }
 
     /**
@@ -77,6 +136,19 @@ public class Uploader {
         this.uploadErredCallback = callback;
     }
 
+    /**
+     * Sets a method to be called when the thumbnail could not be set or the video could not be added to its playlist
+     * after the video has been uploaded. The video is on YouTube and the upload finished callback is still called
+     * for it. The parameters given to the callback will be the VideoUpload and the exception, it is called on the
+     * JavaFX thread once for every step that fails. Setting this callback is not required. This method is not
+     * threadsafe. It is recommended to call this method shortly after an instance of the class is created and before
+     * any uploads are added.
+     * @param callback the callback to be called when a step after the upload fails
+     */
+    public void setPostUploadErredCallback(BiConsumer<VideoUpload, Throwable> callback) {
+        this.postUploadErredCallback = callback;
+    }
+
     /**
      * Aborts a single upload, scheduled or active. This method is threadsafe.
      * @param cancelName the cancelName that was given when the add() method was called
@@ -90,6 +162,7 @@ public class Uploader {
                 success = tasks.get(cancelName).cancel(true);
                 if (success) {
                     tasks.remove(cancelName);
+                    metrics.uploadEnded(cancelName, false);
                 }
                 return success;
             }
@@ -117,81 +190,285 @@ public class Uploader {
     }
 
     /**
-     * Aborts all uploads and shuts down the executor service that performs the background work.
+     * Aborts all uploads and shuts down the executor service that performs the background work. The upload sessions
+     * of the aborted uploads are kept so they can be resumed the next time the program is started.
      * This method is intended to be used when the program is about to shut down and no new uploads should be added
      * to this instance after this method has been called.
      * @return a Set with the cancelName of all unfinished uploads that was aborted.
      */
     public Set<String> kill() {
+        return kill(true);
+    }
+
+    /**
+     * Same as kill() but it is possible to select if the upload sessions of the aborted uploads should be kept or
+     * deleted.
+     * @param keepSessions true to be able to resume the aborted uploads later, false to delete their sessions
+     * @return a Set with the cancelName of all unfinished uploads that was aborted.
+     */
+    public Set<String> kill(boolean keepSessions) {
+        this.keepSessions = keepSessions;
         exec.shutdownNow();
+        postUploadExec.shutdownNow();
         synchronized (tasks) {
             return tasks.keySet();
         }
     }
 
+    /**
+     * The queue latency is the time from a upload is added until it starts, both the time it waits for a free
+     * upload slot and the time it is held back after a failure. This method is threadsafe.
+     * @return statistics in milliseconds over the queue latency of all uploads that has started
+     */
+    public LongSummaryStatistics getQueueLatencyStatistics() {
+        LongSummaryStatistics copy = new LongSummaryStatistics();
+        synchronized (queueLatency) {
+            copy.combine(queueLatency);
+        }
+        return copy;
+    }
+
+    private void recordQueueLatency(long queuedNanos) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNanos);
+        synchronized (queueLatency) {
+            queueLatency.accept(latencyMillis);
+        }
+    }
+
     /**
      * Adds video to the upload list. This method is threadsafe.
      * @param video video to upload
      * @param cancelName String to use for aborting the upload (and used to report that its finished if a callback is set)
      */
     public void add(VideoUpload video, String cancelName) {
+        long queuedNanos = System.nanoTime();
+        // A thumbnail created from the video after this point is not uploaded, its cost is not in the reservation
+        File thumbnail = video.getThumbNail();
+        metrics.uploadQueued(cancelName, video.getVideoFile());
         // Create the task
         Task newTask = new Task<Void>() {
             @Override
             // Define what it does
             protected Void call() {
+                Video uploadedVideo;
+                UploadSpan completionSpan = null;
                 try {
-                    // Do the uploading, but first a short wait, if something goes wrong we want a chance to abort all
-                    // waiting uploads instead of all of them creating exception dialogs before we have a chance to react
+                    // Do the uploading, but if another upload just failed wait a short moment first, if something is
+                    // wrong we want a chance to abort all waiting uploads instead of all of them creating exception
+                    // dialogs before we have a chance to react
                     try {
-                        Thread.sleep(1000 * 2);
+                        admission.awaitAdmission();
                     } catch (InterruptedException e) {
                         throw new RuntimeException("INTERRUPTED");
                     }
-                    // now, upload!
-                    upload(video);
+                    recordQueueLatency(queuedNanos);
+                    completionSpan = UploadFlightEvents.beginUploadStep(
+                            UploadFlightEvents.Step.COMPLETION, video.getVideoFile());
+                    // now, upload! (or wait for the daily quota to be reset first)
+                    uploadedVideo = withinQuota(estimateUploadCost(video, thumbnail), video,
+                            UploadMetrics.Phase.UPLOADING,
+                            () -> upload(video));
                 } catch (Exception e) {
+                    quotaLedger.releaseReservation();
+                    if (completionSpan != null)
+                        completionSpan.end();
+                    // Removed before the error callback runs, it may add the upload again
+                    synchronized (tasks) {
+                        tasks.remove(cancelName);
+                    }
+                    metrics.uploadEnded(cancelName, false);
                     // if not interrupted by the user, print the error and call error handler if it is set
                     if (e.getMessage() != null && !e.getMessage().equals("INTERRUPTED")) {
                         e.printStackTrace();
+                        admission.uploadFailed();
                         if (uploadErredCallback != null) {
                             Platform.runLater(() -> uploadErredCallback.accept(video, e));
                         }
-                    }
-                    synchronized (tasks) {
-                        tasks.remove(cancelName);
+                    } else if (!keepSessions) {
+                        // Aborted, the upload will not be resumed. A failed upload keeps its session so a retry
+                        // can continue where it stopped
+                        UploadSession.discard(video.getVideoFile());
                     }
                     return null;
                 }
-                // If upload finished without errors and callback is set, give the cancel name to the callback
-                if(uploadFinishedCallback != null) {
-                    uploadFinishedCallback.accept(cancelName);
-                }
-                // Remove the task from the list
-                synchronized (tasks) {
-                    tasks.remove(cancelName);
+                // Let the upload slot start on the next video while the thumbnail and playlist are set
+                try {
+                    startPostUpload(video, thumbnail, uploadedVideo, cancelName, completionSpan);
+                } finally {
+                    // The reservation is still here if it was not handed to the post-upload stage
+                    quotaLedger.releaseReservation();
                 }
                 return null;
             }
         };
         newTask.setOnFailed(event -> {
+            admission.uploadFailed();
             if (uploadErredCallback != null) {
                 Platform.runLater(() -> uploadErredCallback.accept(video, newTask.getException()));
             }
         });
-        Future upload = exec.submit(newTask);
+        // Submit while holding the lock, with more than one upload slot the task may otherwise start
+        // and look for itself in tasks before it has been added
         synchronized (tasks) {
+            Future upload = exec.submit(newTask);
             tasks.put(cancelName, upload); // save the future to be able to abort upload
         }
     }
 
     /**
-     * Does the uploading.
+     * Authenticates the user and creates the YouTube object used for all uploads. Called from a upload slot thread
+     * the first time a upload starts.
+     *
+     * @return a YouTube object that attempts to resume the upload if a network error occur
+     * @throws IOException if the authentication fails
+     */
+    protected YouTube createYouTube() throws IOException {
+        // Authenticate now so it does not happen in the middle of the first request
+        UploadSpan authSpan = UploadFlightEvents.beginUploadStep(UploadFlightEvents.Step.AUTHENTICATION, null);
+        try {
+            Auth.authUser();
+        } finally {
+            authSpan.end();
+        }
+        return newYouTubeBuilder(Auth::initializeRequest).setApplicationName("Stekeblads Video Uploader").build();
+    }
+
+    /**
+     * Creates a builder for the YouTube object used by the uploads. Its requests attempts to resume the upload if a
+     * network error occur, their quota cost is recorded and the session URIs are tracked with trackUploadSession().
+     * Subclasses can use it to upload somewhere else, like a local test server, without changing how the uploads
+     * behave.
+     *
+     * @param credentials adds the user's credential to every request
+     * @return a builder with the request initializers set
+     */
+    protected YouTube.Builder newYouTubeBuilder(HttpRequestInitializer credentials) {
+        return new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, request -> {
+            credentials.initialize(request);
+            // Tell Youtube to attempt resume upload if a network error occur.
+            request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()));
+            quotaLedger.track(request);
+            trackUploadSession(request);
+        }).setYouTubeRequestInitializer(new PartialResponseInitializer());
+    }
+
+    /**
+     * @return the YouTube object shared by all uploads of this Uploader, it is created by createYouTube() on first use
+     * @throws IOException if the authentication fails
+     */
+    private YouTube getYouTube() throws IOException {
+        YouTube result = youTube;
+        if (result == null) {
+            synchronized (this) {
+                if (youTube == null)
+                    youTube = createYouTube();
+                result = youTube;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * MediaHttpUploader does not expose the session URI it gets when a resumable upload is started. Call this
+     * method for every request made by the YouTube object returned by createYouTube() so the URI can be saved and
+     * the upload resumed if the program is closed before it finishes. A response interceptor that is already set
+     * on the request is called first.
+     *
+     * @param request a request that is being initialized
+     */
+    protected void trackUploadSession(HttpRequest request) {
+        HttpResponseInterceptor previousInterceptor = request.getResponseInterceptor();
+        request.setResponseInterceptor(response -> {
+            if (previousInterceptor != null)
+                previousInterceptor.interceptResponse(response);
+            // Only the initiation is a POST, the chunks are sent to the session URI with PUT
+            if (response.isSuccessStatusCode() && request.getRequestMethod().equals(HttpMethods.POST) &&
+                    "resumable".equals(request.getUrl().getFirst("uploadType"))) {
+                initiatedSessionUri.set(response.getHeaders().getLocation());
+            }
+        });
+    }
+
+    /**
+     * Reserves the quota a call needs and runs it. If the call would not fit in what is left of the daily quota it
+     * waits until the quota is reset, the same happens if YouTube says the quota is used up. What the thread has
+     * reserved already is used first and what is left of the reservation when the call returns is kept for the next
+     * call, the caller returns it with quotaLedger.releaseReservation() when it is done.
+     * @param units the number of quota units the call is expected to use
+     * @param video the video the call is for, its status shows when it is waiting for the quota
+     * @param phase the phase of the upload the call is part of, it is in WAITING_FOR_QUOTA while it waits
+     * @param call the call to run
+     * @return the result of call
+     * @throws IOException if call throws
+     */
+    private <T> T withinQuota(long units, VideoUpload video, UploadMetrics.Phase phase, QuotaCall<T> call)
+            throws IOException {
+        while (true) {
+            try {
+                quotaLedger.awaitReservation(units, resetTime -> showQuotaHold(video, resetTime));
+            } catch (InterruptedException e) {
+                throw new RuntimeException("INTERRUPTED");
+            }
+            metrics.phaseChanged(video.getPaneId(), phase);
+            try {
+                return call.call();
+            } catch (IOException | RuntimeException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("quotaExceeded"))
+                    throw e;
+                // The quota may be shared with other programs, YouTube knows better than the ledger
+                quotaLedger.markExhausted();
+                quotaLedger.releaseReservation();
+            }
+        }
+    }
+
+    private interface QuotaCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * @param thumbnail the thumbnail that will be set after the upload, or null
+     * @return the number of quota units the upload of the video file and the post-upload steps are expected to use,
+     * resuming a upload does not cost anything. The upload does not start before all of it fits in the daily quota and
+     * startPostUpload() hands what is left of the reservation to the post-upload stage, so a video is not left without
+     * its thumbnail or playlist because other uploads used the quota while it was uploading.
+     */
+    private long estimateUploadCost(VideoUpload video, File thumbnail) {
+        long cost = 0;
+        UploadSession session = UploadSession.find(video.getVideoFile());
+        if (session == null || session.isExpired())
+            cost += QuotaLedger.Call.VIDEO_INSERT.getCost();
+        if (thumbnail != null)
+            cost += QuotaLedger.Call.THUMBNAIL_SET.getCost();
+        if (isPlaylistSelected(video))
+            cost += QuotaLedger.Call.PLAYLIST_ITEM_INSERT.getCost();
+        return cost;
+    }
+
+    private void showQuotaHold(VideoUpload video, Instant resetTime) {
+        metrics.phaseChanged(video.getPaneId(), UploadMetrics.Phase.WAITING_FOR_QUOTA);
+        String localResetTime = DateTimeFormatter.ofPattern("HH:mm").format(resetTime.atZone(ZoneId.systemDefault()));
+        String newStatusText = String.format(translationsUpload.getString("waitingForQuota"), localResetTime);
+        Platform.runLater(() -> video.setStatusLabelText(newStatusText));
+    }
+
+    /**
+     * @return true if video should be added to a playlist, false if it is null, empty or the "no selected" default value
+     */
+    private boolean isPlaylistSelected(VideoUpload video) {
+        String playlistString = video.getSelectedPlaylist();
+        return playlistString != null && !playlistString.equals("null") && !playlistString.equals("") &&
+                !playlistString.equals(translationsBasic.getString("noSelected"));
+    }
+
+    /**
+     * Uploads the video file, the thumbnail and playlist is set afterwards by startPostUpload().
      * @param video a VideoUpload with all the details needed for uploading
+     * @return the uploaded video
      * @throws IOException if the user aborts the upload while it is uploading, there is a exception while reading the video
-     * or thumbnail file or there is a network error that could not be handled.
+     * file or there is a network error that could not be handled.
      */
-    private void upload(VideoUpload video) throws IOException {
+    private Video upload(VideoUpload video) throws IOException {
 
         // debug thing to force error
         if (video.getVideoName().equals("forceUploadFailure")) {
@@ -215,18 +492,14 @@ public class Uploader {
             if (!tasks.containsKey(video.getPaneId()))
                 throw new IOException("INTERRUPTED");
         }
-        // debug for testing daily upload limit exceeded
+        // debug for testing daily upload limit exceeded, thrown inside withinQuota() so the quota is marked as used up
+        // and the upload waits for it to be reset like when YouTube says so
         if (video.getVideoName().equals("forceDailyLimit")) {
             throw new RuntimeException("The daily upload limit has been reached. (quotaExceeded)");
         }
 
-        // Auth the user and create the Youtube object
-        Credential creds = Auth.authUser();
-        YouTube myTube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, request -> {
-            creds.initialize(request);
-            // Tell Youtube to attempt resume upload if a network error occur.
-            request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()));
-        }).setApplicationName("Stekeblads Video Uploader").build();
+        // Get the Youtube object, the user is authenticated the first time
+        YouTube myTube = getYouTube();
 
         // Start building the Youtube Video object
         Video videoObject = new Video();
@@ -242,109 +515,461 @@ public class Uploader {
         videoMetaData.setCategoryId(categoryUtils.getCategoryId(video.getCategory()));
 
         videoObject.setSnippet(videoMetaData);
-        InputStreamContent videoFileStream;
-        try {
-            videoFileStream = new InputStreamContent(VIDEO_FILE_FORMAT,
-                    new BufferedInputStream(new FileInputStream(video.getVideoFile())));
 
-        } catch (FileNotFoundException e) {
-            throw new FileNotFoundException("Could not find the video file \"" + video.getVideoFile().getAbsolutePath() +
-                    "\". It may have been deleted, moved or renamed since the upload was queued");
+        // The progress is shown at the frame rate of the dispatcher instead of once per chunk
+        UiUpdateDispatcher.Slot progressView = UiUpdateDispatcher.INSTANCE.register(
+                video::setProgressBarProgress, video::setStatusLabelText);
+        Video uploadedVideo = null;
+        try {
+            // Continue from where the last attempt stopped if YouTube still remembers it
+            UploadSession savedSession = UploadSession.find(video.getVideoFile());
+            if (savedSession != null) {
+                if (savedSession.hasSameDetails(video))
+                    uploadedVideo = resumeUpload(myTube, video, savedSession, progressView);
+                if (uploadedVideo == null)
+                    UploadSession.discard(video.getVideoFile());
+            }
+            if (uploadedVideo == null)
+                uploadedVideo = uploadFromStart(myTube, video, videoObject, progressView);
+        } finally {
+            // Shows the last progress before anything the post-upload stage or the error callback shows
+            progressView.close();
         }
+        UploadSession.discard(video.getVideoFile());
 
+        return uploadedVideo;
+    }
 
-        ArrayList<String> videoParts = new ArrayList<>();
-        videoParts.add("snippet");
-        videoParts.add("statistics");
-        videoParts.add("status");
-        YouTube.Videos.Insert videoInsert = myTube.videos()
-                .insert(videoParts, videoObject, videoFileStream);
-
-        videoInsert.setNotifySubscribers(video.isTellSubs());
-
-        // getMediaHttpUploader for being able to report progress
-        MediaHttpUploader uploader = videoInsert.getMediaHttpUploader();
-        uploader.setDirectUploadEnabled(false); // makes the upload resumable?
-
-        MediaHttpUploaderProgressListener progressListener = uploader1 -> {
-            // If abortUpload() has been called for this upload while it is uploading
-            if (Thread.interrupted()) {
-                // Throw an exception (Only IOException allowed)
-                throw new IOException("INTERRUPTED");
+    /**
+     * Hands a uploaded video to the post-upload stage that sets its thumbnail and adds it to its playlist. The stage
+     * has its own threads so the upload slot can start uploading the next video directly. The upload stays in the
+     * upload queue, and can be aborted, until the stage is done. The quota the calling thread has reserved for the
+     * post-upload steps is handed to the stage.
+     * @param video the uploaded video
+     * @param thumbnail the thumbnail to set, or null
+     * @param uploadedVideo the video returned by YouTube
+     * @param cancelName the cancelName of the upload
+     * @param completionSpan the span of the entire upload, ended when the upload is finished
+     */
+    private void startPostUpload(VideoUpload video, File thumbnail, Video uploadedVideo, String cancelName,
+                                 UploadSpan completionSpan) {
+        boolean setThumbnail = thumbnail != null;
+        boolean addToPlaylist = isPlaylistSelected(video);
+        if (!setThumbnail && !addToPlaylist) {
+            finishUpload(video, uploadedVideo, cancelName, completionSpan);
+            return;
+        }
+        metrics.phaseChanged(cancelName, UploadMetrics.Phase.POST_UPLOAD);
+        synchronized (tasks) {
+            // Aborted right after the video was uploaded
+            if (!tasks.containsKey(cancelName)) {
+                metrics.uploadEnded(cancelName, false);
+                completionSpan.end();
+                return;
             }
-            switch (uploader1.getUploadState()) {
-                case INITIATION_STARTED:
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("preparing")));
-                    break;
-                case INITIATION_COMPLETE:
-                    Platform.runLater(() -> video.setProgressBarProgress(0));
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("starting")));
-                    break;
-                case MEDIA_IN_PROGRESS: // uploader1.getProgress() errors, this is not a perfect replacement as
-                    // the upload is slightly larger than the video file, but for longer videos it will be close enough
-                    double progress = ((double) uploader1.getNumBytesUploaded() / video.getVideoFile().length());
-                    Platform.runLater(() -> video.setProgressBarProgress(progress));
-                    String newStatusText = String.format(
-                            translationsUpload.getString("uploadWithProgress"), (int) Math.floor(progress * 100));
-                    Platform.runLater(() -> video.setStatusLabelText(newStatusText));
-                    break;
-                case MEDIA_COMPLETE:
-                    Platform.runLater(() -> video.setProgressBarProgress(1)); // 100% full
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("finished")));
-                    break;
-                case NOT_STARTED:
-                    Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("notStarted")));
-                    break;
+            // Returned by done() if the stage is aborted before it starts
+            AtomicLong handedOver = new AtomicLong(quotaLedger.detachReservation());
+            FutureTask<Void> postUpload = new FutureTask<Void>(() -> {
+                quotaLedger.attachReservation(handedOver.getAndSet(0));
+                try {
+                    // The steps are independent, a failed thumbnail does not stop the video from being added to
+                    // the playlist
+                    if (setThumbnail && !runPostUploadStep(video, "Could not set the thumbnail",
+                            QuotaLedger.Call.THUMBNAIL_SET, () -> setThumbnail(video, thumbnail, uploadedVideo))) {
+                        metrics.uploadEnded(cancelName, false);
+                        return;
+                    }
+                    if (addToPlaylist && !runPostUploadStep(video, "Could not add the video to the playlist \"" +
+                                    video.getSelectedPlaylist() + "\"", QuotaLedger.Call.PLAYLIST_ITEM_INSERT,
+                            () -> addToPlaylist(video, uploadedVideo))) {
+                        metrics.uploadEnded(cancelName, false);
+                        return;
+                    }
+                    finishUpload(video, uploadedVideo, cancelName, completionSpan);
+                } catch (RuntimeException e) {
+                    // Nobody looks at the Future, report it here or it is lost
+                    e.printStackTrace();
+                    synchronized (tasks) {
+                        tasks.remove(cancelName);
+                    }
+                    metrics.uploadEnded(cancelName, false);
+                    if (postUploadErredCallback != null)
+                        Platform.runLater(() -> postUploadErredCallback.accept(video, e));
+                } finally {
+                    quotaLedger.releaseReservation();
+                    completionSpan.end();
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    quotaLedger.releaseDetached(handedOver.getAndSet(0));
+                }
+            };
+            try {
+                postUploadExec.execute(postUpload);
+                tasks.put(cancelName, postUpload);
+            } catch (RejectedExecutionException e) {
+                // kill() has been called
+                quotaLedger.releaseDetached(handedOver.getAndSet(0));
+                tasks.remove(cancelName);
+                metrics.uploadEnded(cancelName, false);
+                completionSpan.end();
             }
-        };
-        uploader.setProgressListener(progressListener);
+        }
+    }
 
-        // finally ready for upload!
-        Video uploadedVideo = videoInsert.execute();
+    /**
+     * Runs one step of the post-upload stage and reports it to the post upload erred callback if it fails
+     * @param failMessage the message of the exception given to the callback, the step's exception is its cause
+     * @return false if the upload has been aborted and the following steps should not run, true otherwise
+     */
+    private boolean runPostUploadStep(VideoUpload video, String failMessage, QuotaLedger.Call call,
+                                      QuotaCall<Void> step) {
+        try {
+            withinQuota(call.getCost(), video, UploadMetrics.Phase.POST_UPLOAD, step);
+        } catch (Exception e) {
+            if ("INTERRUPTED".equals(e.getMessage()) || Thread.currentThread().isInterrupted())
+                return false;
+            e.printStackTrace();
+            if (postUploadErredCallback != null) {
+                IOException stepFailure = new IOException(failMessage, e);
+                Platform.runLater(() -> postUploadErredCallback.accept(video, stepFailure));
+            }
+        }
+        return true;
+    }
 
-        // Set thumbnail if selected
-        if (video.getThumbNail() != null) {
-            Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("thumbnail")));
-            File thumbFile = video.getThumbNail();
-            String contentType = Files.probeContentType(Paths.get(thumbFile.toURI()));
+    /**
+     * Sets the thumbnail of a uploaded video
+     */
+    private Void setThumbnail(VideoUpload video, File thumbFile, Video uploadedVideo) throws IOException {
+        Platform.runLater(() -> video.setStatusLabelText(translationsUpload.getString("thumbnail")));
+        if (!thumbFile.isFile())
+            throw new FileNotFoundException("Could not find the thumbnail file \"" + thumbFile.getAbsolutePath() +
+                    "\". It may have been deleted, moved or renamed since the upload was queued");
+        // Usually done in the background already, then this only checks that the file has not changed
+        thumbFile = ThumbnailNormalizer.INSTANCE.normalize(thumbFile);
+        String contentType = Files.probeContentType(Paths.get(thumbFile.toURI()));
 
-            InputStreamContent thumbnailFileContent;
-            try {
-                thumbnailFileContent = new InputStreamContent(
-                        contentType, new BufferedInputStream(new FileInputStream(thumbFile)));
-                thumbnailFileContent.setLength(thumbFile.length());
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException("Could not find the thumbnail file \"" + thumbFile.getAbsolutePath() +
-                        "\". It may have been deleted, moved or renamed since the upload was queued");
-            }
-            YouTube.Thumbnails.Set thumbnailSet = myTube.thumbnails().set(uploadedVideo.getId(), thumbnailFileContent);
+        InputStreamContent thumbnailFileContent;
+        try {
+            thumbnailFileContent = new InputStreamContent(
+                    contentType, new BufferedInputStream(new FileInputStream(thumbFile)));
+            thumbnailFileContent.setLength(thumbFile.length());
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException("Could not find the thumbnail file \"" + thumbFile.getAbsolutePath() +
+                    "\". It may have been deleted, moved or renamed since the upload was queued");
+        }
+        YouTube.Thumbnails.Set thumbnailSet = getYouTube().thumbnails().set(uploadedVideo.getId(), thumbnailFileContent);
+        UploadSpan thumbnailSpan = UploadFlightEvents.beginUploadStep(
+                UploadFlightEvents.Step.THUMBNAIL, video.getVideoFile());
+        try {
             thumbnailSet.execute();
+            thumbnailSpan.addBytesSent(thumbnailFileContent.getLength());
+        } finally {
+            thumbnailSpan.end();
         }
-        // Add to playlist if it is not null, empty or the "no selected" default value
-        String playlistString = video.getSelectedPlaylist();
-        if (playlistString != null && !playlistString.equals("null") && !playlistString.equals("") &&
-                !playlistString.equals(translationsBasic.getString("noSelected"))) {
-            String newStatusText = String.format(translationsUpload.getString("playlist"), video.getSelectedPlaylist());
-            Platform.runLater(() -> video.setStatusLabelText(newStatusText));
-            ResourceId resourceId = new ResourceId();
-            resourceId.setKind("youtube#video");
-            resourceId.setVideoId(uploadedVideo.getId());
-
-            PlaylistItemSnippet playlistSnippet = new PlaylistItemSnippet();
-            playlistSnippet.setPlaylistId(playlistUtils.getPlaylistId(video.getSelectedPlaylist()));
-            playlistSnippet.setResourceId(resourceId);
-
-            PlaylistItem playlistItem = new PlaylistItem();
-            playlistItem.setSnippet(playlistSnippet);
-            ArrayList<String> playlistParts = new ArrayList<>();
-            playlistParts.add("snippet");
-            playlistParts.add("contentDetails");
-            YouTube.PlaylistItems.Insert playlistInsert = myTube.playlistItems().insert(playlistParts, playlistItem);
+        return null;
+    }
+
+    /**
+     * Adds a uploaded video to its selected playlist
+     */
+    private Void addToPlaylist(VideoUpload video, Video uploadedVideo) throws IOException {
+        String newStatusText = String.format(translationsUpload.getString("playlist"), video.getSelectedPlaylist());
+        Platform.runLater(() -> video.setStatusLabelText(newStatusText));
+        ResourceId resourceId = new ResourceId();
+        resourceId.setKind("youtube#video");
+        resourceId.setVideoId(uploadedVideo.getId());
+
+        PlaylistItemSnippet playlistSnippet = new PlaylistItemSnippet();
+        playlistSnippet.setPlaylistId(playlistUtils.getPlaylistId(video.getSelectedPlaylist()));
+        playlistSnippet.setResourceId(resourceId);
+
+        PlaylistItem playlistItem = new PlaylistItem();
+        playlistItem.setSnippet(playlistSnippet);
+        YouTube.PlaylistItems.Insert playlistInsert = getYouTube().playlistItems()
+                .insert(PartialResponseInitializer.PLAYLIST_ITEM_INSERT_PARTS, playlistItem);
+        UploadSpan playlistSpan = UploadFlightEvents.beginUploadStep(
+                UploadFlightEvents.Step.PLAYLIST_INSERT, video.getVideoFile());
+        try {
             playlistInsert.execute();
+        } finally {
+            playlistSpan.end();
         }
+        return null;
+    }
+
+    /**
+     * Shows the link to the video, calls the upload finished callback and removes the upload from the queue
+     */
+    private void finishUpload(VideoUpload video, Video uploadedVideo, String cancelName, UploadSpan completionSpan) {
         String link = "https://youtu.be/" + uploadedVideo.getId();
         String newStatusText = String.format(translationsUpload.getString("doneWithLink"), link);
         Platform.runLater(() -> video.setStatusLabelText(newStatusText));
         Platform.runLater(() -> video.setStatusLabelOnClickUrl(link));
+        // If upload finished without errors and callback is set, give the cancel name to the callback
+        if (uploadFinishedCallback != null) {
+            uploadFinishedCallback.accept(cancelName);
+        }
+        // Remove the task from the list
+        synchronized (tasks) {
+            tasks.remove(cancelName);
+        }
+        metrics.uploadEnded(cancelName, true);
+        completionSpan.end();
+    }
+
+    /**
+     * Starts a new resumable upload of the video file. The session is saved to disc every time YouTube confirms
+     * that it has received a chunk.
+     * @param myTube the YouTube object to use for uploading
+     * @param video the video to upload
+     * @param videoObject the snippet and status to give the video on YouTube
+     * @param progressView the slot to report the progress to
+     * @return the uploaded video
+     * @throws IOException if the user aborts the upload, the video file can not be read or there is a network error
+     * that could not be handled.
+     */
+    private Video uploadFromStart(YouTube myTube, VideoUpload video, Video videoObject,
+                                  UiUpdateDispatcher.Slot progressView) throws IOException {
+        // The exact length lets MediaHttpUploader calculate the progress and resend chunks without buffering them
+        try (FileChannelContent videoFileStream = openVideoFile(video)) {
+            YouTube.Videos.Insert videoInsert = myTube.videos()
+                    .insert(PartialResponseInitializer.VIDEO_INSERT_PARTS, videoObject, videoFileStream);
+
+            videoInsert.setNotifySubscribers(video.isTellSubs());
+
+            // getMediaHttpUploader for being able to report progress
+            MediaHttpUploader uploader = videoInsert.getMediaHttpUploader();
+            uploader.setDirectUploadEnabled(false); // makes the upload resumable?
+            AdaptiveChunkSizer chunkSizer = createChunkSizer(video);
+            uploader.setChunkSize(chunkSizer.getChunkSize());
+
+            initiatedSessionUri.remove();
+            AtomicReference<UploadSession> session = new AtomicReference<>();
+            // The initiation and then each chunk, ended by the next state change
+            AtomicReference<UploadSpan> stepSpan = new AtomicReference<>();
+            AtomicLong bytesAtChunkStart = new AtomicLong();
+            MediaHttpUploaderProgressListener progressListener = uploader1 -> {
+                // If abortUpload() has been called for this upload while it is uploading
+                if (Thread.interrupted()) {
+                    // Throw an exception (Only IOException allowed)
+                    throw new IOException("INTERRUPTED");
+                }
+                switch (uploader1.getUploadState()) {
+                    case INITIATION_STARTED:
+                        stepSpan.set(UploadFlightEvents.beginUploadStep(
+                                UploadFlightEvents.Step.SESSION_INITIATION, video.getVideoFile()));
+                        progressView.setText(translationsUpload.getString("preparing"));
+                        break;
+                    case INITIATION_COMPLETE:
+                        String sessionUri = initiatedSessionUri.get();
+                        if (sessionUri != null) {
+                            session.set(new UploadSession(video, sessionUri));
+                            session.get().save();
+                        }
+                        chunkSizer.chunkStarted(0);
+                        endStepSpan(stepSpan, 0);
+                        stepSpan.set(UploadFlightEvents.beginUploadStep(
+                                UploadFlightEvents.Step.MEDIA_CHUNK, video.getVideoFile()));
+                        metrics.bytesConfirmed(video.getPaneId(), 0);
+                        progressView.setProgress(0);
+                        progressView.setText(translationsUpload.getString("starting"));
+                        break;
+                    case MEDIA_IN_PROGRESS:
+                        // Written by a background thread, and not for every chunk
+                        if (session.get() != null)
+                            session.get().saveProgress(uploader1.getNumBytesUploaded());
+                        metrics.bytesConfirmed(video.getPaneId(), uploader1.getNumBytesUploaded());
+                        endStepSpan(stepSpan, uploader1.getNumBytesUploaded() -
+                                bytesAtChunkStart.getAndSet(uploader1.getNumBytesUploaded()));
+                        stepSpan.set(UploadFlightEvents.beginUploadStep(
+                                UploadFlightEvents.Step.MEDIA_CHUNK, video.getVideoFile()));
+                        // The next chunk is created after the listener returns and gets the new size
+                        uploader1.setChunkSize(chunkSizer.chunkConfirmed(uploader1.getNumBytesUploaded()));
+                        // getProgress() uses the length FileChannelContent read when the file was opened
+                        showUploadProgress(progressView, uploader1.getProgress());
+                        break;
+                    case MEDIA_COMPLETE:
+                        metrics.bytesConfirmed(video.getPaneId(), uploader1.getNumBytesUploaded());
+                        endStepSpan(stepSpan, uploader1.getNumBytesUploaded() - bytesAtChunkStart.get());
+                        progressView.setProgress(1); // 100% full
+                        progressView.setText(translationsUpload.getString("finished"));
+                        break;
+                    case NOT_STARTED:
+                        progressView.setText(translationsUpload.getString("notStarted"));
+                        break;
+                }
+            };
+            uploader.setProgressListener(progressListener);
+
+            // finally ready for upload!
+            try {
+                return videoInsert.execute();
+            } finally {
+                lastChunkSize = chunkSizer.getChunkSize();
+            }
+        }
+    }
+
+    /**
+     * Continues a upload that was started earlier, possibly before the program was restarted, by asking YouTube how
+     * much of the file it has received and then sending the rest of it.
+     * @param myTube the YouTube object to use for uploading
+     * @param video the video to upload
+     * @param session the saved session of the earlier attempt
+     * @param progressView the slot to report the progress to
+     * @return the uploaded video or null if YouTube no longer knows about the session and the upload must be
+     * started from the beginning
+     * @throws IOException if the user aborts the upload, the video file can not be read or there is a network error
+     * that could not be handled.
+     */
+    private Video resumeUpload(YouTube myTube, VideoUpload video, UploadSession session,
+                               UiUpdateDispatcher.Slot progressView) throws IOException {
+        HttpRequestFactory requestFactory = myTube.getRequestFactory();
+        GenericUrl sessionUrl = new GenericUrl(session.getSessionUri());
+        long fileSize = session.getFileSize();
+        progressView.setText(translationsUpload.getString("resuming"));
+
+        // An empty PUT with an unknown range makes YouTube respond with how many bytes it has received
+        HttpRequest statusRequest = requestFactory.buildPutRequest(sessionUrl, new EmptyContent());
+        statusRequest.getHeaders().setContentRange("bytes */" + fileSize);
+        long offset;
+        UploadSpan statusSpan = UploadFlightEvents.beginUploadStep(
+                UploadFlightEvents.Step.SESSION_INITIATION, video.getVideoFile());
+        HttpResponse response;
+        try {
+            response = executeUploadRequest(myTube, statusRequest);
+        } finally {
+            statusSpan.end();
+        }
+        try {
+            if (response.isSuccessStatusCode()) // everything was received before the program was closed
+                return response.parseAs(Video.class);
+            if (response.getStatusCode() == 404 || response.getStatusCode() == 410)
+                return null; // the session has expired
+            if (response.getStatusCode() != 308)
+                throw GoogleJsonResponseException.from(myTube.getJsonFactory(), response);
+            offset = nextByteToSend(response);
+        } finally {
+            response.disconnect();
+        }
+
+        AdaptiveChunkSizer chunkSizer = createChunkSizer(video);
+        try (FileChannelContent videoFileContent = openVideoFile(video)) {
+            while (true) {
+                if (Thread.interrupted())
+                    throw new IOException("INTERRUPTED");
+                session.saveProgress(offset);
+                metrics.bytesConfirmed(video.getPaneId(), offset);
+                showUploadProgress(progressView, (double) offset / fileSize);
+
+                long chunkLength = Math.min(chunkSizer.getChunkSize(), fileSize - offset);
+                HttpRequest chunkRequest = requestFactory.buildPutRequest(sessionUrl,
+                        videoFileContent.slice(offset, chunkLength));
+                chunkRequest.getHeaders().setContentRange(
+                        "bytes " + offset + "-" + (offset + chunkLength - 1) + "/" + fileSize);
+
+                chunkSizer.chunkStarted(offset);
+                UploadSpan chunkSpan = UploadFlightEvents.beginUploadStep(
+                        UploadFlightEvents.Step.MEDIA_CHUNK, video.getVideoFile());
+                try {
+                    response = executeUploadRequest(myTube, chunkRequest);
+                    chunkSpan.addBytesSent(chunkLength);
+                } finally {
+                    chunkSpan.end();
+                }
+                try {
+                    if (response.isSuccessStatusCode()) {
+                        metrics.bytesConfirmed(video.getPaneId(), fileSize);
+                        progressView.setProgress(1); // 100% full
+                        progressView.setText(translationsUpload.getString("finished"));
+                        return response.parseAs(Video.class);
+                    }
+                    if (response.getStatusCode() != 308)
+                        throw GoogleJsonResponseException.from(myTube.getJsonFactory(), response);
+                    offset = nextByteToSend(response);
+                    chunkSizer.chunkConfirmed(offset);
+                } finally {
+                    response.disconnect();
+                }
+            }
+        } finally {
+            lastChunkSize = chunkSizer.getChunkSize();
+        }
+    }
+
+    /**
+     * Ends the span in holder if there is one
+     * @param bytesSent the number of bytes sent during the span
+     */
+    private static void endStepSpan(AtomicReference<UploadSpan> holder, long bytesSent) {
+        UploadSpan span = holder.getAndSet(null);
+        if (span != null) {
+            span.addBytesSent(bytesSent);
+            span.end();
+        }
+    }
+
+    /**
+     * @param video the video to upload
+     * @return a AdaptiveChunkSizer for uploading video that reports its decisions to UploadMetrics
+     */
+    private AdaptiveChunkSizer createChunkSizer(VideoUpload video) {
+        String cancelName = video.getPaneId();
+        AdaptiveChunkSizer chunkSizer = new AdaptiveChunkSizer(lastChunkSize, decision ->
+                metrics.chunkSizeSelected(cancelName, decision.getOldChunkSize(), decision.getNewChunkSize(),
+                        (long) decision.getAverageBytesPerSecond()));
+        metrics.chunkSizeSelected(cancelName, chunkSizer.getChunkSize(), chunkSizer.getChunkSize(), 0);
+        return chunkSizer;
+    }
+
+    /**
+     * @param video the video to upload
+     * @return the content of the video file
+     * @throws FileNotFoundException if the video file does not exist
+     * @throws IOException if the video file could not be opened
+     */
+    private FileChannelContent openVideoFile(VideoUpload video) throws IOException {
+        try {
+            return new FileChannelContent(VIDEO_FILE_FORMAT, video.getVideoFile());
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("Could not find the video file \"" + video.getVideoFile().getAbsolutePath() +
+                    "\". It may have been deleted, moved or renamed since the upload was queued");
+        }
+    }
+
+    /**
+     * Executes a request to a upload session and returns the response, also if it is not successful
+     */
+    private HttpResponse executeUploadRequest(YouTube myTube, HttpRequest request) throws IOException {
+        request.setParser(myTube.getObjectParser());
+        request.setThrowExceptionOnExecuteError(false);
+        // 308 means "resume incomplete" here and is not followed
+        request.setFollowRedirects(false);
+        return request.execute();
+    }
+
+    /**
+     * @param response a 308 response from a upload session
+     * @return the index of the first byte YouTube has not received
+     */
+    private long nextByteToSend(HttpResponse response) {
+        // Range: bytes=0-{last received byte}, no header if nothing has been received
+        String range = response.getHeaders().getRange();
+        if (range == null)
+            return 0;
+        return Long.parseLong(range.substring(range.indexOf('-') + 1)) + 1;
+    }
+
+    /**
+     * Updates the progress bar and status text of a video, called for every chunk so it must not allocate anything.
+     * The status text is created by the dispatcher when the progress is shown.
+     * @param progressView the slot of the video being uploaded
+     * @param progress the part of the video file YouTube has confirmed it has received, 0.0 to 1.0
+     */
+    private void showUploadProgress(UiUpdateDispatcher.Slot progressView, double progress) {
+        progressView.setProgress(progress, uploadWithProgressFormat);
     }
 }
@@ -1,9 +1,14 @@
 package io.github.stekeblad.videouploader.youtube;
 
 import io.github.stekeblad.videouploader.utils.background.OpenInBrowser;
+import io.github.stekeblad.videouploader.utils.background.UiUpdateDispatcher;
 import io.github.stekeblad.videouploader.youtube.utils.CategoryUtils;
 import io.github.stekeblad.videouploader.youtube.utils.PlaylistUtils;
+import io.github.stekeblad.videouploader.youtube.utils.ThumbnailPreviewCache;
 import io.github.stekeblad.videouploader.youtube.utils.VisibilityStatus;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
@@ -34,6 +39,10 @@ public class VideoInformationBase {
     // Constants
     public static final List<String> THUMBNAIL_FILE_FORMAT = Arrays.asList("*.jpg", "*.png");
     public static final long MAX_THUMB_SIZE = 2 * 1024 * 1024;
+    // Larger thumbnails can be selected, ThumbnailNormalizer makes them smaller than MAX_THUMB_SIZE before uploading
+    public static final long MAX_THUMB_SOURCE_SIZE = 50 * 1024 * 1024;
+    public static final double THUMB_PREVIEW_WIDTH = 160;
+    public static final double THUMB_PREVIEW_HEIGHT = 90;
 
     private static final String NODE_ID_TITLE = "_title";
     private static final String NODE_ID_DESCRIPTION = "_description";
@@ -283,19 +292,71 @@ public class VideoInformationBase {
         if (!allowEdit) {
             throw new Exception("Edit not allowed");
         } else {
-            if (thumbnail == null) {
-                //reset to default
-                thumbNailFile = null;
-                ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
-                        new Image(this.getClass().getResourceAsStream("/images/no_image.png")));
-            } else {
-                ((ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL)).setImage(
-                        new Image(new FileInputStream(thumbnail)));
-                thumbNailFile = thumbnail;
-            }
+            showThumbNail(thumbnail);
         }
     }
 
+    /**
+     * Sets a thumbnail that was created by the program, like a frame from the video. Unlike setThumbNailFile it can
+     * be used while editing is not allowed, but it does nothing if a thumbnail that exists is already selected so it
+     * never replaces a thumbnail the user selected.
+     *
+     * @param thumbnail the thumbnail image file
+     */
+    public void setDefaultThumbNailFile(File thumbnail) throws FileNotFoundException {
+        if (thumbnail == null || (getThumbNail() != null && getThumbNail().exists()))
+            return;
+        showThumbNail(thumbnail);
+    }
+
+    private void showThumbNail(File thumbnail) throws FileNotFoundException {
+        ImageView thumbNailFrame = (ImageView) videoBasePane.lookup("#" + paneId + NODE_ID_THUMBNAIL);
+        if (thumbnail == null) {
+            //reset to default
+            thumbNailFile = null;
+            thumbNailFrame.setImage(ThumbnailPreviewCache.INSTANCE.getPlaceholder());
+        } else {
+            if (!thumbnail.isFile())
+                throw new FileNotFoundException(thumbnail.getAbsolutePath());
+            setPreviewImage(thumbNailFrame, thumbnail);
+            thumbNailFile = thumbnail;
+        }
+    }
+
+    /**
+     * Shows a thumbnail from ThumbnailPreviewCache, it is loaded in the background and the placeholder image is shown
+     * if it could not be loaded. The panes are also created by the PresetApplicator threads, the listeners are added on
+     * the JavaFX Application Thread where the image reports its progress.
+     */
+    private static void setPreviewImage(ImageView thumbNailFrame, File thumbnail) {
+        Image image = ThumbnailPreviewCache.INSTANCE.get(thumbnail, THUMB_PREVIEW_WIDTH, THUMB_PREVIEW_HEIGHT);
+        thumbNailFrame.setImage(image);
+        if (image.getProgress() >= 1 && !image.isError())
+            return;
+        // The image is shared by many panes, do not let it keep this one after it has loaded
+        InvalidationListener onLoaded = new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                if (image.isError() && thumbNailFrame.getImage() == image)
+                    thumbNailFrame.setImage(ThumbnailPreviewCache.INSTANCE.getPlaceholder());
+                if (image.isError() || image.getProgress() >= 1) {
+                    image.errorProperty().removeListener(this);
+                    image.progressProperty().removeListener(this);
+                }
+            }
+        };
+        Runnable addListeners = () -> {
+            image.errorProperty().addListener(onLoaded);
+            image.progressProperty().addListener(onLoaded);
+            // The image may have finished or failed loading before the listeners was added
+            onLoaded.invalidated(image.progressProperty());
+        };
+        if (Platform.isFxApplicationThread())
+            addListeners.run();
+        else
+            UiUpdateDispatcher.INSTANCE.post(addListeners);
+    }
+
     /**
      * Define something to happen then the thumbnail is clicked, can be used with lambda like this:
      * <pre>
@@ -726,16 +787,10 @@ public class VideoInformationBase {
                          "Not recommended then uploading a lot of videos"));
          tellSubsChoiceBox.setDisable(true);
 
-         Image thumbNailImage;
-         try {
-             thumbNailImage = new Image(new BufferedInputStream(new FileInputStream(new File(thumbNailPath))));
-         } catch (FileNotFoundException | NullPointerException e) {
-             InputStream thumbStream = this.getClass().getResourceAsStream("/images/no_image.png");
-             thumbNailImage = new Image(thumbStream);
-         }
-         ImageView thumbNailFrame = new ImageView(thumbNailImage);
-         thumbNailFrame.setFitWidth(160);
-         thumbNailFrame.setFitHeight(90);
+         ImageView thumbNailFrame = new ImageView();
+         setPreviewImage(thumbNailFrame, thumbNailPath == null ? null : new File(thumbNailPath));
+         thumbNailFrame.setFitWidth(THUMB_PREVIEW_WIDTH);
+         thumbNailFrame.setFitHeight(THUMB_PREVIEW_HEIGHT);
          thumbNailFrame.setId(paneId + NODE_ID_THUMBNAIL);
          thumbNailFrame.setPreserveRatio(true);
          thumbNailFrame.setOnMouseEntered(event -> {
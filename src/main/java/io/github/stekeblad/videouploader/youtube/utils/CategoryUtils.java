@@ -1,15 +1,14 @@
 package io.github.stekeblad.videouploader.youtube.utils;
 
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.VideoCategory;
 import com.google.api.services.youtube.model.VideoCategoryListResponse;
 import io.github.stekeblad.videouploader.utils.ConfigManager;
 import io.github.stekeblad.videouploader.youtube.Auth;
+import io.github.stekeblad.videouploader.youtube.PartialResponseInitializer;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -40,13 +39,12 @@ public enum CategoryUtils {
         }
 
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Video Uploader").build();
+            // Get the shared Youtube object, authenticates the user if needed
+            YouTube youtube = Auth.getYouTube();
 
             // Prepare and send request
-            YouTube.VideoCategories.List videoCategoriesListForRegionRequest = youtube.videoCategories().list(Collections.singletonList("snippet"));
+            YouTube.VideoCategories.List videoCategoriesListForRegionRequest = youtube.videoCategories()
+                    .list(PartialResponseInitializer.CATEGORY_LIST_PARTS);
             videoCategoriesListForRegionRequest.setHl(lang);
             videoCategoriesListForRegionRequest.setRegionCode(region);
             VideoCategoryListResponse response = videoCategoriesListForRegionRequest.execute();
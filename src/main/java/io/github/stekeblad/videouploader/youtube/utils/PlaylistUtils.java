@@ -1,6 +1,5 @@
 package io.github.stekeblad.videouploader.youtube.utils;
 
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.Playlist;
 import com.google.api.services.youtube.model.PlaylistListResponse;
@@ -11,6 +10,7 @@ import io.github.stekeblad.videouploader.utils.translation.TranslationBundles;
 import io.github.stekeblad.videouploader.utils.translation.TranslationsManager;
 import io.github.stekeblad.videouploader.youtube.Auth;
 import io.github.stekeblad.videouploader.youtube.LocalPlaylist;
+import io.github.stekeblad.videouploader.youtube.PartialResponseInitializer;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -33,18 +33,29 @@ public enum PlaylistUtils {
      * to the user that they will be sent to youtube for granting permission or similar, do it before calling this method
      */
     public void refreshPlaylist() throws IOException {
-        HashMap<String, LocalPlaylist> oldCache = new HashMap<>();
+        YouTube youtube;
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Video Uploader").build();
+            // Get the shared Youtube object, authenticates the user if needed
+            youtube = Auth.getYouTube();
+        } catch (IOException e) {
+            playlistCache = new HashMap<>();
+            throw e;
+        }
+        refreshPlaylist(youtube);
+    }
 
+    /**
+     * Gets playlists from Youtube using the given YouTube object instead of the shared one, for example one that
+     * talks to a local test server
+     *
+     * @param youtube the YouTube object to list the playlists with
+     */
+    public void refreshPlaylist(YouTube youtube) throws IOException {
+        HashMap<String, LocalPlaylist> oldCache = new HashMap<>();
+        try {
             // Prepare request
-            ArrayList<String> playlistParts = new ArrayList<>();
-            playlistParts.add("snippet");
-            playlistParts.add("contentDetails");
-            YouTube.Playlists.List userPlaylists = youtube.playlists().list(playlistParts);
+            YouTube.Playlists.List userPlaylists = youtube.playlists()
+                    .list(PartialResponseInitializer.PLAYLIST_LIST_PARTS);
             userPlaylists.setMine(true);
             userPlaylists.setMaxResults(25L);
 
@@ -163,10 +174,8 @@ public enum PlaylistUtils {
      */
     public LocalPlaylist addPlaylist(String name, String privacy) {
         try {
-            // Authenticate user and create Youtube object
-            Credential creds = Auth.authUser();
-            YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, creds).setApplicationName(
-                    "Stekeblads Video Uploader").build();
+            // Get the shared Youtube object, authenticates the user if needed
+            YouTube youtube = Auth.getYouTube();
 
             // prepare playlist
             PlaylistSnippet snippet = new PlaylistSnippet();
@@ -178,10 +187,8 @@ public enum PlaylistUtils {
             unsyncedPlaylist.setSnippet(snippet);
             unsyncedPlaylist.setStatus(status);
 
-            ArrayList<String> playlistParts = new ArrayList<>();
-            playlistParts.add("snippet");
-            playlistParts.add("status");
-            YouTube.Playlists.Insert playlistInserter = youtube.playlists().insert(playlistParts, unsyncedPlaylist);
+            YouTube.Playlists.Insert playlistInserter = youtube.playlists()
+                    .insert(PartialResponseInitializer.PLAYLIST_INSERT_PARTS, unsyncedPlaylist);
             Playlist syncedPlaylist = playlistInserter.execute();
 
             LocalPlaylist localPlaylist = new LocalPlaylist(
@@ -0,0 +1,141 @@
+package io.github.stekeblad.videouploader.youtube.utils;
+
+import io.github.stekeblad.videouploader.tagProcessing.metaDataTagProcessor.FileIdentity;
+import io.github.stekeblad.videouploader.utils.background.UiUpdateDispatcher;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A Enum-Singleton class that holds the small thumbnail images shown in the upload and preset panes, so a thumbnail
+ * used in many panes is only loaded once. The images are loaded by JavaFX in the background and decoded at the size
+ * they are shown in instead of the full size of the thumbnail. A image is loaded again if the size or modification
+ * time of its file has changed. When the images takes more than MAX_BYTES of memory the least recently used ones are
+ * removed from the cache, the panes that shows them keeps them until they are closed.
+ * <p>
+ * All methods are threadsafe, the panes are created both on the JavaFX Application Thread and by the PresetApplicator
+ * threads. A image that is loading reports its progress and errors on the JavaFX Application Thread, listen to them
+ * on that thread or the image may have failed before the listener was added.
+ */
+public enum ThumbnailPreviewCache {
+    INSTANCE;
+
+    public static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    // Keyed by the path, a file is only in the cache once even if it has changed. In least recently used order.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+    private Image placeholder = null;
+
+    private static class Entry {
+        final FileIdentity identity;
+        final Image image;
+        final long bytes;
+
+        Entry(FileIdentity identity, Image image, long bytes) {
+            this.identity = identity;
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Gets a thumbnail scaled down to fit inside width x height from the cache or starts loading it. Use
+     * Image.progressProperty() to know when a image that is loading is done.
+     *
+     * @param thumbnail the image file to load
+     * @param width     the largest width the image is shown with
+     * @param height    the largest height the image is shown with
+     * @return the image, or the placeholder image if the thumbnail file does not exist
+     */
+    public Image get(File thumbnail, double width, double height) {
+        if (thumbnail == null || !thumbnail.isFile())
+            return getPlaceholder();
+        // Read outside the lock, it asks the file system
+        FileIdentity identity = FileIdentity.of(thumbnail);
+        synchronized (this) {
+            Entry entry = entries.get(identity.getPath());
+            if (entry != null && entry.identity.equals(identity)
+                    && entry.image.getRequestedWidth() == width && entry.image.getRequestedHeight() == height)
+                return entry.image;
+
+            Image image = new Image(thumbnail.toURI().toString(), width, height, true, true, true);
+            // 4 bytes per pixel, the image is not larger than the requested size
+            long bytes = (long) Math.ceil(width) * (long) Math.ceil(height) * 4;
+            put(identity.getPath(), new Entry(identity, image, bytes));
+            Runnable removeIfFailed = () -> {
+                // Checked once when the listener is added, the image may have failed already
+                if (image.isError()) {
+                    imageFailed(identity, image);
+                    return;
+                }
+                image.errorProperty().addListener((observable, oldValue, isError) -> {
+                    if (isError)
+                        imageFailed(identity, image);
+                });
+            };
+            if (Platform.isFxApplicationThread())
+                removeIfFailed.run();
+            else
+                UiUpdateDispatcher.INSTANCE.post(removeIfFailed);
+            return image;
+        }
+    }
+
+    /**
+     * @return the image shown for uploads and presets without a thumbnail
+     */
+    public synchronized Image getPlaceholder() {
+        if (placeholder == null)
+            placeholder = new Image(ThumbnailPreviewCache.class.getResourceAsStream("/images/no_image.png"));
+        return placeholder;
+    }
+
+    /**
+     * Removes all images from the cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * @return the number of images in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Call with the lock held
+    private void put(String path, Entry entry) {
+        Entry replaced = entries.put(path, entry);
+        if (replaced != null)
+            usedBytes -= replaced.bytes;
+        usedBytes += entry.bytes;
+
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (usedBytes > MAX_BYTES && leastRecentlyUsed.hasNext()) {
+            Entry eldest = leastRecentlyUsed.next();
+            if (eldest == entry)
+                break;
+            usedBytes -= eldest.bytes;
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private void imageFailed(FileIdentity identity, Image image) {
+        System.err.println("Could not load the thumbnail " + identity.getPath());
+        remove(identity.getPath(), image);
+    }
+
+    private synchronized void remove(String path, Image image) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.image == image) {
+            entries.remove(path);
+            usedBytes -= entry.bytes;
+        }
+    }
+}